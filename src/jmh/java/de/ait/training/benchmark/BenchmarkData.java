@@ -0,0 +1,105 @@
+package de.ait.training.benchmark;
+
+import de.ait.training.DevelopmentGr54FsApplication;
+import de.ait.training.model.Car;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Общие данные для бенчмарков: генерация автомобилей и запуск приложения на H2 в памяти
+ */
+public final class BenchmarkData {
+    public static final String[] COLORS = {"black", "white", "red", "green", "blue", "silver", "grey", "yellow"};
+    private static final String[] BRANDS = {"BMW", "Audi", "MB", "VW", "Ferrari", "Opel", "Skoda", "Toyota", "Kia", "Volvo"};
+    private static final String[] ENGINES = {"petrol", "diesel", "electric", "hybrid"};
+    private static final int INSERT_BATCH = 10_000;
+
+    private BenchmarkData() {
+    }
+
+    public static List<Car> cars(int count) {
+        Random random = new Random(42);
+        List<Car> cars = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Car car = new Car(COLORS[random.nextInt(COLORS.length)],
+                    BRANDS[random.nextInt(BRANDS.length)] + " " + random.nextInt(50),
+                    5000 + random.nextInt(250_000));
+            car.setId((long) i + 1);
+            car.setYear(2000 + random.nextInt(26));
+            car.setEngineType(ENGINES[random.nextInt(ENGINES.length)]);
+            cars.add(car);
+        }
+        return cars;
+    }
+
+    /**
+     * Запускает приложение без веб-сервера на H2 (схема через Liquibase) и заполняет таблицу cars
+     */
+    public static ConfigurableApplicationContext startWithCars(int count, String... args) {
+        ConfigurableApplicationContext context = start(WebApplicationType.NONE,
+                new Class<?>[]{DevelopmentGr54FsApplication.class}, args);
+        insertCars(context, count);
+        return context;
+    }
+
+    /**
+     * Запускает приложение на H2. Аргументы командной строки перекрывают application.properties (PostgreSQL),
+     * дополнительные args заменяют настройки бенчмарка с тем же именем
+     */
+    public static ConfigurableApplicationContext start(WebApplicationType type, Class<?>[] sources, String... args) {
+        List<String> defaultArgs = new ArrayList<>(List.of(
+                "--spring.datasource.url=jdbc:h2:mem:bench;MODE=PostgreSQL;NON_KEYWORDS=YEAR;DB_CLOSE_DELAY=-1",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.jpa.show-sql=false",
+                "--spring.cache.type=none",
+                "--mailUserName=bench",
+                "--mailPassword=bench",
+                "--mailFromAdress=bench@ait.de",
+                "--logging.level.root=WARN",
+                "--logging.level.de.ait=WARN"));
+        // одно имя дважды Spring склеил бы через запятую
+        Map<String, String> allArgs = new LinkedHashMap<>();
+        defaultArgs.forEach(arg -> allArgs.put(argName(arg), arg));
+        List.of(args).forEach(arg -> allArgs.put(argName(arg), arg));
+        return new SpringApplicationBuilder(sources)
+                .web(type)
+                .run(allArgs.values().toArray(new String[0]));
+    }
+
+    private static String argName(String arg) {
+        int equals = arg.indexOf('=');
+        return equals < 0 ? arg : arg.substring(0, equals);
+    }
+
+    /**
+     * Заменяет содержимое cars в одной транзакции (в профиле prod соединения без autocommit)
+     */
+    public static void insertCars(ConfigurableApplicationContext context, int count) {
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        TransactionTemplate transaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        List<Car> cars = cars(count);
+        transaction.executeWithoutResult(status -> {
+            jdbcTemplate.update("DELETE FROM cars");
+            for (int from = 0; from < cars.size(); from += INSERT_BATCH) {
+                List<Object[]> rows = cars.subList(from, Math.min(from + INSERT_BATCH, cars.size())).stream()
+                        .map(car -> new Object[]{car.getColor(), car.getModel(), car.getPrice(), car.getYear(),
+                                car.getEngineType()})
+                        .toList();
+                jdbcTemplate.batchUpdate(
+                        "INSERT INTO cars (color, model, price, year, engine_type) VALUES (?, ?, ?, ?, ?)", rows);
+            }
+        });
+    }
+}
@@ -0,0 +1,59 @@
+package de.ait.training.benchmark;
+
+import de.ait.training.dto.ModelSuggestion;
+import de.ait.training.repository.CarRepository;
+import de.ait.training.service.CarModelIndex;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Подсказки по модели из CarModelIndex: короткий префикс (много совпадений) и начало слова
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class CarModelIndexBenchmark {
+
+    @Param({"1000000"})
+    int rows;
+
+    private CarModelIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        index = new CarModelIndex(Mockito.mock(CarRepository.class));
+        index.putAll(BenchmarkData.cars(rows));
+    }
+
+    @Benchmark
+    public List<ModelSuggestion> shortPrefix() {
+        return index.suggest("b", 10);
+    }
+
+    @Benchmark
+    public List<ModelSuggestion> modelPrefix() {
+        return index.suggest("bmw 4", 10);
+    }
+
+    @Benchmark
+    public List<ModelSuggestion> wordPrefix() {
+        return index.suggest("4", 10);
+    }
+}
@@ -0,0 +1,78 @@
+package de.ait.training.benchmark;
+
+import de.ait.training.dto.CarDto;
+import de.ait.training.model.Car;
+import jakarta.persistence.EntityManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Managed-сущности против DTO-проекции на одном и том же запросе по цвету.
+ * Память на запрос смотреть с профайлером GC:
+ * -Djmh.args="CarProjectionBenchmark -prof gc" (gc.alloc.rate.norm - байт на операцию)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class CarProjectionBenchmark {
+
+    @Param({"10000", "100000"})
+    int rows;
+
+    private ConfigurableApplicationContext context;
+    private EntityManager entityManager;
+    private TransactionTemplate transactionTemplate;
+    private TransactionTemplate readOnlyTransactionTemplate;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkData.startWithCars(rows);
+        entityManager = context.getBean(EntityManager.class);
+        transactionTemplate = context.getBean(TransactionTemplate.class);
+        readOnlyTransactionTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        readOnlyTransactionTemplate.setReadOnly(true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    /** как было: сущности в обычной транзакции, со снимками для dirty checking */
+    @Benchmark
+    public List<Car> managedEntities() {
+        return transactionTemplate.execute(status -> entityManager
+                .createQuery("select c from Car c where upper(c.color) = upper(:color)", Car.class)
+                .setParameter("color", "red")
+                .getResultList());
+    }
+
+    /** как сейчас в CarRepository: DTO через конструктор в read-only транзакции */
+    @Benchmark
+    public List<CarDto> readOnlyDto() {
+        return readOnlyTransactionTemplate.execute(status -> entityManager
+                .createQuery("select new de.ait.training.dto.CarDto(c.id, c.color, c.model, c.price, c.year, "
+                        + "c.engineType) from Car c where upper(c.color) = upper(:color)", CarDto.class)
+                .setParameter("color", "red")
+                .getResultList());
+    }
+}
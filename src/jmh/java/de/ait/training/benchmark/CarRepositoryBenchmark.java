@@ -0,0 +1,77 @@
+package de.ait.training.benchmark;
+
+import de.ait.training.dto.CarDto;
+import de.ait.training.model.Car;
+import de.ait.training.repository.CarRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Limit;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Поисковые методы CarRepository на H2 с 10k / 100k / 1M строк (кэш выключен)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class CarRepositoryBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    int rows;
+
+    private ConfigurableApplicationContext context;
+    private CarRepository carRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkData.startWithCars(rows);
+        carRepository = context.getBean(CarRepository.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<CarDto> findByColor() {
+        return carRepository.findCarByColorIgnoreCase("Red");
+    }
+
+    @Benchmark
+    public List<CarDto> findByPriceBetweenNarrow() {
+        return carRepository.findByPriceBetween(20000.0, 21000.0);
+    }
+
+    @Benchmark
+    public List<CarDto> findByPriceLessThanEqual() {
+        return carRepository.findByPriceLessThanEqual(10000.0);
+    }
+
+    @Benchmark
+    public List<CarDto> findByPriceGreaterThanEqual() {
+        return carRepository.findByPriceGreaterThanEqual(250000.0);
+    }
+
+    @Benchmark
+    public List<Car> keysetPage() {
+        return carRepository.findByIdGreaterThanOrderByIdAsc((long) rows / 2, Limit.of(500));
+    }
+}
@@ -0,0 +1,83 @@
+package de.ait.training.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.ait.training.config.SmileConfig;
+import de.ait.training.model.Car;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Jackson-сериализация больших списков Car, как в ответах RestApiCarController:
+ * JSON, Smile (Accept: application/x-jackson-smile) и JSON + gzip (server.compression).
+ * Размер ответа каждого варианта печатается в setUp
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CarSerializationBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    int size;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ObjectMapper smileMapper = SmileConfig.smileMapper(objectMapper);
+    private List<Car> cars;
+
+    @Setup
+    public void setUp() throws Exception {
+        cars = BenchmarkData.cars(size);
+        System.out.printf("%n%d cars: json %d bytes, smile %d bytes, json+gzip %d bytes, smile+gzip %d bytes%n",
+                size, serializeToBytes().length, serializeToSmile().length,
+                serializeToGzip().length, gzip(serializeToSmile()).length);
+    }
+
+    @Benchmark
+    public byte[] serializeToBytes() throws Exception {
+        return objectMapper.writeValueAsBytes(cars);
+    }
+
+    @Benchmark
+    public void serializeToStream() throws Exception {
+        objectMapper.writeValue(OutputStream.nullOutputStream(), cars);
+    }
+
+    @Benchmark
+    public byte[] serializeToSmile() throws Exception {
+        return smileMapper.writeValueAsBytes(cars);
+    }
+
+    @Benchmark
+    public byte[] serializeToGzip() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            objectMapper.writeValue(gzip, cars);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] data) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(data);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,77 @@
+package de.ait.training.benchmark;
+
+import de.ait.training.dto.CarUpsertResult;
+import de.ait.training.model.Car;
+import de.ait.training.repository.CarRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность обновления цены через PUT на H2:
+ * прежний путь findById + save (SELECT, SELECT в merge, UPDATE) против одного upsert-запроса
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@Threads(4)
+public class CarUpsertBenchmark {
+
+    @Param({"100000"})
+    int rows;
+
+    private ConfigurableApplicationContext context;
+    private CarRepository carRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkData.startWithCars(rows);
+        carRepository = context.getBean(CarRepository.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Car findAndSave() {
+        Car car = priceUpdate();
+        Car found = carRepository.findById(car.getId()).orElseThrow();
+        car.setVersion(found.getVersion());
+        return carRepository.saveAndCount(car);
+    }
+
+    @Benchmark
+    public CarUpsertResult upsert() {
+        return carRepository.upsert(priceUpdate(), null);
+    }
+
+    private Car priceUpdate() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Car car = new Car(BenchmarkData.COLORS[random.nextInt(BenchmarkData.COLORS.length)], "BMW x5",
+                5000 + random.nextInt(250_000));
+        car.setId(1L + random.nextInt(rows));
+        car.setYear(2020);
+        car.setEngineType("petrol");
+        return car;
+    }
+}
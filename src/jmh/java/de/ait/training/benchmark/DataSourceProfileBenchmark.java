@@ -0,0 +1,120 @@
+package de.ait.training.benchmark;
+
+import de.ait.training.DevelopmentGr54FsApplication;
+import de.ait.training.dto.CarDto;
+import de.ait.training.model.Car;
+import de.ait.training.repository.CarRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Limit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность finder-ов CarRepository из 16 потоков: прежние настройки
+ * (пул Hikari по умолчанию, show-sql и format_sql) против профиля prod.
+ * По умолчанию на H2 - видны пул, вывод SQL, autocommit и кэш планов Hibernate.
+ * Кэш prepared statements драйвера работает только на PostgreSQL:
+ * -p database=postgresql -p postgresUrl=jdbc:postgresql://localhost:5432/g_54_cars_bench -p postgresCores=8
+ * (таблица cars в этой базе перезаписывается)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@Threads(16)
+public class DataSourceProfileBenchmark {
+
+    @Param({"default", "prod"})
+    String profile;
+
+    @Param({"h2"})
+    String database;
+
+    @Param({"jdbc:postgresql://localhost:5432/g_54_cars_bench"})
+    String postgresUrl;
+
+    @Param({"postgres"})
+    String postgresUser;
+
+    @Param({"qwerty007"})
+    String postgresPassword;
+
+    /** ядра сервера PostgreSQL для размера пула prod, H2 работает в этом процессе */
+    @Param({"4"})
+    int postgresCores;
+
+    @Param({"100000"})
+    int rows;
+
+    private ConfigurableApplicationContext context;
+    private CarRepository carRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<String> args = new ArrayList<>();
+        if ("prod".equals(profile)) {
+            args.add("--spring.profiles.active=prod");
+            int cores = "postgresql".equals(database) ? postgresCores : Runtime.getRuntime().availableProcessors();
+            args.add("--app.datasource.pool.cores=" + cores);
+        } else {
+            // как в application.properties
+            args.add("--spring.jpa.show-sql=true");
+        }
+        if ("postgresql".equals(database)) {
+            args.add("--spring.datasource.url=" + postgresUrl);
+            args.add("--spring.datasource.username=" + postgresUser);
+            args.add("--spring.datasource.password=" + postgresPassword);
+            args.add("--spring.datasource.driver-class-name=org.postgresql.Driver");
+        }
+        context = BenchmarkData.start(WebApplicationType.NONE,
+                new Class<?>[]{DevelopmentGr54FsApplication.class}, args.toArray(new String[0]));
+        BenchmarkData.insertCars(context, rows);
+        carRepository = context.getBean(CarRepository.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Optional<Car> findById() {
+        return carRepository.findById(randomId());
+    }
+
+    @Benchmark
+    public List<Car> keysetPage() {
+        return carRepository.findByIdGreaterThanOrderByIdAsc(randomId(), Limit.of(20));
+    }
+
+    @Benchmark
+    public List<CarDto> findByPriceBetweenNarrow() {
+        double min = 5000 + ThreadLocalRandom.current().nextInt(250_000);
+        return carRepository.findByPriceBetween(min, min + 100);
+    }
+
+    private long randomId() {
+        return 1 + ThreadLocalRandom.current().nextLong(rows);
+    }
+}
@@ -0,0 +1,88 @@
+package de.ait.training.benchmark;
+
+import de.ait.training.DevelopmentGr54FsApplication;
+import de.ait.training.service.EmailService;
+import jakarta.mail.internet.MimeMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Письма в секунду через бин EmailService из контекста приложения (шаблоны и TemplateEngine,
+ * как их настраивает Spring Boot): рендеринг, MimeMessage и метрики отправки, без SMTP.
+ * precompiled=false - Thymeleaf на каждое письмо, true - склейка заранее отрендеренных кусков
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmailServiceBenchmark {
+
+    private static final Map<String, Object> VARIABLES = Map.of(
+            "title", "Welcome to our service",
+            "userName", "Zhanna",
+            "promoCode", "AIT-223344");
+
+    @Param({"false", "true"})
+    boolean precompiled;
+
+    private ConfigurableApplicationContext context;
+    private EmailService emailService;
+
+    /**
+     * Заменяет SMTP: createMimeMessage настоящий, send собирает письмо (saveChanges) и ничего не отправляет.
+     * Без @Configuration: передается в start явно, сканирование пакетов приложения его не подхватывает
+     */
+    static class NoSmtpConfig {
+        @Bean
+        JavaMailSenderImpl mailSender() {
+            return new JavaMailSenderImpl() {
+                @Override
+                public void send(MimeMessage mimeMessage) {
+                    try {
+                        mimeMessage.saveChanges();
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            };
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkData.start(WebApplicationType.NONE,
+                new Class<?>[]{DevelopmentGr54FsApplication.class, NoSmtpConfig.class},
+                "--app.mail.templates.precompiled=" + precompiled);
+        emailService = context.getBean(EmailService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void send() {
+        emailService.sendTamplateEmail("user@ait.de", "Car service time", "email/CarService", VARIABLES);
+    }
+}
@@ -0,0 +1,93 @@
+package de.ait.training.benchmark;
+
+import de.ait.training.DevelopmentGr54FsApplication;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Задержка HTTP-запроса GET /api/cars/price/between/{min}/{max} (Tomcat на H2, 8 клиентов)
+ * в зависимости от логирования:
+ * today - как сейчас (консоль и файл синхронно, de.ait DEBUG, show-sql),
+ * sync - те же аппендеры без show-sql, async - профиль async-logging с теми же уровнями,
+ * off - логирование выключено (база для сравнения)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@Threads(8)
+public class LoggingOverheadBenchmark {
+
+    @Param({"today", "sync", "async", "off"})
+    String logging;
+
+    @Param({"10000"})
+    int rows;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private String url;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<String> args = switch (logging) {
+            case "today" -> List.of("--spring.jpa.show-sql=true",
+                    "--logging.level.root=INFO", "--logging.level.de.ait=DEBUG");
+            case "sync" -> List.of("--logging.level.root=INFO", "--logging.level.de.ait=DEBUG");
+            case "async" -> List.of("--spring.profiles.active=async-logging",
+                    "--logging.level.root=INFO", "--logging.level.de.ait=DEBUG");
+            default -> List.of("--logging.level.root=OFF", "--logging.level.de.ait=OFF");
+        };
+        context = BenchmarkData.start(WebApplicationType.SERVLET,
+                new Class<?>[]{DevelopmentGr54FsApplication.class},
+                concat(args, "--server.port=0", "--app.mail.async.enabled=false"));
+        BenchmarkData.insertCars(context, rows);
+        url = "http://localhost:" + context.getEnvironment().getProperty("local.server.port")
+                + "/api/cars/price/between/";
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        client.close();
+        context.close();
+    }
+
+    @Benchmark
+    public int priceBetween() throws IOException, InterruptedException {
+        int min = 5000 + ThreadLocalRandom.current().nextInt(250_000);
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url + min + "/" + (min + 500))).GET().build();
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private static String[] concat(List<String> args, String... more) {
+        String[] all = args.toArray(new String[args.size() + more.length]);
+        System.arraycopy(more, 0, all, args.size(), more.length);
+        return all;
+    }
+}
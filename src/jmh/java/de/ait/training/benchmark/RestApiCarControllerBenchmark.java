@@ -0,0 +1,82 @@
+package de.ait.training.benchmark;
+
+import de.ait.training.controller.RestApiCarController;
+import de.ait.training.dto.CarDto;
+import de.ait.training.model.Car;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
+
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Построение ответов RestApiCarController (запрос + список + для getCars поток JSON) на H2.
+ * Запрос без If-None-Match, то есть с проверкой версии каталога и полным телом
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class RestApiCarControllerBenchmark {
+
+    @Param({"10000", "100000"})
+    int rows;
+
+    private ConfigurableApplicationContext context;
+    private RestApiCarController controller;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkData.startWithCars(rows);
+        controller = context.getBean(RestApiCarController.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public ResponseEntity<List<CarDto>> getCarsByColor() {
+        return controller.getCarsByColor("red", request());
+    }
+
+    @Benchmark
+    public ResponseEntity<List<CarDto>> getCarsByPriceBetween() {
+        return controller.getCarsByPriceBetween(20000.0, 30000.0, request());
+    }
+
+    @Benchmark
+    public ResponseEntity<List<Car>> getCarsPage() {
+        return controller.getCarsPage(0L, 1000, request());
+    }
+
+    @Benchmark
+    public void streamAllCars() throws Exception {
+        controller.getCars(0L, request()).getBody().writeTo(OutputStream.nullOutputStream());
+    }
+
+    private static WebRequest request() {
+        return new ServletWebRequest(new MockHttpServletRequest("GET", "/api/cars"), new MockHttpServletResponse());
+    }
+}
@@ -0,0 +1,56 @@
+package de.ait.training.benchmark;
+
+import de.ait.training.DevelopmentGr54FsApplication;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Время старта приложения с Tomcat на H2 до готовности (ApplicationReadyEvent), в новой JVM на каждый замер:
+ * обычный запуск и профиль fast-start.
+ * AOT и CDS требуют собранного jar и флагов JVM - их время видно так (после mvn -Pfast-start package):
+ * cd target/cds && java -XX:SharedArchiveFile=application.jsa -Dspring.aot.enabled=true
+ * -Dspring.context.exit=onRefresh -jar DevelopmentGr54FS-0.0.1-SNAPSHOT.jar -\-spring.profiles.active=fast-start ...
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(5)
+public class StartupBenchmark {
+
+    @Param({"default", "fast-start"})
+    String profile;
+
+    private ConfigurableApplicationContext context;
+
+    @Benchmark
+    public ConfigurableApplicationContext start() {
+        context = BenchmarkData.start(WebApplicationType.SERVLET,
+                new Class<?>[]{DevelopmentGr54FsApplication.class},
+                "--server.port=0",
+                "--spring.profiles.active=" + profile);
+        return context;
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        if (context != null) {
+            context.close();
+        }
+    }
+}
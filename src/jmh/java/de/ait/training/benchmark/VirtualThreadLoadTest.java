@@ -0,0 +1,175 @@
+package de.ait.training.benchmark;
+
+import de.ait.training.DevelopmentGr54FsApplication;
+import jakarta.mail.internet.MimeMessage;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Нагрузочный тест: 10k одновременных клиентов, режимы platform и virtual threads, сценарии:
+ * mail - POST /api/email/service при медленном SMTP (каждая отправка блокирует поток на slowMs),
+ * get - GET /api/cars/{id}, put - PUT /api/cars/{id}: запросы, которые ждут JDBC (H2, пул соединений 20,
+ * кэш выключен), в таблице cars - rows автомобилей.
+ * Запуск: mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=de.ait.training.benchmark.VirtualThreadLoadTest
+ * Аргументы (через -Djmh.args): [clients] [slowMs] [rows] [сценарии через запятую, по умолчанию mail,get,put]
+ */
+public class VirtualThreadLoadTest {
+
+    private static final String CAR_JSON =
+            "{\"color\":\"red\",\"model\":\"BMW x5\",\"price\":25000,\"year\":2020,\"engineType\":\"petrol\"}";
+
+    static long slowMs = 200;
+
+    /**
+     * Заменяет SMTP: createMimeMessage настоящий, send просто ждет.
+     * Без @Configuration: передается в start явно, иначе сканирование пакетов приложения
+     * подставило бы медленный SMTP во все бенчмарки
+     */
+    static class SlowMailConfig {
+        @Bean
+        JavaMailSenderImpl mailSender() {
+            return new JavaMailSenderImpl() {
+                @Override
+                public void send(MimeMessage mimeMessage) {
+                    try {
+                        Thread.sleep(slowMs);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        slowMs = args.length > 1 ? Long.parseLong(args[1]) : 200;
+        int rows = args.length > 2 ? Integer.parseInt(args[2]) : 100_000;
+        List<String> scenarios = List.of((args.length > 3 ? args[3] : "mail,get,put").split(","));
+
+        List<String> report = new ArrayList<>();
+        report.addAll(run("platform", scenarios, clients, rows, "--spring.threads.virtual.enabled=false",
+                "--server.tomcat.max-connections=20000", "--server.tomcat.accept-count=2000",
+                "--spring.datasource.hikari.maximum-pool-size=20"));
+        report.addAll(run("virtual", scenarios, clients, rows, "--spring.profiles.active=virtual-threads"));
+
+        System.out.printf("%n%d clients, SMTP send %d ms, %d cars%n", clients, slowMs, rows);
+        System.out.printf("%-10s %-6s %10s %12s %10s %10s %8s%n",
+                "mode", "case", "time ms", "req/s", "p50 ms", "p99 ms", "errors");
+        report.forEach(System.out::println);
+    }
+
+    private static List<String> run(String mode, List<String> scenarios, int clients, int rows, String... args)
+            throws Exception {
+        ConfigurableApplicationContext context = BenchmarkData.start(WebApplicationType.SERVLET,
+                new Class<?>[]{DevelopmentGr54FsApplication.class, SlowMailConfig.class},
+                concat(args, "--server.port=0", "--app.mail.async.enabled=false"));
+        try {
+            BenchmarkData.insertCars(context, rows);
+            Map<String, Long> ids = context.getBean(JdbcTemplate.class)
+                    .queryForMap("SELECT min(id) AS min_id, max(id) AS max_id FROM cars").entrySet().stream()
+                    .collect(Collectors.toMap(entry -> entry.getKey().toLowerCase(Locale.ROOT),
+                            entry -> ((Number) entry.getValue()).longValue()));
+            String baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+            Random random = new Random(42);
+            List<String> report = new ArrayList<>();
+            for (String scenario : scenarios) {
+                IntFunction<HttpRequest> request = switch (scenario) {
+                    case "mail" -> i -> HttpRequest.newBuilder(URI.create(baseUrl + "/api/email/service?emailTo=user@ait.de"))
+                            .timeout(Duration.ofMinutes(2))
+                            .POST(HttpRequest.BodyPublishers.noBody())
+                            .build();
+                    case "get" -> i -> HttpRequest.newBuilder(URI.create(baseUrl + "/api/cars/"
+                                    + randomId(random, ids)))
+                            .timeout(Duration.ofMinutes(2))
+                            .GET()
+                            .build();
+                    case "put" -> i -> HttpRequest.newBuilder(URI.create(baseUrl + "/api/cars/"
+                                    + randomId(random, ids)))
+                            .timeout(Duration.ofMinutes(2))
+                            .header("Content-Type", "application/json")
+                            .PUT(HttpRequest.BodyPublishers.ofString(CAR_JSON))
+                            .build();
+                    default -> throw new IllegalArgumentException("Unknown scenario " + scenario);
+                };
+                report.add(load(mode, scenario, clients, request));
+            }
+            return report;
+        } finally {
+            context.close();
+        }
+    }
+
+    private static long randomId(Random random, Map<String, Long> ids) {
+        return ids.get("min_id") + random.nextLong(ids.get("max_id") - ids.get("min_id") + 1);
+    }
+
+    /**
+     * Отправляет clients запросов сразу и ждет все ответы, ошибка - любой статус кроме 200
+     */
+    private static String load(String mode, String scenario, int clients, IntFunction<HttpRequest> request) {
+        long[] latencies = new long[clients];
+        int errors = 0;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            HttpClient client = HttpClient.newBuilder()
+                    .executor(executor)
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(30))
+                    .build();
+            List<HttpRequest> requests = IntStream.range(0, clients).mapToObj(request).toList();
+
+            long start = System.nanoTime();
+            List<CompletableFuture<Integer>> responses = new ArrayList<>(clients);
+            for (int i = 0; i < clients; i++) {
+                int index = i;
+                long sentAt = System.nanoTime();
+                responses.add(client.sendAsync(requests.get(i), HttpResponse.BodyHandlers.discarding())
+                        .thenApply(response -> {
+                            latencies[index] = System.nanoTime() - sentAt;
+                            return response.statusCode();
+                        })
+                        .exceptionally(e -> -1));
+            }
+            for (CompletableFuture<Integer> response : responses) {
+                if (response.join() != 200) {
+                    errors++;
+                }
+            }
+            long elapsedMs = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+
+            Arrays.sort(latencies);
+            return String.format("%-10s %-6s %10d %12.1f %10d %10d %8d", mode, scenario, elapsedMs,
+                    clients * 1000.0 / elapsedMs,
+                    latencies[clients / 2] / 1_000_000,
+                    latencies[(int) (clients * 0.99)] / 1_000_000,
+                    errors);
+        }
+    }
+
+    private static String[] concat(String[] first, String... second) {
+        String[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+}
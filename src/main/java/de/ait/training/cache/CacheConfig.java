@@ -0,0 +1,13 @@
+package de.ait.training.cache;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Кэш запросов к автомобилям (Caffeine). Размер и TTL задаются в spring.cache.caffeine.spec,
+ * spring.cache.type=none полностью выключает кэш
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+}
@@ -0,0 +1,103 @@
+package de.ait.training.cache;
+
+import de.ait.training.event.CarChangedEvent;
+import de.ait.training.event.CarsBulkUpdatedEvent;
+import de.ait.training.event.CarsImportedEvent;
+import de.ait.training.event.CarsUpdatedEvent;
+import de.ait.training.model.Car;
+import de.ait.training.service.CarCatalogVersions;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Точечный сброс кэшей при изменении автомобилей:
+ * по id, по старому и новому цвету и только те ценовые диапазоны,
+ * в которые попадает старая или новая цена.
+ * Сброс - новое поколение ключей (см. CarCacheKeys), один раз на событие, без прохода по ключам кэша.
+ * Записи прежнего поколения по id и цвету удаляются сразу, ценовые диапазоны - по размеру и TTL кэша.
+ * После изменения цен на процент кэши очищаются целиком
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CarCacheEvictor {
+    private final CacheManager cacheManager;
+
+    @EventListener
+    @Order(CarCatalogVersions.DATA_LISTENER_ORDER)
+    public void onCarChanged(CarChangedEvent event) {
+        List<Car> cars = new ArrayList<>(2);
+        if (event.before() != null) {
+            cars.add(event.before());
+        }
+        if (event.after() != null) {
+            cars.add(event.after());
+        }
+        evict(cars);
+    }
+
+    @EventListener
+    @Order(CarCatalogVersions.DATA_LISTENER_ORDER)
+    public void onCarsImported(CarsImportedEvent event) {
+        evict(event.cars());
+    }
+
+    @EventListener
+    @Order(CarCatalogVersions.DATA_LISTENER_ORDER)
+    public void onCarsUpdated(CarsUpdatedEvent event) {
+        List<Car> cars = new ArrayList<>(event.before());
+        cars.addAll(event.after());
+        evict(cars);
+    }
+
+    @EventListener
+    @Order(CarCatalogVersions.DATA_LISTENER_ORDER)
+    public void onCarsBulkUpdated(CarsBulkUpdatedEvent event) {
+        CarCacheKeys.changedAll();
+        for (String cacheName : List.of(CarCacheKeys.CARS, CarCacheKeys.CARS_BY_COLOR, CarCacheKeys.CARS_BY_PRICE)) {
+            Cache cache = cacheManager.getCache(cacheName);
+            if (cache != null) {
+                cache.clear();
+            }
+        }
+        log.debug("Car caches cleared after bulk update of {} cars", event.updated());
+    }
+
+    private void evict(List<Car> cars) {
+        Set<Long> ids = new HashSet<>();
+        Set<String> colors = new HashSet<>();
+        Set<Double> prices = new HashSet<>();
+        for (Car car : cars) {
+            if (car.getId() != null) {
+                ids.add(car.getId());
+            }
+            if (car.getColor() != null) {
+                colors.add(car.getColor());
+            }
+            prices.add(car.getPrice());
+        }
+        // ключи прежнего поколения - до его смены
+        List<CarCacheKeys.IdKey> idKeys = ids.stream().map(CarCacheKeys::id).toList();
+        List<CarCacheKeys.ColorKey> colorKeys = colors.stream().map(CarCacheKeys::color).toList();
+        CarCacheKeys.changed(ids, colors, prices);
+        evictKeys(CarCacheKeys.CARS, idKeys);
+        evictKeys(CarCacheKeys.CARS_BY_COLOR, colorKeys);
+    }
+
+    private void evictKeys(String cacheName, List<?> keys) {
+        Cache cache = cacheManager.getCache(cacheName);
+        if (cache != null) {
+            keys.forEach(cache::evict);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package de.ait.training.cache;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Имена кэшей и ключи для запросов CarRepository.
+ * Методы вызываются из SpEL в аннотациях @Cacheable и из CarCacheEvictor,
+ * поэтому ключи при чтении и при сбросе строятся одинаково.
+ * В ключ входит поколение: изменение автомобиля (после commit) увеличивает поколение его id, цвета
+ * и цены, поэтому чтение, начатое до изменения, кладет прочитанное под старый ключ, который больше
+ * никто не спросит, и не возвращает в кэш устаревший результат на весь TTL
+ */
+public final class CarCacheKeys {
+    public static final String CARS = "cars";
+    public static final String CARS_BY_COLOR = "carsByColor";
+    public static final String CARS_BY_PRICE = "carsByPrice";
+
+    // id и цвета делятся на полосы, изменение сбрасывает ключи своей полосы
+    private static final int STRIPES = 1024;
+    private static final AtomicLongArray ID_GENERATIONS = new AtomicLongArray(STRIPES);
+    private static final AtomicLongArray COLOR_GENERATIONS = new AtomicLongArray(STRIPES);
+    private static final PriceGenerations PRICE_GENERATIONS = new PriceGenerations();
+    // увеличивается, когда изменено неизвестно что (цены на процент) - меняет все ключи
+    private static final AtomicLong ALL_GENERATION = new AtomicLong();
+
+    private CarCacheKeys() {
+    }
+
+    public static IdKey id(Long id) {
+        return new IdKey(id, ALL_GENERATION.get() + ID_GENERATIONS.get(stripe(id.hashCode())));
+    }
+
+    /**
+     * findCarByColorIgnoreCase не различает регистр, значит и ключ не должен
+     */
+    public static ColorKey color(String color) {
+        String lower = color.toLowerCase(Locale.ROOT);
+        return new ColorKey(lower, ALL_GENERATION.get() + COLOR_GENERATIONS.get(stripe(lower.hashCode())));
+    }
+
+    public static PriceRange between(Double min, Double max) {
+        return new PriceRange(min, max, ALL_GENERATION.get() + PRICE_GENERATIONS.sum(min, max));
+    }
+
+    public static PriceRange under(Double max) {
+        return between(Double.NEGATIVE_INFINITY, max);
+    }
+
+    public static PriceRange over(Double min) {
+        return between(min, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Новое поколение для ключей этих id, цветов и диапазонов с этими ценами, каждая полоса - один раз
+     */
+    static void changed(Collection<Long> ids, Collection<String> colors, Collection<Double> prices) {
+        ids.stream().mapToInt(id -> stripe(id.hashCode())).distinct().forEach(ID_GENERATIONS::incrementAndGet);
+        colors.stream().mapToInt(color -> stripe(color.toLowerCase(Locale.ROOT).hashCode())).distinct()
+                .forEach(COLOR_GENERATIONS::incrementAndGet);
+        prices.stream().mapToInt(PriceGenerations::bucket).distinct().forEach(PRICE_GENERATIONS::increment);
+    }
+
+    /**
+     * Новое поколение для всех ключей
+     */
+    static void changedAll() {
+        ALL_GENERATION.incrementAndGet();
+    }
+
+    private static int stripe(int hash) {
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+
+    public record IdKey(long id, long generation) {
+    }
+
+    public record ColorKey(String color, long generation) {
+    }
+
+    /**
+     * Ключ кэша ценовых запросов, границы включительно
+     */
+    public record PriceRange(double min, double max, long generation) {
+    }
+
+    /**
+     * Поколения ценовых корзин (32 на каждую степень двойки) в дереве Фенвика: поколение диапазона -
+     * сумма поколений покрытых корзин, она растет при изменении цены в любой из них. И сумма, и
+     * увеличение - O(log) корзин, без прохода по ключам кэша
+     */
+    private static final class PriceGenerations {
+        private static final int SUB_BUCKETS = 32;
+        private static final int BUCKETS = 64 * SUB_BUCKETS + 2;
+        private final AtomicLongArray tree = new AtomicLongArray(BUCKETS + 1);
+
+        /** монотонна по цене: цены диапазона [min, max] лежат в корзинах [bucket(min), bucket(max)] */
+        static int bucket(double price) {
+            if (!(price >= 1)) {
+                return 0;
+            }
+            if (price == Double.POSITIVE_INFINITY || Math.getExponent(price) >= 64) {
+                return BUCKETS - 1;
+            }
+            long mantissa = Double.doubleToRawLongBits(price) >>> (52 - 5) & (SUB_BUCKETS - 1);
+            return 1 + Math.getExponent(price) * SUB_BUCKETS + (int) mantissa;
+        }
+
+        void increment(int bucket) {
+            for (int i = bucket + 1; i <= BUCKETS; i += i & -i) {
+                tree.incrementAndGet(i);
+            }
+        }
+
+        long sum(double min, double max) {
+            if (min > max) {
+                return 0;
+            }
+            return prefix(bucket(max)) - prefix(bucket(min) - 1);
+        }
+
+        private long prefix(int bucket) {
+            long sum = 0;
+            for (int i = bucket + 1; i > 0; i -= i & -i) {
+                sum += tree.get(i);
+            }
+            return sum;
+        }
+    }
+}
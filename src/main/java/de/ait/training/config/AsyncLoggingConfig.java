@@ -0,0 +1,67 @@
+package de.ait.training.config;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Метрики асинхронных аппендеров (LevelDiscardingAsyncAppender) корневого логгера:
+ * logging.async.queue.remaining, logging.async.discarded (по уровню), logging.async.dropped (очередь полна),
+ * тег appender. Аппендер ищется по имени при каждом чтении, поэтому метрики переживают перечитывание
+ * logback-spring.xml (scan). Без асинхронного режима метрик нет
+ */
+@Configuration
+public class AsyncLoggingConfig {
+
+    @Bean
+    MeterBinder asyncLoggingMetrics() {
+        return registry -> {
+            Iterator<Appender<ILoggingEvent>> appenders = rootLogger().iteratorForAppenders();
+            while (appenders.hasNext()) {
+                if (appenders.next() instanceof LevelDiscardingAsyncAppender appender) {
+                    String name = appender.getName();
+                    Gauge.builder("logging.async.queue.remaining", name,
+                                    metric(LevelDiscardingAsyncAppender::getRemainingCapacity))
+                            .description("Free places in the async log queue")
+                            .tag("appender", name)
+                            .register(registry);
+                    FunctionCounter.builder("logging.async.discarded", name,
+                                    metric(LevelDiscardingAsyncAppender::getDiscardedCount))
+                            .description("Log events discarded by level while the queue was nearly full")
+                            .tag("appender", name)
+                            .register(registry);
+                    FunctionCounter.builder("logging.async.dropped", name,
+                                    metric(LevelDiscardingAsyncAppender::getDroppedCount))
+                            .description("Log events lost because the queue was full")
+                            .tag("appender", name)
+                            .register(registry);
+                }
+            }
+        };
+    }
+
+    private static ToDoubleFunction<String> metric(ToDoubleFunction<LevelDiscardingAsyncAppender> value) {
+        return name -> find(name).map(value::applyAsDouble).orElse(Double.NaN);
+    }
+
+    private static Optional<LevelDiscardingAsyncAppender> find(String name) {
+        return rootLogger().getAppender(name) instanceof LevelDiscardingAsyncAppender appender
+                ? Optional.of(appender)
+                : Optional.empty();
+    }
+
+    private static Logger rootLogger() {
+        return ((LoggerContext) LoggerFactory.getILoggerFactory()).getLogger(Logger.ROOT_LOGGER_NAME);
+    }
+}
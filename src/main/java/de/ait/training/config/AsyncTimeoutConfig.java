@@ -0,0 +1,44 @@
+package de.ait.training.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+
+/**
+ * Таймаут асинхронной обработки для одного запроса. spring.mvc.async.request-timeout действует
+ * на все StreamingResponseBody и Callable, а долго писать ответ можно только выгрузке:
+ * контроллер вызывает setTimeout, перехватчик ставит таймаут до начала асинхронной обработки
+ */
+@Configuration
+public class AsyncTimeoutConfig implements WebMvcConfigurer {
+    private static final String TIMEOUT_ATTRIBUTE = AsyncTimeoutConfig.class.getName() + ".timeout";
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.registerCallableInterceptors(new CallableProcessingInterceptor() {
+            @Override
+            public <T> void beforeConcurrentHandling(NativeWebRequest request, Callable<T> task) {
+                if (request instanceof AsyncWebRequest asyncRequest
+                        && request.getAttribute(TIMEOUT_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST)
+                        instanceof Duration timeout) {
+                    asyncRequest.setTimeout(timeout.toMillis());
+                }
+            }
+        });
+    }
+
+    /**
+     * Таймаут для ответа этого запроса, если он будет записан асинхронно
+     */
+    public static void setTimeout(WebRequest request, Duration timeout) {
+        request.setAttribute(TIMEOUT_ATTRIBUTE, timeout, RequestAttributes.SCOPE_REQUEST);
+    }
+}
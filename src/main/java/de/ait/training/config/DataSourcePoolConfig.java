@@ -0,0 +1,77 @@
+package de.ait.training.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.util.Map;
+
+/**
+ * Настройки пула, которые нельзя записать одним свойством (профиль prod).
+ * app.datasource.pool.auto-size=true - размер пула по формуле PostgreSQL wiki: ядра * 2 + диски, где ядра -
+ * ядра сервера базы данных (app.datasource.pool.cores обязателен: ядра машины с приложением ничего не говорят
+ * о базе, без него приложение не стартует). minimum-idle - по числу ядер, остальные соединения открываются
+ * под нагрузкой и закрываются после idle-timeout. Явные spring.datasource.hikari.maximum-pool-size
+ * и minimum-idle важнее.
+ * app.datasource.postgresql.* - свойства JDBC-драйвера PostgreSQL (prepareThreshold, кэш prepared statements),
+ * передаются только если URL ведет на PostgreSQL, поэтому профиль работает и на H2
+ */
+@Slf4j
+@Configuration
+public class DataSourcePoolConfig {
+    private static final String POSTGRESQL_URL_PREFIX = "jdbc:postgresql:";
+
+    @Bean
+    static BeanPostProcessor hikariPoolPostProcessor(Environment environment) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof HikariDataSource dataSource) {
+                    configure(dataSource, environment);
+                }
+                return bean;
+            }
+        };
+    }
+
+    static void configure(HikariDataSource dataSource, Environment environment) {
+        if (environment.getProperty("app.datasource.pool.auto-size", Boolean.class, false)
+                && !environment.containsProperty("spring.datasource.hikari.maximum-pool-size")) {
+            int cores = environment.getProperty("app.datasource.pool.cores", Integer.class, 0);
+            if (cores <= 0) {
+                throw new IllegalStateException("app.datasource.pool.auto-size needs app.datasource.pool.cores"
+                        + " (cores of the database server) or spring.datasource.hikari.maximum-pool-size");
+            }
+            int size = poolSize(cores, environment.getProperty("app.datasource.pool.spindles", Integer.class, 1));
+            dataSource.setMaximumPoolSize(size);
+            if (!environment.containsProperty("spring.datasource.hikari.minimum-idle")) {
+                dataSource.setMinimumIdle(Math.min(cores, size));
+            }
+            log.info("Connection pool size {}, minimum idle {}", size, dataSource.getMinimumIdle());
+        }
+        if (dataSource.getJdbcUrl() != null && dataSource.getJdbcUrl().startsWith(POSTGRESQL_URL_PREFIX)) {
+            Map<String, String> driverProperties = Binder.get(environment)
+                    .bind("app.datasource.postgresql", Bindable.mapOf(String.class, String.class))
+                    .orElse(Map.of());
+            // свойства из spring.datasource.hikari.data-source-properties и URL не перекрываются
+            driverProperties.forEach((name, value) -> {
+                if (!dataSource.getDataSourceProperties().containsKey(name)
+                        && !dataSource.getJdbcUrl().contains(name + "=")) {
+                    dataSource.addDataSourceProperty(name, value);
+                }
+            });
+        }
+    }
+
+    /**
+     * @param cores ядра сервера базы данных
+     */
+    static int poolSize(int cores, int spindles) {
+        return cores * 2 + Math.max(spindles, 0);
+    }
+}
@@ -0,0 +1,63 @@
+package de.ait.training.config;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * AsyncAppender для logback-spring.xml (профили async-logging и prod): поток запроса только кладет событие
+ * в ограниченную очередь, в консоль и файл пишет рабочий поток logback.
+ * Когда в очереди остается меньше discardingThreshold мест, отбрасываются события уровня discardLevel
+ * и ниже (INFO - TRACE/DEBUG/INFO, DEBUG - INFO сохраняется). С neverBlock=true при полной очереди
+ * отбрасывается и остальное, поток запроса не ждет никогда.
+ * Счетчики отброшенных событий приблизительные, их публикует AsyncLoggingConfig
+ */
+public class LevelDiscardingAsyncAppender extends AsyncAppender {
+    private Level discardLevel = Level.INFO;
+    private final LongAdder discarded = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    public void setDiscardLevel(String discardLevel) {
+        this.discardLevel = Level.toLevel(discardLevel, Level.INFO);
+    }
+
+    public String getDiscardLevel() {
+        return discardLevel.toString();
+    }
+
+    /**
+     * @return сколько событий отброшено по уровню при почти полной очереди
+     */
+    public long getDiscardedCount() {
+        return discarded.sum();
+    }
+
+    /**
+     * @return сколько событий не поместилось в полную очередь (neverBlock)
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    @Override
+    protected boolean isDiscardable(ILoggingEvent event) {
+        if (event.getLevel().toInt() <= discardLevel.toInt()) {
+            discarded.increment();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        // полная очередь: событие, которое не отбросит isDiscardable, потеряется в offer
+        if (isNeverBlock() && getRemainingCapacity() == 0
+                && !(isQueueBelowDiscardingThreshold() && event.getLevel().toInt() <= discardLevel.toInt())) {
+            dropped.increment();
+            return;
+        }
+        super.append(event);
+    }
+}
@@ -0,0 +1,54 @@
+package de.ait.training.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+
+import java.util.Collection;
+
+/**
+ * Размер результата каждого метода репозитория: DistributionSummary repository.result.size
+ * с тегами repository и method. Время выполнения тех же методов Spring Boot пишет сам
+ * в spring.data.repository.invocations
+ */
+@Configuration
+public class RepositoryMetricsConfig {
+
+    @Bean
+    static BeanPostProcessor repositoryResultSizePostProcessor(ObjectProvider<MeterRegistry> meterRegistry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> factoryBean) {
+                    factoryBean.addRepositoryFactoryCustomizer(factory -> factory.addRepositoryProxyPostProcessor(
+                            (proxyFactory, information) -> proxyFactory.addAdvice(
+                                    resultSizeInterceptor(meterRegistry,
+                                            information.getRepositoryInterface().getSimpleName()))));
+                }
+                return bean;
+            }
+        };
+    }
+
+    private static MethodInterceptor resultSizeInterceptor(ObjectProvider<MeterRegistry> meterRegistry,
+                                                           String repository) {
+        return invocation -> {
+            Object result = invocation.proceed();
+            if (result instanceof Collection<?> collection) {
+                DistributionSummary.builder("repository.result.size")
+                        .description("Number of rows returned by a repository method")
+                        .tag("repository", repository)
+                        .tag("method", invocation.getMethod().getName())
+                        .publishPercentiles(0.5, 0.99)
+                        .register(meterRegistry.getObject())
+                        .record(collection.size());
+            }
+            return result;
+        };
+    }
+}
@@ -0,0 +1,75 @@
+package de.ait.training.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import org.springframework.context.annotation.Bean;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.Comparator;
+
+/**
+ * Компактный бинарный формат для списков автомобилей: Smile (бинарный JSON) по
+ * Accept: application/x-jackson-smile. Имена полей и повторяющиеся короткие строки
+ * (цвет, тип двигателя) пишутся один раз, дальше - ссылкой назад.
+ * Настройки модулей и сериализации берутся из основного ObjectMapper.
+ * Представление ответов /api/** зависит от Accept, поэтому все они (и 304 тоже) идут с Vary: Accept -
+ * иначе общий кэш или прокси может отдать Smile клиенту, который просил JSON
+ */
+@Configuration
+public class SmileConfig implements WebMvcConfigurer {
+
+    public static final MediaType APPLICATION_SMILE = MediaType.valueOf("application/x-jackson-smile");
+
+    @Bean
+    MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(ObjectMapper objectMapper) {
+        return new MappingJackson2SmileHttpMessageConverter(smileMapper(objectMapper));
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new HandlerInterceptor() {
+            @Override
+            public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+                response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+                return true;
+            }
+        }).addPathPatterns("/api/**");
+    }
+
+    public static ObjectMapper smileMapper(ObjectMapper objectMapper) {
+        SmileFactory factory = SmileFactory.builder()
+                .enable(SmileGenerator.Feature.CHECK_SHARED_NAMES)
+                .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+                .build();
+        return objectMapper.copyWith(factory);
+    }
+
+    /**
+     * true, если в Accept Smile стоит выше JSON (при равном q - что указано раньше)
+     */
+    public static boolean prefersSmile(String accept) {
+        if (accept == null) {
+            return false;
+        }
+        try {
+            return MediaType.parseMediaTypes(accept).stream()
+                    .filter(type -> type.equalsTypeAndSubtype(APPLICATION_SMILE)
+                            || type.equalsTypeAndSubtype(MediaType.APPLICATION_JSON))
+                    .max(Comparator.comparingDouble(MediaType::getQualityValue))
+                    .map(type -> type.equalsTypeAndSubtype(APPLICATION_SMILE))
+                    .orElse(false);
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package de.ait.training.config;
+
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.util.List;
+
+/**
+ * Выборочная ленивая инициализация для профиля fast-start.
+ * При spring.main.lazy-initialization=true лениво создаются только бины, чей класс начинается
+ * с одного из app.startup.lazy-packages (почта, Thymeleaf, springdoc) - они создаются
+ * при первом письме или первом запросе к /v3/api-docs. Остальные бины (JPA, кэш, контроллеры
+ * автомобилей) создаются как обычно, чтобы первый запрос к /api/cars не платил за инициализацию
+ */
+@Configuration
+public class StartupConfig {
+
+    @Bean
+    static LazyInitializationExcludeFilter eagerOutsideLazyPackages(Environment environment) {
+        List<String> lazyPackages = List.of(environment.getProperty("app.startup.lazy-packages", String[].class,
+                new String[0]));
+        return (beanName, beanDefinition, beanType) ->
+                beanType == null || lazyPackages.stream().noneMatch(beanType.getName()::startsWith);
+    }
+}
@@ -1,15 +1,32 @@
 package de.ait.training.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import de.ait.training.dto.CampaignRecipient;
+import de.ait.training.dto.CampaignRequest;
+import de.ait.training.dto.CampaignResult;
+import de.ait.training.service.EmailCampaignService;
+import de.ait.training.service.EmailDispatcher;
 import de.ait.training.service.EmailService;
 import jakarta.validation.constraints.Email;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -18,19 +35,97 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class EmailController {
     private final EmailService emailService;
+    private final EmailDispatcher emailDispatcher;
+    private final EmailCampaignService emailCampaignService;
 
 
 
     @PostMapping("/service")
     public ResponseEntity<String> sendEmailToService(@RequestParam  String emailTo) {
-        emailService.sendTamplateEmail(emailTo,"Car service time","email/CarService",
-                Map.of(
-                        "title","Welcome to our service",
-                        "userName","Zhanna",
-                        "promoCode","AIT-223344"
-                )
-                );
-                return ResponseEntity.ok("Welcome to our service");
+        Map<String, Object> variables = Map.of(
+                "title","Welcome to our service",
+                "userName","Zhanna",
+                "promoCode","AIT-223344"
+        );
+
+        if (emailDispatcher.isEnabled()) {
+            if (!emailDispatcher.dispatch(emailTo, "Car service time", "email/CarService", variables)) {
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header(HttpHeaders.RETRY_AFTER, "1")
+                        .body("Email queue is full, try again later");
+            }
+            return ResponseEntity.accepted().body("Welcome to our service");
+        }
+
+        emailService.sendTamplateEmail(emailTo,"Car service time","email/CarService", variables);
+        return ResponseEntity.ok("Welcome to our service");
+    }
+
+    /**
+     * POST /api/email/campaign
+     * Рассылка списку получателей из JSON идет в фоне: 202 и id рассылки, статусы - GET /campaign/{id}
+     */
+    @PostMapping(value = "/campaign", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<CampaignResult> sendCampaign(@RequestBody CampaignRequest request) {
+        try {
+            return accepted(emailCampaignService.start(request));
+        } catch (IllegalArgumentException e) {
+            log.error("Wrong campaign: {}", e.getMessage());
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (IllegalStateException e) {
+            log.error("Campaign not started: {}", e.getMessage());
+            return busy();
+        }
+    }
+
+    /**
+     * POST /api/email/campaign?subject=...&template=email/CarService
+     * Рассылка по файлу: CSV с заголовком (email,userName,promoCode) или NDJSON
+     */
+    @PostMapping(value = "/campaign", consumes = {"text/csv", MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<CampaignResult> sendCampaignFromFile(
+            @RequestParam(defaultValue = "Car service time") String subject,
+            @RequestParam(defaultValue = "email/CarService") String template,
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+            InputStream body) throws IOException {
+        try {
+            boolean csv = contentType.isCompatibleWith(MediaType.valueOf("text/csv"));
+            List<CampaignRecipient> recipients = emailCampaignService.readRecipients(body, csv);
+            return accepted(emailCampaignService.start(new CampaignRequest(subject, template, Map.of(),
+                    recipients)));
+        } catch (JsonProcessingException e) {
+            log.error("Malformed campaign recipients: {}", e.getOriginalMessage());
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (IllegalArgumentException e) {
+            log.error("Wrong campaign: {}", e.getMessage());
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (IllegalStateException e) {
+            log.error("Campaign not started: {}", e.getMessage());
+            return busy();
+        }
+    }
+
+    /**
+     * GET /api/email/campaign/{id}
+     * Состояние рассылки и статус каждого получателя (PENDING, пока письмо не обработано)
+     */
+    @GetMapping("/campaign/{id}")
+    public ResponseEntity<CampaignResult> getCampaign(@PathVariable String id) {
+        return emailCampaignService.status(id)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    private static ResponseEntity<CampaignResult> accepted(CampaignResult result) {
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/email/campaign/" + result.id()))
+                .body(result);
+    }
+
+    private static ResponseEntity<CampaignResult> busy() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "10")
+                .build();
     }
 
 }
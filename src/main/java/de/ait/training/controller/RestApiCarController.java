@@ -1,27 +1,79 @@
 package de.ait.training.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.ait.training.config.AsyncTimeoutConfig;
+import de.ait.training.config.SmileConfig;
+import de.ait.training.dto.BulkImportResult;
+import de.ait.training.dto.BulkUpdateResult;
+import de.ait.training.dto.CarCatalogVersion;
+import de.ait.training.dto.CarChangePage;
+import de.ait.training.dto.CarDto;
+import de.ait.training.dto.CarPatch;
+import de.ait.training.dto.CarPatchResult;
+import de.ait.training.dto.CarPriceUpdate;
+import de.ait.training.dto.CarSearchCriteria;
+import de.ait.training.dto.CarStats;
+import de.ait.training.dto.CarStatsGroupBy;
+import de.ait.training.dto.CarUpsertResult;
+import de.ait.training.dto.ModelSuggestion;
+import de.ait.training.event.CarChangedEvent;
+import de.ait.training.event.CarsBulkUpdatedEvent;
+import de.ait.training.event.CarsUpdatedEvent;
 import de.ait.training.model.Car;
 import de.ait.training.repository.CarRepository;
+import de.ait.training.repository.CarUpsertRepository;
+import de.ait.training.service.CarCatalogSnapshot;
+import de.ait.training.service.CarCatalogVersions;
+import de.ait.training.service.CarChangeFeed;
+import de.ait.training.service.CarExportService;
+import de.ait.training.service.CarImportService;
+import de.ait.training.service.CarModelIndex;
+import de.ait.training.service.CarPriceIndex;
+import de.ait.training.service.CarStatsSummary;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.web.SortDefault;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
-
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
 @Slf4j
 @Tag(name = "Cars", description = "Operation on cars")
@@ -29,7 +81,29 @@ import java.util.stream.Collectors;
 @RequestMapping("/api/cars")
 public class RestApiCarController {
 
+    static final String NEXT_AFTER_HEADER = "X-Next-After";
+
     CarRepository carRepository;
+    ObjectMapper objectMapper;
+    ObjectMapper smileMapper;
+    Optional<CarPriceIndex> priceIndex;
+    Optional<CarStatsSummary> statsSummary;
+    Optional<CarModelIndex> modelIndex;
+    Optional<CarCatalogSnapshot> catalogSnapshot;
+    CarCatalogVersions catalogVersions;
+    CarImportService carImportService;
+    CarExportService carExportService;
+    CarChangeFeed changeFeed;
+    ApplicationEventPublisher eventPublisher;
+
+    @Value("${app.cars.stream.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${app.cars.page.max-size:1000}")
+    private int maxPageSize;
+
+    @Value("${app.cars.export.timeout:30m}")
+    private Duration exportTimeout;
 
     /**
      * Car carOne = new Car(1, "black", "BMW x5", 25000);
@@ -53,18 +127,216 @@ public class RestApiCarController {
      */
 
 
-    RestApiCarController(CarRepository carRepository) {
+    RestApiCarController(CarRepository carRepository, ObjectMapper objectMapper,
+                         Optional<CarPriceIndex> priceIndex, Optional<CarStatsSummary> statsSummary,
+                         Optional<CarModelIndex> modelIndex, Optional<CarCatalogSnapshot> catalogSnapshot,
+                         CarCatalogVersions catalogVersions, CarImportService carImportService, CarExportService carExportService,
+                         CarChangeFeed changeFeed, ApplicationEventPublisher eventPublisher) {
         this.carRepository = carRepository;
+        this.objectMapper = objectMapper;
+        this.smileMapper = SmileConfig.smileMapper(objectMapper);
+        this.priceIndex = priceIndex;
+        this.statsSummary = statsSummary;
+        this.modelIndex = modelIndex;
+        this.catalogSnapshot = catalogSnapshot;
+        this.catalogVersions = catalogVersions;
+        this.carImportService = carImportService;
+        this.carExportService = carExportService;
+        this.changeFeed = changeFeed;
+        this.eventPublisher = eventPublisher;
     }
 
+    /**
+     * GET /api/cars?after={id}
+     * Весь список отдается потоком, кусками по chunkSize (keyset по id),
+     * поэтому память не зависит от размера таблицы.
+     * Если каталог не менялся с ETag из If-None-Match, отвечает 304 без тела.
+     * При Accept: application/x-jackson-smile поток пишется в Smile
+     *
+     * @param after id, после которого начинается выдача
+     * @return поток всех автомобилей в виде JSON-массива
+     */
     @Operation(
             summary = "Show cars",
-            description = "Show list of the cars "
-
+            description = "Show list of the cars, streamed in chunks ordered by id ",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "cars, catalog version in ETag header"),
+                    @ApiResponse(responseCode = "304", description = "catalog not changed since If-None-Match")
+            }
     )
     @GetMapping
-    Iterable<Car> getCars() {
-        return carRepository.findAll();
+    public ResponseEntity<StreamingResponseBody> getCars(
+            @Parameter(description = "return cars with id greater than this value", example = "0")
+            @RequestParam(defaultValue = "0") Long after,
+            WebRequest request) {
+        if (catalogNotModified(request, catalogSnapshot.filter(CarCatalogSnapshot::isReady).isPresent())) {
+            return null;
+        }
+        boolean smile = SmileConfig.prefersSmile(request.getHeader(HttpHeaders.ACCEPT));
+        ObjectMapper mapper = smile ? smileMapper : objectMapper;
+        StreamingResponseBody body = out -> streamCars(after, out, mapper);
+        return ResponseEntity.ok()
+                .contentType(smile ? SmileConfig.APPLICATION_SMILE : MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    /**
+     * GET /api/cars?after={id}&limit={n}
+     * Одна keyset-страница, id последнего автомобиля приходит в заголовке X-Next-After
+     *
+     * @param after id, после которого начинается страница
+     * @param limit размер страницы
+     * @return страница автомобилей
+     */
+    @Operation(
+            summary = "Show page of cars",
+            description = "Show next page of the cars after given id ",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "cars page, next cursor in X-Next-After header"),
+                    @ApiResponse(responseCode = "400", description = "limit is not positive")
+            }
+    )
+    @GetMapping(params = "limit")
+    public ResponseEntity<List<Car>> getCarsPage(
+            @Parameter(description = "return cars with id greater than this value", example = "0")
+            @RequestParam(defaultValue = "0") Long after,
+
+            @Parameter(description = "page size", example = "100")
+            @RequestParam Integer limit,
+            WebRequest request) {
+
+        if (limit <= 0) {
+            log.error("Page limit must be greater than zero");
+            return new ResponseEntity<>(new ArrayList<>(), HttpStatus.BAD_REQUEST);
+        }
+        if (catalogNotModified(request, catalogSnapshot.filter(CarCatalogSnapshot::isReady).isPresent())) {
+            return null;
+        }
+
+        int pageSize = Math.min(limit, maxPageSize);
+        List<Car> page = catalogSnapshot
+                .filter(CarCatalogSnapshot::isReady)
+                .map(snapshot -> snapshot.page(after, pageSize))
+                .orElseGet(() -> carRepository.findByIdGreaterThanOrderByIdAsc(after, Limit.of(pageSize)));
+        HttpHeaders headers = new HttpHeaders();
+        if (!page.isEmpty()) {
+            headers.set(NEXT_AFTER_HEADER, String.valueOf(page.get(page.size() - 1).getId()));
+        }
+        return new ResponseEntity<>(page, headers, HttpStatus.OK);
+    }
+
+    /**
+     * GET /api/cars/{id}
+     * ETag автомобиля - его id и version, при совпадении с If-None-Match отвечает 304
+     *
+     * @param id
+     * @return автомобиль или 404
+     */
+    @Operation(
+            summary = "Show car",
+            description = "Show car by ID ",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "car found, version in ETag header"),
+                    @ApiResponse(responseCode = "304", description = "car not changed since If-None-Match"),
+                    @ApiResponse(responseCode = "404", description = "car not found")
+            }
+    )
+    @GetMapping("/{id}")
+    ResponseEntity<Car> getCar(@PathVariable Long id, WebRequest request) {
+        Car car = catalogSnapshot
+                .filter(CarCatalogSnapshot::isReady)
+                .map(snapshot -> snapshot.findById(id))
+                .orElseGet(() -> carRepository.findById(id))
+                .orElse(null);
+        if (car == null) {
+            log.info("Car with id {} not found", id);
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        if (request.checkNotModified(carETag(car), lastModifiedMillis(car))) {
+            return null;
+        }
+        return new ResponseEntity<>(car, HttpStatus.OK);
+    }
+
+    /**
+     * Пишет JSON-массив всех автомобилей с id больше after, читая их страницами по chunkSize.
+     * Каждая страница читается в своей транзакции, поэтому память не растет вместе с таблицей.
+     * Со снимком каталога строки пишутся прямо из его колонок, без базы и без объектов Car
+     */
+    private void streamCars(Long after, OutputStream out, ObjectMapper mapper) throws IOException {
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+            generator.writeStartArray();
+            Optional<CarCatalogSnapshot> snapshot = catalogSnapshot.filter(CarCatalogSnapshot::isReady);
+            if (snapshot.isPresent()) {
+                snapshot.get().writeCars(after, generator);
+                generator.writeEndArray();
+                return;
+            }
+            Long cursor = after;
+            List<Car> chunk;
+            do {
+                chunk = carRepository.findByIdGreaterThanOrderByIdAsc(cursor, Limit.of(chunkSize));
+                for (Car car : chunk) {
+                    generator.writeObject(car);
+                }
+                generator.flush();
+                if (!chunk.isEmpty()) {
+                    cursor = chunk.get(chunk.size() - 1).getId();
+                }
+            } while (chunk.size() == chunkSize);
+            generator.writeEndArray();
+        }
+    }
+
+    /**
+     * GET /api/cars/export?format=csv&gzip=true
+     * Выгрузка всего каталога файлом: NDJSON (один автомобиль на строку) или CSV с заголовком.
+     * Строки пишутся в ответ по мере чтения курсора, с gzip=true - сразу в сжатый поток (файл .gz).
+     * Запись ответа ограничена app.cars.export.timeout, а не общим таймаутом асинхронных запросов
+     *
+     * @return поток всех автомобилей по возрастанию id
+     */
+    @Operation(
+            summary = "Export cars",
+            description = "Export all cars as NDJSON or CSV file, optionally gzip compressed ",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "all cars ordered by id"),
+                    @ApiResponse(responseCode = "400", description = "unknown format")
+            }
+    )
+    @GetMapping("/export")
+    ResponseEntity<StreamingResponseBody> exportCars(
+            @Parameter(description = "ndjson or csv", example = "csv")
+            @RequestParam(defaultValue = "ndjson") String format,
+
+            @Parameter(description = "gzip compressed file", example = "true")
+            @RequestParam(defaultValue = "false") boolean gzip,
+            WebRequest request) {
+
+        CarExportService.Format exportFormat;
+        try {
+            exportFormat = CarExportService.Format.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            log.error("Unknown export format {}", format);
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+
+        // долгий таймаут только у выгрузки, остальные ответы - с таймаутом по умолчанию
+        AsyncTimeoutConfig.setTimeout(request, exportTimeout);
+        String fileName = "cars." + exportFormat.extension() + (gzip ? ".gz" : "");
+        StreamingResponseBody body = out -> {
+            if (gzip) {
+                try (GZIPOutputStream gzipOut = new GZIPOutputStream(out, 64 * 1024)) {
+                    carExportService.export(exportFormat, gzipOut);
+                }
+            } else {
+                carExportService.export(exportFormat, out);
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(gzip ? "application/gzip" : exportFormat.contentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                .body(body);
     }
 
     /**
@@ -91,40 +363,198 @@ public class RestApiCarController {
        //     Car errorCar = new Car("000", "000", 9999);
        //     return errorCar;
        // }
-        carRepository.save(car);
-        return car;
+        // id и version назначает сервер
+        car.setId(null);
+        car.setVersion(null);
+        Car savedCar = carRepository.saveAndCount(car);
+        eventPublisher.publishEvent(CarChangedEvent.created(savedCar));
+        return savedCar;
     }
 
     /**
-     * Замена существующего автомобиля, если id не найден то создаем новый
+     * POST /api/cars/bulk
+     * Массовый импорт: JSON-массив или NDJSON, сохраняется пачками
+     *
+     * @param body поток с автомобилями
+     * @return сколько автомобилей сохранено
+     */
+    @Operation(
+            summary = "Import cars",
+            description = "Import many cars from JSON array or NDJSON stream, saved in batches ",
+            responses = {
+                    @ApiResponse(responseCode = "201", description = "cars imported"),
+                    @ApiResponse(responseCode = "400", description = "malformed input")
+            }
+    )
+    @PostMapping(value = "/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    ResponseEntity<BulkImportResult> importCars(InputStream body) throws IOException {
+        try {
+            return new ResponseEntity<>(carImportService.importCars(body), HttpStatus.CREATED);
+        } catch (JsonProcessingException e) {
+            log.error("Malformed cars import: {}", e.getOriginalMessage());
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Замена автомобиля с id из пути, если id не найден - создается автомобиль с этим id.
+     * Один запрос INSERT ... ON CONFLICT / MERGE без предварительного findById, статус 200 или 201
+     * определяется по результату этого запроса. Создать автомобиль можно только с id от
+     * CarUpsertRepository.CLIENT_ID_MIN, меньшие id выдает POST - для них 404.
+     * Optimistic locking: ожидаемая версия берется из If-Match (ETag) или из поля version,
+     * если автомобиль уже изменили - 412 (If-Match) или 409 (version)
      *
      * @param id
      * @param car
-     * @return созданный или найденный автомобиль
+     * @return созданный или измененный автомобиль
      */
 
     @Operation(
             summary = "Change car",
-            description = "Change existing car by ID",
+            description = "Replace car by ID in one upsert statement, create it with this ID if not found",
             responses = {
-                    @ApiResponse(responseCode = "200", description = "car with id found and changed")
+                    @ApiResponse(responseCode = "200", description = "car with id found and changed"),
+                    @ApiResponse(responseCode = "201", description = "car with id not found and created"),
+                    @ApiResponse(responseCode = "404", description = "car with id not found, id is assigned by POST"),
+                    @ApiResponse(responseCode = "409", description = "car was changed, version is stale"),
+                    @ApiResponse(responseCode = "412", description = "car was changed, If-Match does not match")
 
             }
 
     )
     @PutMapping("/{id}")
-    ResponseEntity<Car> putCar(@PathVariable Long id, @RequestBody Car car) {
+    ResponseEntity<Car> putCar(@PathVariable Long id, @RequestBody Car car, WebRequest request) {
+
+        String ifMatch = request.getHeader(HttpHeaders.IF_MATCH);
+        Long expectedVersion = car.getVersion();
+        if (ifMatch != null && !"*".equals(ifMatch.trim())) {
+            expectedVersion = versionFromETag(id, ifMatch);
+            if (expectedVersion == null) {
+                log.info("Car with id {}: If-Match {} is not an ETag of this car", id, ifMatch);
+                return new ResponseEntity<>(HttpStatus.PRECONDITION_FAILED);
+            }
+        }
+        car.setId(id);
+
+        CarUpsertResult result = carRepository.upsert(car, expectedVersion);
+        switch (result.status()) {
+            case CREATED -> {
+                log.info("Car with id {} not found and created", id);
+                eventPublisher.publishEvent(CarChangedEvent.created(result.after()));
+                return ResponseEntity.status(HttpStatus.CREATED).eTag(carETag(result.after())).body(result.after());
+            }
+            case UPDATED -> {
+                log.info("Car with id {} found and changed", id);
+                eventPublisher.publishEvent(new CarChangedEvent(result.before(), result.after()));
+                return ResponseEntity.ok().eTag(carETag(result.after())).body(result.after());
+            }
+            case ID_RESERVED -> {
+                log.info("Car with id {} not found, ids below {} are assigned by POST", id,
+                        CarUpsertRepository.CLIENT_ID_MIN);
+                return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+            }
+            default -> {
+                log.info("Car with id {} was changed, version {} is stale", id, expectedVersion);
+                return new ResponseEntity<>(ifMatch != null ? HttpStatus.PRECONDITION_FAILED : HttpStatus.CONFLICT);
+            }
+        }
+    }
 
-        Car foundCar = carRepository.findById(id).orElse(null);
-        if (foundCar == null) {
-            log.info("Car with id {} not found", id);
-            return new ResponseEntity<>(postCar(car), HttpStatus.CREATED);
-        } else {
-            log.info("Car with id {} found and changed", id);
-            carRepository.save(car);
-           return new ResponseEntity<>(car, HttpStatus.OK);
+    /**
+     * Частичное изменение автомобиля: меняются только поля из тела, UPDATE пишет только
+     * измененные колонки. Optimistic locking как у PUT: If-Match (412) или поле version (409)
+     *
+     * @param id
+     * @param patch
+     * @return измененный автомобиль
+     */
+    @Operation(
+            summary = "Patch car",
+            description = "Change only given fields of the car by ID",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "car with id found and changed"),
+                    @ApiResponse(responseCode = "404", description = "car with id not found"),
+                    @ApiResponse(responseCode = "409", description = "car was changed, version is stale"),
+                    @ApiResponse(responseCode = "412", description = "car was changed, If-Match does not match")
+            }
+    )
+    @PatchMapping(value = "/{id}", consumes = {MediaType.APPLICATION_JSON_VALUE, "application/merge-patch+json"})
+    ResponseEntity<Car> patchCar(@PathVariable Long id, @RequestBody CarPatch patch, WebRequest request) {
+
+        String ifMatch = request.getHeader(HttpHeaders.IF_MATCH);
+        Long expectedVersion = patch.version();
+        if (ifMatch != null && !"*".equals(ifMatch.trim())) {
+            expectedVersion = versionFromETag(id, ifMatch);
+            if (expectedVersion == null) {
+                log.info("Car with id {}: If-Match {} is not an ETag of this car", id, ifMatch);
+                return new ResponseEntity<>(HttpStatus.PRECONDITION_FAILED);
+            }
+        }
+        HttpStatus staleStatus = ifMatch != null ? HttpStatus.PRECONDITION_FAILED : HttpStatus.CONFLICT;
+
+        CarPatchResult result;
+        try {
+            result = carRepository.patch(id, patch, expectedVersion);
+        } catch (ObjectOptimisticLockingFailureException e) {
+            log.info("Car with id {} was changed concurrently", id);
+            return new ResponseEntity<>(staleStatus);
+        }
+        switch (result.status()) {
+            case UPDATED -> {
+                log.info("Car with id {} patched", id);
+                eventPublisher.publishEvent(new CarChangedEvent(result.before(), result.after()));
+                return ResponseEntity.ok().eTag(carETag(result.after())).body(result.after());
+            }
+            case NOT_FOUND -> {
+                log.info("Car with id {} not found", id);
+                return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+            }
+            default -> {
+                log.info("Car with id {} was changed, version {} is stale", id, expectedVersion);
+                return new ResponseEntity<>(staleStatus);
+            }
+        }
+    }
+
+    /**
+     * PATCH /api/cars
+     * Массовое изменение цен без загрузки автомобилей: {"prices": {"1": 25000, "2": 18000}}
+     * или {"percent": -10, "color": "red"} - одним или несколькими UPDATE в базе
+     *
+     * @return сколько автомобилей изменено
+     */
+    @Operation(
+            summary = "Update prices",
+            description = "Set new prices by id or change prices by percent (optionally only for color / model)",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "prices changed"),
+                    @ApiResponse(responseCode = "400", description = "both or none of prices and percent, "
+                            + "negative price, percent <= -100 or filter with prices")
+            }
+    )
+    @PatchMapping
+    ResponseEntity<BulkUpdateResult> patchCarPrices(@RequestBody CarPriceUpdate update) {
+        boolean byId = update.prices() != null && !update.prices().isEmpty();
+        boolean valid = byId
+                ? update.percent() == null && update.color() == null && update.model() == null
+                && update.prices().values().stream().allMatch(price -> price != null && price >= 0)
+                : update.percent() != null && update.percent() > -100;
+        if (!valid) {
+            log.error("Wrong price update: {}", update);
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         }
 
+        BulkUpdateResult result = byId
+                ? carRepository.updatePrices(update.prices())
+                : carRepository.adjustPrices(update.percent(), update.color(), update.model());
+        log.info("Prices of {} cars changed in {} statements", result.updated(), result.statements());
+        if (result.updated() > 0) {
+            // по id известны все измененные автомобили - слушатели обновляют только их
+            eventPublisher.publishEvent(result.after() != null
+                    ? new CarsUpdatedEvent(result.before(), result.after())
+                    : new CarsBulkUpdatedEvent(result.updated()));
+        }
+        return new ResponseEntity<>(result, HttpStatus.OK);
     }
 
     /**
@@ -144,7 +574,217 @@ public class RestApiCarController {
     @DeleteMapping("/{id}")
     void deleteCar(@PathVariable Long id) {
         log.info("Delete car with id {}", id);
-        carRepository.deleteById(id);
+        carRepository.findById(id).ifPresent(car -> {
+            if (carRepository.deleteAndCountById(id)) {
+                eventPublisher.publishEvent(CarChangedEvent.deleted(car));
+            }
+        });
+    }
+
+    /**
+     * GET /api/cars/search?color=red&maxPrice=30000&minYear=2020&engineType=diesel&sort=price,desc&limit=50
+     * Все фильтры необязательны и объединяются через AND в одном запросе
+     *
+     * @return найденные автомобили (пустой список, если ничего не найдено)
+     */
+    @Operation(
+            summary = "Search cars",
+            description = "Search cars by color, price range, year range and engine type with sort and limit ",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "cars matching all given filters"),
+                    @ApiResponse(responseCode = "400", description = "min greater than max, bad limit or sort")
+            }
+    )
+    @GetMapping("/search")
+    ResponseEntity<List<CarDto>> searchCars(
+            @Parameter(description = "color, ignore case", example = "red")
+            @RequestParam(required = false) String color,
+
+            @Parameter(description = "min price", example = "10000.0")
+            @RequestParam(required = false) Double minPrice,
+
+            @Parameter(description = "max price", example = "30000.0")
+            @RequestParam(required = false) Double maxPrice,
+
+            @Parameter(description = "min year", example = "2020")
+            @RequestParam(required = false) Integer minYear,
+
+            @Parameter(description = "max year", example = "2024")
+            @RequestParam(required = false) Integer maxYear,
+
+            @Parameter(description = "engine type, ignore case", example = "diesel")
+            @RequestParam(required = false) String engineType,
+
+            @Parameter(description = "id, color, model, price, year or engineType", example = "price,desc")
+            @SortDefault("id") Sort sort,
+
+            @Parameter(description = "max number of cars", example = "100")
+            @RequestParam(defaultValue = "100") Integer limit,
+
+            WebRequest request) {
+
+        if (limit <= 0
+                || (minPrice != null && maxPrice != null && maxPrice < minPrice)
+                || (minYear != null && maxYear != null && maxYear < minYear)) {
+            log.error("Wrong search parameters: limit {}, price {}-{}, year {}-{}",
+                    limit, minPrice, maxPrice, minYear, maxYear);
+            return new ResponseEntity<>(new ArrayList<>(), HttpStatus.BAD_REQUEST);
+        }
+        if (catalogNotModified(request, false)) {
+            return null;
+        }
+
+        CarSearchCriteria criteria = new CarSearchCriteria(color, minPrice, maxPrice, minYear, maxYear, engineType);
+        try {
+            List<CarDto> cars = carRepository.search(criteria, sort, Math.min(limit, maxPageSize));
+            log.info("Found {} cars for {}", cars.size(), criteria);
+            return new ResponseEntity<>(cars, HttpStatus.OK);
+        } catch (InvalidDataAccessApiUsageException e) {
+            log.error("Wrong search sort: {}", e.getMessage());
+            return new ResponseEntity<>(new ArrayList<>(), HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * GET /api/cars/stats?groupBy=color
+     * Количество, min/max/avg цены и перцентили p50/p90/p99 считаются в базе одним GROUP BY,
+     * клиенту не нужно выгружать весь каталог. Без groupBy - одна строка по всему каталогу.
+     * Если включена сводка в памяти (app.cars.stats.summary.enabled), ответ берется из нее
+     *
+     * @return статистика по группам, группы по возрастанию, null-группа последней
+     */
+    @Operation(
+            summary = "Price statistics",
+            description = "Count, min, max, avg and p50/p90/p99 of the price, grouped by color, model, year or engine_type ",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "statistics per group"),
+                    @ApiResponse(responseCode = "304", description = "catalog not changed since If-None-Match"),
+                    @ApiResponse(responseCode = "400", description = "unknown groupBy")
+            }
+    )
+    @GetMapping("/stats")
+    ResponseEntity<List<CarStats>> getStats(
+            @Parameter(description = "color, model, year or engine_type; without it - whole catalog", example = "color")
+            @RequestParam(required = false) String groupBy,
+            WebRequest request) {
+
+        CarStatsGroupBy group = null;
+        if (groupBy != null) {
+            Optional<CarStatsGroupBy> parsed = CarStatsGroupBy.fromParameter(groupBy);
+            if (parsed.isEmpty()) {
+                log.error("Unknown stats groupBy {}", groupBy);
+                return new ResponseEntity<>(new ArrayList<>(), HttpStatus.BAD_REQUEST);
+            }
+            group = parsed.get();
+        }
+        if (catalogNotModified(request, statsSummary.filter(CarStatsSummary::isReady).isPresent())) {
+            return null;
+        }
+
+        CarStatsGroupBy by = group;
+        List<CarStats> stats = statsSummary
+                .filter(CarStatsSummary::isReady)
+                .map(summary -> summary.stats(by))
+                .orElseGet(() -> carRepository.stats(by));
+        log.info("Stats by {}: {} groups", groupBy, stats.size());
+        return new ResponseEntity<>(stats, HttpStatus.OK);
+    }
+
+    /**
+     * GET /api/cars/models/suggest?prefix=bm&limit=10
+     * Подсказки при вводе модели, с начала названия и с начала любого слова ("x5" находит "BMW x5"):
+     * из индекса в памяти (app.cars.model-index.enabled), без него - из таблицы car_model_keys.
+     * Без ETag: запрос версии каталога дороже самого поиска
+     *
+     * @return модели с количеством автомобилей, самые подходящие первыми
+     */
+    @Operation(
+            summary = "Suggest models",
+            description = "Typeahead for model names: exact match first, then by number of cars ",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "matching models"),
+                    @ApiResponse(responseCode = "400", description = "limit less than 1")
+            }
+    )
+    @GetMapping("/models/suggest")
+    ResponseEntity<List<ModelSuggestion>> suggestModels(
+            @Parameter(description = "beginning of the model or of a word in it, ignore case", example = "bm")
+            @RequestParam String prefix,
+
+            @Parameter(description = "max number of models", example = "10")
+            @RequestParam(defaultValue = "10") Integer limit) {
+
+        if (limit <= 0) {
+            log.error("Wrong suggest limit {}", limit);
+            return new ResponseEntity<>(new ArrayList<>(), HttpStatus.BAD_REQUEST);
+        }
+        String trimmed = prefix.trim();
+        if (trimmed.isEmpty()) {
+            return new ResponseEntity<>(new ArrayList<>(), HttpStatus.OK);
+        }
+        int max = Math.min(limit, maxPageSize);
+        List<ModelSuggestion> suggestions = modelIndex
+                .filter(CarModelIndex::isReady)
+                .map(index -> index.suggest(trimmed, max))
+                .orElseGet(() -> carRepository.suggestModels(trimmed, max));
+        return new ResponseEntity<>(suggestions, HttpStatus.OK);
+    }
+
+    /**
+     * GET /api/cars/changes?since={epoch}:{seq}
+     * Long-poll ленты изменений этого экземпляра: отвечает сразу, если после since есть изменения,
+     * иначе ждет первого изменения (или таймаута - пустой список). Базу не читает
+     *
+     * @param since позиция next из предыдущего ответа
+     * @return изменения и позиция для следующего запроса, reset=true - каталог нужно перечитать
+     */
+    @Operation(
+            summary = "Poll car changes",
+            description = "Long-poll changes made after given sequence number ",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "changes after since, empty on timeout"),
+                    @ApiResponse(responseCode = "400", description = "limit less than 1")
+            }
+    )
+    @GetMapping(value = "/changes", produces = MediaType.APPLICATION_JSON_VALUE)
+    DeferredResult<CarChangePage> pollChanges(
+            @Parameter(description = "position epoch:lastSeq from the previous response, none - from the start",
+                    example = "3f9c2a7b1d04:42")
+            @RequestParam(required = false) String since,
+
+            @Parameter(description = "max number of changes", example = "100")
+            @RequestParam(defaultValue = "1000") Integer limit) {
+
+        if (limit <= 0) {
+            log.error("Wrong changes limit {}", limit);
+            DeferredResult<CarChangePage> badRequest = new DeferredResult<>();
+            badRequest.setErrorResult(new ResponseEntity<>(HttpStatus.BAD_REQUEST));
+            return badRequest;
+        }
+        return changeFeed.poll(since, limit);
+    }
+
+    /**
+     * GET /api/cars/changes (Accept: text/event-stream)
+     * Подписка SSE на ленту изменений этого экземпляра: событие change с epoch:seq в id,
+     * reset - каталог нужно перечитать. При переподключении продолжает с Last-Event-ID
+     *
+     * @param since id последнего полученного события, без него - только новые изменения
+     */
+    @Operation(
+            summary = "Subscribe to car changes",
+            description = "Server-Sent Events stream of changes after given sequence number ",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "event stream")
+            }
+    )
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    SseEmitter subscribeChanges(
+            @Parameter(description = "last received event id epoch:seq, none - only new changes",
+                    example = "3f9c2a7b1d04:42")
+            @RequestParam(required = false) String since,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return changeFeed.subscribe(lastEventId != null ? lastEventId : since);
     }
 
     /**
@@ -163,8 +803,14 @@ public class RestApiCarController {
     )
 
     @GetMapping("/color/{color}")
-    public ResponseEntity<List<Car>> getCarsByColor(@PathVariable String color) {
-        List<Car> listCarsByColor = carRepository.findCarByColorIgnoreCase(color);
+    public ResponseEntity<List<CarDto>> getCarsByColor(@PathVariable String color, WebRequest request) {
+        if (catalogNotModified(request, true)) {
+            return null;
+        }
+        List<CarDto> listCarsByColor = catalogSnapshot
+                .filter(CarCatalogSnapshot::isReady)
+                .map(snapshot -> snapshot.findByColorIgnoreCase(color))
+                .orElseGet(() -> carRepository.findCarByColorIgnoreCase(color));
 
         if (listCarsByColor.isEmpty()) {
             log.info("No cars found with color {}", color);
@@ -186,19 +832,28 @@ public class RestApiCarController {
     )
 
     @GetMapping("/price/between/{min}/{max}")
-    public ResponseEntity<List<Car>> getCarsByPriceBetween(
+    public ResponseEntity<List<CarDto>> getCarsByPriceBetween(
             @Parameter(description = "min price", example = "10000.0")
             @PathVariable Double min,
 
             @Parameter(description = "max price", example = "30000.0")
-            @PathVariable Double max) {
+            @PathVariable Double max,
+            WebRequest request) {
 
         if(max < min) {
             log.error("Max price must be greater than min");
             return new ResponseEntity<>(new ArrayList<>(), HttpStatus.BAD_REQUEST);
         }
+        if (catalogNotModified(request, true)) {
+            return null;
+        }
 
-        List<Car> listCarsByPriceBetween = carRepository.findByPriceBetween(min, max);
+        List<CarDto> listCarsByPriceBetween = priceIndex
+                .filter(CarPriceIndex::isReady)
+                .map(index -> index.findByPriceBetween(min, max))
+                .or(() -> catalogSnapshot.filter(CarCatalogSnapshot::isReady)
+                        .map(snapshot -> snapshot.findByPriceBetween(min, max)))
+                .orElseGet(() -> carRepository.findByPriceBetween(min, max));
         if (listCarsByPriceBetween.isEmpty() ) {
             log.info("No cars found with price between {} and {}", min, max);
             return new ResponseEntity<>(new ArrayList<>(), HttpStatus.NOT_FOUND);
@@ -220,10 +875,19 @@ public class RestApiCarController {
 
 
     @GetMapping("/price/under/{max}")
-    public ResponseEntity<List<Car>> getCarsByPriceLessThanMaxPrice(
+    public ResponseEntity<List<CarDto>> getCarsByPriceLessThanMaxPrice(
             @Parameter(description = "max price", example = "30000.0")
-            @PathVariable Double max) {
-        List<Car> listCarsByPriceUnderMaxOrEquels = carRepository.findByPriceLessThanEqual(max);
+            @PathVariable Double max,
+            WebRequest request) {
+        if (catalogNotModified(request, true)) {
+            return null;
+        }
+        List<CarDto> listCarsByPriceUnderMaxOrEquels = priceIndex
+                .filter(CarPriceIndex::isReady)
+                .map(index -> index.findByPriceLessThanEqual(max))
+                .or(() -> catalogSnapshot.filter(CarCatalogSnapshot::isReady)
+                        .map(snapshot -> snapshot.findByPriceLessThanEqual(max)))
+                .orElseGet(() -> carRepository.findByPriceLessThanEqual(max));
         if (listCarsByPriceUnderMaxOrEquels.isEmpty()) {
             log.info("No cars found with price under or equels {}", max);
             return new ResponseEntity<>(new ArrayList<>(), HttpStatus.NOT_FOUND);
@@ -246,10 +910,19 @@ public class RestApiCarController {
             }
     )
     @GetMapping("/price/over/{min}")
-    public ResponseEntity<List<Car>> getCarsByPriceGreaterThanMinPrice(
+    public ResponseEntity<List<CarDto>> getCarsByPriceGreaterThanMinPrice(
             @Parameter(description = "min price", example = "5000")
-            @PathVariable Double min) {
-        List<Car> listCarsByPriceGreaterMinOrEquels = carRepository.findByPriceGreaterThanEqual(min);
+            @PathVariable Double min,
+            WebRequest request) {
+        if (catalogNotModified(request, true)) {
+            return null;
+        }
+        List<CarDto> listCarsByPriceGreaterMinOrEquels = priceIndex
+                .filter(CarPriceIndex::isReady)
+                .map(index -> index.findByPriceGreaterThanEqual(min))
+                .or(() -> catalogSnapshot.filter(CarCatalogSnapshot::isReady)
+                        .map(snapshot -> snapshot.findByPriceGreaterThanEqual(min)))
+                .orElseGet(() -> carRepository.findByPriceGreaterThanEqual(min));
         if (listCarsByPriceGreaterMinOrEquels.isEmpty()) {
             log.warn("No cars found with price over or equels {}", min);
             return new ResponseEntity<>(new ArrayList<>(), HttpStatus.NOT_FOUND);
@@ -264,6 +937,56 @@ public void attachImage(){
 
 }
 
+    /**
+     * Сверяет If-None-Match с версией каталога и ставит ETag в ответ. true - статус 304 уже выставлен, тело не нужно.
+     * Ответ из памяти (индексы, снимок, кэш Caffeine) сверяется с версией из событий изменений, без запроса,
+     * ответ из базы - со счетчиком изменений в базе. Если у данных в памяти версии нет, ответ идет без ETag.
+     * JSON и Smile - разные представления, поэтому ETag у них разный
+     *
+     * @param fromMemory ответ будет прочитан из памяти, а не из базы
+     */
+    private boolean catalogNotModified(WebRequest request, boolean fromMemory) {
+        Optional<CarCatalogVersion> catalogVersion = fromMemory
+                ? catalogVersions.current()
+                : Optional.of(carRepository.findCatalogVersion());
+        if (catalogVersion.isEmpty()) {
+            return false;
+        }
+        String eTag = SmileConfig.prefersSmile(request.getHeader(HttpHeaders.ACCEPT))
+                ? catalogVersion.get().smileETag()
+                : catalogVersion.get().eTag();
+        return request.checkNotModified(eTag);
+    }
+
+    static String carETag(Car car) {
+        return "\"" + car.getId() + "-" + car.getVersion() + "\"";
+    }
+
+    /**
+     * Версия из ETag вида "id-version" (слабый W/ тоже принимается)
+     *
+     * @return null, если ETag другого автомобиля или не в этом формате
+     */
+    static Long versionFromETag(Long id, String eTag) {
+        String tag = eTag.trim();
+        if (tag.startsWith("W/")) {
+            tag = tag.substring(2);
+        }
+        String prefix = "\"" + id + "-";
+        if (!tag.startsWith(prefix) || !tag.endsWith("\"") || tag.length() <= prefix.length() + 1) {
+            return null;
+        }
+        try {
+            return Long.valueOf(tag.substring(prefix.length(), tag.length() - 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static long lastModifiedMillis(Car car) {
+        return car.getUpdatedAt() != null ? car.getUpdatedAt().toEpochMilli() : -1;
+    }
+
 
 
 
@@ -0,0 +1,10 @@
+package de.ait.training.dto;
+
+/**
+ * Итог массового импорта автомобилей
+ *
+ * @param imported сколько автомобилей сохранено
+ * @param batches  сколько транзакций (пачек) понадобилось
+ */
+public record BulkImportResult(long imported, int batches) {
+}
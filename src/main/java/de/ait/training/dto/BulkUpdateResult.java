@@ -0,0 +1,22 @@
+package de.ait.training.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import de.ait.training.model.Car;
+
+import java.util.List;
+
+/**
+ * Итог массового изменения цен
+ *
+ * @param updated    сколько автомобилей изменено
+ * @param statements сколько UPDATE-запросов понадобилось
+ * @param before     измененные автомобили до изменения, null - какие именно, неизвестно (изменение на процент)
+ * @param after      те же автомобили после изменения, в том же порядке
+ */
+public record BulkUpdateResult(long updated, int statements,
+                               @JsonIgnore List<Car> before, @JsonIgnore List<Car> after) {
+
+    public BulkUpdateResult(long updated, int statements) {
+        this(updated, statements, null, null);
+    }
+}
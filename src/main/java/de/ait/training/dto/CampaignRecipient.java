@@ -0,0 +1,12 @@
+package de.ait.training.dto;
+
+import java.util.Map;
+
+/**
+ * Получатель рассылки
+ *
+ * @param email     адрес
+ * @param variables переменные шаблона только для этого получателя (userName, promoCode ...)
+ */
+public record CampaignRecipient(String email, Map<String, Object> variables) {
+}
@@ -0,0 +1,16 @@
+package de.ait.training.dto;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Рассылка одного шаблона списку получателей
+ *
+ * @param subject    тема письма
+ * @param template   шаблон, например email/CarService
+ * @param variables  общие переменные шаблона, переменные получателя их перекрывают
+ * @param recipients получатели
+ */
+public record CampaignRequest(String subject, String template, Map<String, Object> variables,
+                              List<CampaignRecipient> recipients) {
+}
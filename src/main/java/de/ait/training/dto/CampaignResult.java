@@ -0,0 +1,40 @@
+package de.ait.training.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * Состояние рассылки: сколько писем отправлено и не отправлено, статус каждого получателя в порядке запроса
+ *
+ * @param id         id рассылки для GET /api/email/campaign/{id}
+ * @param total      сколько всего получателей
+ * @param done       все получатели обработаны
+ * @param recipients статусы получателей, null - без них (ответ на POST)
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record CampaignResult(String id, int total, int sent, int failed, boolean done,
+                             List<RecipientStatus> recipients) {
+
+    public enum Status {
+        PENDING, SENT, FAILED
+    }
+
+    /**
+     * @param error причина, если письмо не отправлено
+     */
+    public record RecipientStatus(String email, Status status, String error) {
+
+        public static RecipientStatus pending(String email) {
+            return new RecipientStatus(email, Status.PENDING, null);
+        }
+
+        public static RecipientStatus sent(String email) {
+            return new RecipientStatus(email, Status.SENT, null);
+        }
+
+        public static RecipientStatus failed(String email, String error) {
+            return new RecipientStatus(email, Status.FAILED, error);
+        }
+    }
+}
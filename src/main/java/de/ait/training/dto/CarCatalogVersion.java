@@ -0,0 +1,17 @@
+package de.ait.training.dto;
+
+/**
+ * Версия всего каталога - счетчик изменений car_catalog_changes.changes. Любая вставка, изменение
+ * или удаление увеличивает его в своей транзакции, поэтому из него строится ETag коллекций
+ * без чтения и сериализации самих автомобилей
+ */
+public record CarCatalogVersion(long changes) {
+
+    public String eTag() {
+        return "\"" + changes + "\"";
+    }
+
+    public String smileETag() {
+        return "\"" + changes + "-smile\"";
+    }
+}
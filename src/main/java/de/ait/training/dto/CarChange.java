@@ -0,0 +1,20 @@
+package de.ait.training.dto;
+
+/**
+ * Одно изменение каталога в ленте /api/cars/changes
+ *
+ * @param seq     порядковый номер, растет на 1 с каждым изменением
+ * @param id      id автомобиля, null для BULK_UPDATED
+ * @param version версия после изменения, null для DELETED и BULK_UPDATED
+ * @param car     автомобиль после изменения, null для DELETED и BULK_UPDATED
+ */
+public record CarChange(long seq, Type type, Long id, Long version, CarDto car) {
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED,
+        /** массовое изменение цен, затронутые id неизвестны - клиент перечитывает каталог */
+        BULK_UPDATED
+    }
+}
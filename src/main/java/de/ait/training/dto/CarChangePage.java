@@ -0,0 +1,24 @@
+package de.ait.training.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Ответ long-poll ленты изменений
+ *
+ * @param changes изменения после since по возрастанию seq
+ * @param epoch   идентификатор ленты: новый при каждом запуске экземпляра, seq разных лент несравнимы
+ * @param lastSeq seq последнего изменения в ответе, следующий запрос - с since = next()
+ * @param reset   true, если часть изменений уже вытеснена из буфера или since из другой ленты
+ *                (сервер перезапущен, запрос попал на другой экземпляр): changes пуст, lastSeq - последний
+ *                seq ленты, клиент перечитывает каталог целиком и продолжает с epoch:lastSeq
+ */
+public record CarChangePage(List<CarChange> changes, String epoch, long lastSeq, boolean reset) {
+
+    /** since для следующего запроса */
+    @JsonProperty
+    public String next() {
+        return epoch + ":" + lastSeq;
+    }
+}
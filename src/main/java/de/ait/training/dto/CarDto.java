@@ -0,0 +1,16 @@
+package de.ait.training.dto;
+
+import de.ait.training.model.Car;
+
+/**
+ * Автомобиль только для чтения, без JPA: Spring Data строит его прямо в запросе (select new ...),
+ * поэтому Hibernate не хранит для строк managed-сущности и снимки для dirty checking.
+ * JSON совпадает с Car
+ */
+public record CarDto(Long id, String color, String model, double price, Integer year, String engineType) {
+
+    public static CarDto from(Car car) {
+        return new CarDto(car.getId(), car.getColor(), car.getModel(), car.getPrice(), car.getYear(),
+                car.getEngineType());
+    }
+}
@@ -0,0 +1,29 @@
+package de.ait.training.dto;
+
+import de.ait.training.model.Car;
+
+/**
+ * Тело PATCH /api/cars/{id}: заданные поля меняются, null - поле остается как было
+ *
+ * @param version ожидаемая версия (optimistic locking), если нет If-Match
+ */
+public record CarPatch(String color, String model, Double price, Integer year, String engineType, Long version) {
+
+    public void applyTo(Car car) {
+        if (color != null) {
+            car.setColor(color);
+        }
+        if (model != null) {
+            car.setModel(model);
+        }
+        if (price != null) {
+            car.setPrice(price);
+        }
+        if (year != null) {
+            car.setYear(year);
+        }
+        if (engineType != null) {
+            car.setEngineType(engineType);
+        }
+    }
+}
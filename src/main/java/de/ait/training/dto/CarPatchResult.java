@@ -0,0 +1,18 @@
+package de.ait.training.dto;
+
+import de.ait.training.model.Car;
+
+/**
+ * Результат PATCH одного автомобиля
+ *
+ * @param before состояние до изменения, null если автомобиль не найден или версия не совпала
+ * @param after  сохраненное состояние, null если автомобиль не найден или версия не совпала
+ */
+public record CarPatchResult(Status status, Car before, Car after) {
+
+    public enum Status {
+        UPDATED,
+        NOT_FOUND,
+        VERSION_MISMATCH
+    }
+}
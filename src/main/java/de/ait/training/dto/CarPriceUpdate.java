@@ -0,0 +1,13 @@
+package de.ait.training.dto;
+
+import java.util.Map;
+
+/**
+ * Тело PATCH /api/cars - массовое изменение цен, один из двух вариантов:
+ * prices - новые цены по id, или percent - изменение в процентах для всех автомобилей
+ * (только заданного цвета и/или модели, если они указаны)
+ *
+ * @param percent например 5 - подорожание на 5%, -10 - скидка 10%
+ */
+public record CarPriceUpdate(Map<Long, Double> prices, Double percent, String color, String model) {
+}
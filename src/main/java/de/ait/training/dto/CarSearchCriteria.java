@@ -0,0 +1,13 @@
+package de.ait.training.dto;
+
+/**
+ * Фильтры GET /api/cars/search. null - фильтр не задан, границы включительно,
+ * цвет и тип двигателя сравниваются без учета регистра
+ */
+public record CarSearchCriteria(String color,
+                                Double minPrice,
+                                Double maxPrice,
+                                Integer minYear,
+                                Integer maxYear,
+                                String engineType) {
+}
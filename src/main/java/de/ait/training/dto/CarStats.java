@@ -0,0 +1,9 @@
+package de.ait.training.dto;
+
+/**
+ * Статистика цен по группе автомобилей (или по всему каталогу, тогда group = null).
+ * Перцентили - с линейной интерполяцией, как percentile_cont в PostgreSQL
+ */
+public record CarStats(String group, long count, Double minPrice, Double maxPrice, Double avgPrice,
+                       Double p50, Double p90, Double p99) {
+}
@@ -0,0 +1,50 @@
+package de.ait.training.dto;
+
+import de.ait.training.model.Car;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Группировка для GET /api/cars/stats?groupBy=...
+ */
+public enum CarStatsGroupBy {
+    COLOR("color", "color"),
+    MODEL("model", "model"),
+    YEAR("year", "year"),
+    ENGINE_TYPE("engineType", "engine_type");
+
+    private final String parameter;
+    private final String column;
+
+    CarStatsGroupBy(String parameter, String column) {
+        this.parameter = parameter;
+        this.column = column;
+    }
+
+    /**
+     * Имя колонки в таблице cars, только из этого списка попадает в SQL
+     */
+    public String column() {
+        return column;
+    }
+
+    public String value(Car car) {
+        return switch (this) {
+            case COLOR -> car.getColor();
+            case MODEL -> car.getModel();
+            case YEAR -> String.valueOf(car.getYear());
+            case ENGINE_TYPE -> car.getEngineType();
+        };
+    }
+
+    /**
+     * Принимает имя поля или колонки: engineType и engine_type
+     */
+    public static Optional<CarStatsGroupBy> fromParameter(String parameter) {
+        return Arrays.stream(values())
+                .filter(groupBy -> groupBy.parameter.equalsIgnoreCase(parameter)
+                        || groupBy.column.equalsIgnoreCase(parameter))
+                .findFirst();
+    }
+}
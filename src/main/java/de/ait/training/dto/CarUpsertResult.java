@@ -0,0 +1,21 @@
+package de.ait.training.dto;
+
+import de.ait.training.model.Car;
+
+/**
+ * Результат PUT одним INSERT ... ON CONFLICT / MERGE
+ *
+ * @param before состояние до изменения, null если автомобиль создан или не изменен
+ * @param after  сохраненное состояние (новые version, updatedAt и округленная базой цена), null если не изменен
+ */
+public record CarUpsertResult(Status status, Car before, Car after) {
+
+    public enum Status {
+        CREATED,
+        UPDATED,
+        /** автомобиль есть, но его версия не равна ожидаемой - ничего не изменено */
+        VERSION_MISMATCH,
+        /** автомобиля нет, а id меньше CarUpsertRepository.CLIENT_ID_MIN и выдается cars_seq - ничего не создано */
+        ID_RESERVED
+    }
+}
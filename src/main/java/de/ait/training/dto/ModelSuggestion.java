@@ -0,0 +1,9 @@
+package de.ait.training.dto;
+
+/**
+ * Подсказка для ввода модели
+ *
+ * @param count сколько автомобилей этой модели в каталоге
+ */
+public record ModelSuggestion(String model, long count) {
+}
@@ -0,0 +1,10 @@
+package de.ait.training.event;
+
+/**
+ * Счетчик изменений каталога увеличен в текущей транзакции (до коммита).
+ * Публикуется в потоке, который потом опубликует событие о самих автомобилях
+ *
+ * @param changes новое значение car_catalog_changes.changes
+ */
+public record CarCatalogChangeCountedEvent(long changes) {
+}
@@ -0,0 +1,21 @@
+package de.ait.training.event;
+
+import de.ait.training.model.Car;
+
+/**
+ * Автомобиль создан, изменен или удален через API.
+ * Публикуется после сохранения в базе, слушатели (кэш, индекс цен) обновляют свои данные
+ *
+ * @param before состояние до изменения, null если автомобиль создан
+ * @param after  состояние после изменения, null если автомобиль удален
+ */
+public record CarChangedEvent(Car before, Car after) {
+
+    public static CarChangedEvent created(Car car) {
+        return new CarChangedEvent(null, car);
+    }
+
+    public static CarChangedEvent deleted(Car car) {
+        return new CarChangedEvent(car, null);
+    }
+}
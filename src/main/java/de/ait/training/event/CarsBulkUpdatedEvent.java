@@ -0,0 +1,10 @@
+package de.ait.training.event;
+
+/**
+ * Цены изменены на процент массовым UPDATE в базе, без загрузки сущностей.
+ * Какие автомобили изменились, неизвестно - слушатели перечитывают свои данные целиком
+ *
+ * @param updated сколько строк изменено
+ */
+public record CarsBulkUpdatedEvent(long updated) {
+}
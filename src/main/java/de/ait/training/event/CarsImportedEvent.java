@@ -0,0 +1,13 @@
+package de.ait.training.event;
+
+import de.ait.training.model.Car;
+
+import java.util.List;
+
+/**
+ * Пачка новых автомобилей сохранена массовым импортом
+ *
+ * @param cars сохраненные автомобили (с id)
+ */
+public record CarsImportedEvent(List<Car> cars) {
+}
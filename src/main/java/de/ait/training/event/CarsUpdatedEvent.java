@@ -0,0 +1,16 @@
+package de.ait.training.event;
+
+import de.ait.training.model.Car;
+
+import java.util.List;
+
+/**
+ * Пачка автомобилей изменена одним запросом (новые цены по id в PATCH /api/cars).
+ * Как CarChangedEvent, только для многих автомобилей сразу: слушатели обновляют данные
+ * одной операцией на пачку, а не по автомобилю
+ *
+ * @param before состояния до изменения
+ * @param after  состояния после изменения, в том же порядке
+ */
+public record CarsUpdatedEvent(List<Car> before, List<Car> after) {
+}
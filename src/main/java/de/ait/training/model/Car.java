@@ -5,17 +5,29 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.annotations.UpdateTimestamp;
+import org.hibernate.type.SqlTypes;
+
+import java.time.Instant;
 
 @NoArgsConstructor
 @Data
 @Entity
 @Table(name = "cars")
+// UPDATE содержит только измененные колонки (PATCH цены не переписывает color, model, ...)
+@DynamicUpdate
 public class Car {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // последовательность с шагом 50: Hibernate резервирует id блоками и может склеивать INSERT в JDBC batch
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "cars_seq")
+    @SequenceGenerator(name = "cars_seq", sequenceName = "cars_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
@@ -24,7 +36,10 @@ public class Car {
     @Column(nullable = false)
     private String model;
 
+    // параметры сравнений с price передаются как numeric: с float8 PostgreSQL сравнивает price::float8
+    // и не может взять idx_cars_price
     @Column(nullable = false)
+    @JdbcTypeCode(SqlTypes.NUMERIC)
     private double price;
 
     @Column(name = "year")
@@ -33,6 +48,14 @@ public class Car {
     @Column(name = "engine_type")
     private String engineType;
 
+    // optimistic locking: UPDATE ... WHERE version = ?, номер версии входит в ETag автомобиля
+    @Version
+    private Long version;
+
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    private Instant updatedAt;
+
     public Car(String color, String model, double price) {
         this.color = color;
         this.model = model;
@@ -0,0 +1,25 @@
+package de.ait.training.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Счетчик изменений каталога (одна строка с id = 1): каждая вставка, изменение и удаление автомобилей
+ * увеличивает changes на 1 в своей транзакции (CarCatalogRepository.countChange).
+ * Строка блокируется до коммита, поэтому значения растут в порядке коммитов
+ */
+@NoArgsConstructor
+@Data
+@Entity
+@Table(name = "car_catalog_changes")
+public class CarCatalogChanges {
+    @Id
+    private Long id;
+
+    @Column(nullable = false)
+    private long changes;
+}
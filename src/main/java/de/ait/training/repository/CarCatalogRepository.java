@@ -0,0 +1,20 @@
+package de.ait.training.repository;
+
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Счетчик изменений каталога car_catalog_changes.changes - версия каталога для ETag коллекций
+ */
+public interface CarCatalogRepository {
+
+    /**
+     * Увеличивает счетчик в текущей транзакции, вместе с изменением автомобилей: откат транзакции
+     * откатывает и его. Строка счетчика заблокирована до коммита, поэтому параллельные изменения
+     * получают значения в порядке коммитов. Публикует CarCatalogChangeCountedEvent
+     *
+     * @return новое значение счетчика
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    long countChange();
+}
@@ -0,0 +1,27 @@
+package de.ait.training.repository;
+
+import de.ait.training.event.CarCatalogChangeCountedEvent;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+
+/**
+ * Вызывается и через CarRepository, и напрямую из других фрагментов (CarUpsertRepositoryImpl,
+ * CarPatchRepositoryImpl) внутри их транзакций
+ */
+@RequiredArgsConstructor
+class CarCatalogRepositoryImpl implements CarCatalogRepository {
+
+    private final EntityManager entityManager;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Override
+    public long countChange() {
+        entityManager.createQuery("update CarCatalogChanges x set x.changes = x.changes + 1 where x.id = 1")
+                .executeUpdate();
+        long changes = entityManager.createQuery("select x.changes from CarCatalogChanges x where x.id = 1", Long.class)
+                .getSingleResult();
+        eventPublisher.publishEvent(new CarCatalogChangeCountedEvent(changes));
+        return changes;
+    }
+}
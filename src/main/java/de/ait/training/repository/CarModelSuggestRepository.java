@@ -0,0 +1,39 @@
+package de.ait.training.repository;
+
+import de.ait.training.dto.ModelSuggestion;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Подсказки по модели из таблицы car_model_keys (строка на модель и на начало каждого слова в ней),
+ * а не GROUP BY по всем подходящим автомобилям на каждый ввод
+ */
+public interface CarModelSuggestRepository {
+
+    /**
+     * Модели, название которых или одно из слов в нем начинается с {@code prefix} без учета регистра:
+     * как CarModelIndex.suggest - точное совпадение, потом с начала названия, потом с начала слова,
+     * внутри - по количеству автомобилей и по названию
+     */
+    @Transactional(readOnly = true)
+    List<ModelSuggestion> suggestModels(String prefix, int limit);
+
+    /**
+     * Перестраивает car_model_keys по таблице cars одним GROUP BY - при старте
+     *
+     * @return сколько моделей в каталоге
+     */
+    @Transactional
+    int refreshModelKeys();
+
+    /**
+     * Меняет количество автомобилей моделей без чтения cars: UPDATE cars = cars + delta по ключам модели.
+     * Ключи появившейся модели вставляются, ключи модели без автомобилей удаляются
+     *
+     * @param changes модель -> на сколько изменилось количество ее автомобилей
+     */
+    @Transactional
+    void countModels(Map<String, Long> changes);
+}
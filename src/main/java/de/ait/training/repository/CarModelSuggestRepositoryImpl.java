@@ -0,0 +1,134 @@
+package de.ait.training.repository;
+
+import de.ait.training.dto.ModelSuggestion;
+import de.ait.training.util.ModelWords;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.Session;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Ключи в верхнем регистре, как upper(...) в остальных запросах по модели. Поиск - LIKE 'X5%'
+ * по индексу idx_car_model_keys_pattern, GROUP BY только по найденным ключам (не больше нескольких на модель).
+ * Перестройка блокирует таблицу до коммита: две перестройки с разных экземпляров не смешивают строки,
+ * а подсказки в это время видят прежнее содержимое, UPDATE количеств (countModels) ждет ее конца.
+ * Модели обновляются в порядке названий, поэтому два экземпляра не ждут строк друг друга по кругу.
+ * Если ключи новой модели одновременно вставляют два экземпляра, на PostgreSQL количества складываются
+ */
+@RequiredArgsConstructor
+class CarModelSuggestRepositoryImpl implements CarModelSuggestRepository {
+    private static final int INSERT_BATCH_SIZE = 500;
+
+    private static final String SUGGEST = "SELECT model, cars,"
+            + " min(CASE WHEN whole AND key_upper = :exact THEN 0 WHEN whole THEN 1 ELSE 2 END) AS match_rank"
+            + " FROM car_model_keys WHERE key_upper LIKE :pattern ESCAPE '\\'"
+            + " GROUP BY model, cars ORDER BY match_rank, cars DESC, model";
+    private static final String INSERT = "INSERT INTO car_model_keys (key_upper, model, whole, cars) VALUES (?, ?, ?, ?)";
+    private static final String POSTGRES_INSERT_OR_ADD = INSERT
+            + " ON CONFLICT (key_upper, model) DO UPDATE SET cars = car_model_keys.cars + EXCLUDED.cars";
+    private static final String ADD_CARS = "UPDATE car_model_keys SET cars = cars + :delta WHERE model = :model";
+    private static final String DELETE_EMPTY = "DELETE FROM car_model_keys WHERE model = :model AND cars <= 0";
+
+    private final EntityManager entityManager;
+
+    @Override
+    public List<ModelSuggestion> suggestModels(String prefix, int limit) {
+        String upper = prefix.toUpperCase(Locale.ROOT);
+        String pattern = upper.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        List<?> rows = entityManager.createNativeQuery(SUGGEST)
+                .setParameter("exact", upper)
+                .setParameter("pattern", pattern)
+                .setMaxResults(limit)
+                .getResultList();
+        return rows.stream()
+                .map(row -> (Object[]) row)
+                .map(row -> new ModelSuggestion((String) row[0], ((Number) row[1]).longValue()))
+                .toList();
+    }
+
+    @Override
+    public int refreshModelKeys() {
+        entityManager.flush();
+        if (!isH2()) {
+            entityManager.createNativeQuery("LOCK TABLE car_model_keys IN EXCLUSIVE MODE").executeUpdate();
+        }
+        List<Object[]> counts = entityManager.createQuery(
+                        "select c.model, count(c) from Car c where c.model is not null group by c.model", Object[].class)
+                .getResultList();
+        entityManager.createNativeQuery("DELETE FROM car_model_keys").executeUpdate();
+        insertKeys(counts, INSERT);
+        return counts.size();
+    }
+
+    @Override
+    public void countModels(Map<String, Long> changes) {
+        List<Object[]> appeared = new ArrayList<>();
+        new TreeMap<>(changes).forEach((model, delta) -> {
+            if (delta == 0) {
+                return;
+            }
+            int updated = entityManager.createNativeQuery(ADD_CARS)
+                    .setParameter("delta", delta)
+                    .setParameter("model", model)
+                    .executeUpdate();
+            if (updated == 0 && delta > 0) {
+                appeared.add(new Object[]{model, delta});
+            } else if (delta < 0) {
+                entityManager.createNativeQuery(DELETE_EMPTY).setParameter("model", model).executeUpdate();
+            }
+        });
+        if (!appeared.isEmpty()) {
+            insertKeys(appeared, isH2() ? INSERT : POSTGRES_INSERT_OR_ADD);
+        }
+    }
+
+    /**
+     * @param counts строки (модель, количество автомобилей)
+     */
+    private void insertKeys(List<Object[]> counts, String sql) {
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement insert = connection.prepareStatement(sql)) {
+                int batched = 0;
+                for (Object[] count : counts) {
+                    String model = (String) count[0];
+                    String upper = model.toUpperCase(Locale.ROOT);
+                    batched += addKey(insert, upper, model, true, (Long) count[1]);
+                    for (int start : ModelWords.starts(upper)) {
+                        batched += addKey(insert, upper.substring(start), model, false, (Long) count[1]);
+                    }
+                    if (batched >= INSERT_BATCH_SIZE) {
+                        insert.executeBatch();
+                        batched = 0;
+                    }
+                }
+                if (batched > 0) {
+                    insert.executeBatch();
+                }
+            }
+        });
+    }
+
+    private static int addKey(PreparedStatement insert, String key, String model, boolean whole, long cars)
+            throws SQLException {
+        insert.setString(1, key);
+        insert.setString(2, model);
+        insert.setBoolean(3, whole);
+        insert.setLong(4, cars);
+        insert.addBatch();
+        return 1;
+    }
+
+    private boolean isH2() {
+        return entityManager.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class)
+                .getJdbcServices().getDialect() instanceof H2Dialect;
+    }
+}
@@ -0,0 +1,38 @@
+package de.ait.training.repository;
+
+import de.ait.training.dto.BulkUpdateResult;
+import de.ait.training.dto.CarPatch;
+import de.ait.training.dto.CarPatchResult;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Map;
+
+/**
+ * Частичные изменения: PATCH одного автомобиля (в UPDATE только измененные колонки, см. @DynamicUpdate)
+ * и массовое изменение цен UPDATE-запросами без загрузки сущностей.
+ * Массовые UPDATE тоже увеличивают version и пишут updated_at
+ */
+public interface CarPatchRepository {
+
+    /**
+     * @param expectedVersion если не null, автомобиль меняется только при такой версии
+     * @throws org.springframework.orm.ObjectOptimisticLockingFailureException если автомобиль изменили параллельно
+     */
+    @Transactional
+    CarPatchResult patch(Long id, CarPatch patch, Long expectedVersion);
+
+    /**
+     * Новые цены по id, один UPDATE ... CASE на каждые 500 id. Несуществующие id пропускаются.
+     * Строки перед UPDATE читаются с блокировкой, поэтому в результате есть состояния до и после
+     * каждого измененного автомобиля
+     */
+    @Transactional
+    BulkUpdateResult updatePrices(Map<Long, Double> prices);
+
+    /**
+     * Все цены (или только заданного цвета / модели, без учета регистра) умножаются на (1 + percent / 100)
+     * одним UPDATE
+     */
+    @Transactional
+    BulkUpdateResult adjustPrices(double percent, String color, String model);
+}
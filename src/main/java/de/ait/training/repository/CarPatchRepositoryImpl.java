@@ -0,0 +1,140 @@
+package de.ait.training.repository;
+
+import de.ait.training.dto.BulkUpdateResult;
+import de.ait.training.dto.CarPatch;
+import de.ait.training.dto.CarPatchResult;
+import de.ait.training.model.Car;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.Query;
+import lombok.RequiredArgsConstructor;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Массовые UPDATE идут мимо persistence context, поэтому, как @Modifying(flushAutomatically, clearAutomatically),
+ * перед ними несохраненные изменения записываются, а после - загруженные сущности сбрасываются.
+ * Каждое изменение увеличивает счетчик изменений каталога в своей транзакции
+ */
+@RequiredArgsConstructor
+class CarPatchRepositoryImpl implements CarPatchRepository {
+    private static final int PRICES_PER_STATEMENT = 500;
+
+    private final EntityManager entityManager;
+    private final CarCatalogRepositoryImpl catalogRepository;
+
+    @Override
+    public CarPatchResult patch(Long id, CarPatch patch, Long expectedVersion) {
+        // find, а не findById репозитория: тот кэшируется и вернул бы объект из кэша
+        Car car = entityManager.find(Car.class, id);
+        if (car == null) {
+            return new CarPatchResult(CarPatchResult.Status.NOT_FOUND, null, null);
+        }
+        if (expectedVersion != null && !expectedVersion.equals(car.getVersion())) {
+            return new CarPatchResult(CarPatchResult.Status.VERSION_MISMATCH, null, null);
+        }
+        Car before = copy(car);
+        patch.applyTo(car);
+        // dirty checking сравнивает со снимком и пишет только измененные колонки
+        entityManager.flush();
+        catalogRepository.countChange();
+        return new CarPatchResult(CarPatchResult.Status.UPDATED, before, car);
+    }
+
+    @Override
+    public BulkUpdateResult updatePrices(Map<Long, Double> prices) {
+        entityManager.flush();
+        List<Map.Entry<Long, Double>> entries = new ArrayList<>(prices.entrySet());
+        // в базе updated_at хранится с точностью до микросекунд
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        List<Car> before = new ArrayList<>();
+        List<Car> after = new ArrayList<>();
+        long updated = 0;
+        int statements = 0;
+        for (int from = 0; from < entries.size(); from += PRICES_PER_STATEMENT) {
+            List<Map.Entry<Long, Double>> chunk =
+                    entries.subList(from, Math.min(from + PRICES_PER_STATEMENT, entries.size()));
+            StringBuilder jpql = new StringBuilder("update Car c set c.price = case c.id");
+            for (int i = 0; i < chunk.size(); i++) {
+                jpql.append(" when :id").append(i).append(" then :price").append(i);
+            }
+            jpql.append(" else c.price end, c.version = c.version + 1, c.updatedAt = :now where c.id in :ids");
+
+            Query query = entityManager.createQuery(jpql.toString());
+            List<Long> ids = new ArrayList<>(chunk.size());
+            for (int i = 0; i < chunk.size(); i++) {
+                query.setParameter("id" + i, chunk.get(i).getKey());
+                query.setParameter("price" + i, chunk.get(i).getValue());
+                ids.add(chunk.get(i).getKey());
+            }
+            // строки заблокированы до конца транзакции: состояние после UPDATE - это прочитанное плюс новая цена
+            List<Car> cars = entityManager.createQuery("select c from Car c where c.id in :ids", Car.class)
+                    .setParameter("ids", ids)
+                    .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                    .getResultList();
+            for (Car car : cars) {
+                before.add(copy(car));
+                Car changed = copy(car);
+                changed.setPrice(prices.get(car.getId()));
+                changed.setVersion(car.getVersion() + 1);
+                changed.setUpdatedAt(now);
+                after.add(changed);
+            }
+            updated += query.setParameter("now", now).setParameter("ids", ids).executeUpdate();
+            statements++;
+        }
+        if (updated > 0) {
+            catalogRepository.countChange();
+        }
+        entityManager.clear();
+        return new BulkUpdateResult(updated, statements, before, after);
+    }
+
+    @Override
+    public BulkUpdateResult adjustPrices(double percent, String color, String model) {
+        entityManager.flush();
+        StringBuilder jpql = new StringBuilder(
+                "update Car c set c.price = c.price * :factor, c.version = c.version + 1, c.updatedAt = :now");
+        // условия добавляются только заданные: "(:color is null or ...)" PostgreSQL не типизирует
+        List<String> conditions = new ArrayList<>();
+        if (color != null) {
+            conditions.add("upper(c.color) = upper(:color)");
+        }
+        if (model != null) {
+            conditions.add("upper(c.model) = upper(:model)");
+        }
+        if (!conditions.isEmpty()) {
+            jpql.append(" where ").append(String.join(" and ", conditions));
+        }
+
+        Query query = entityManager.createQuery(jpql.toString())
+                .setParameter("factor", 1 + percent / 100)
+                .setParameter("now", Instant.now());
+        if (color != null) {
+            query.setParameter("color", color);
+        }
+        if (model != null) {
+            query.setParameter("model", model);
+        }
+        int updated = query.executeUpdate();
+        if (updated > 0) {
+            catalogRepository.countChange();
+        }
+        entityManager.clear();
+        return new BulkUpdateResult(updated, 1);
+    }
+
+    private static Car copy(Car car) {
+        Car copy = new Car(car.getColor(), car.getModel(), car.getPrice());
+        copy.setId(car.getId());
+        copy.setYear(car.getYear());
+        copy.setEngineType(car.getEngineType());
+        copy.setVersion(car.getVersion());
+        copy.setUpdatedAt(car.getUpdatedAt());
+        return copy;
+    }
+}
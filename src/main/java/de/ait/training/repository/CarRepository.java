@@ -1,13 +1,100 @@
 package de.ait.training.repository;
 
+import de.ait.training.cache.CarCacheKeys;
+import de.ait.training.dto.CarCatalogVersion;
+import de.ait.training.dto.CarDto;
 import de.ait.training.model.Car;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Optional;
 
-public interface CarRepository extends JpaRepository<Car, Long> {
-    List<Car> findCarByColorIgnoreCase(String color);
-    List<Car> findByPriceBetween(Double min, Double max);
-    List<Car> findByPriceLessThanEqual(Double max);
-    List<Car> findByPriceGreaterThanEqual(Double min);
-}
\ No newline at end of file
+/**
+ * Запросы по id, цвету и цене кэшируются (см. CarCacheKeys), сброс - CarCacheEvictor.
+ * Поиск по цвету и цене возвращает проекции CarDto в read-only транзакции,
+ * страницы сущностей читаются с read-only hint (без снимков для dirty checking).
+ * Приложение меняет автомобили только методами, которые в той же транзакции увеличивают
+ * счетчик изменений каталога (saveAndCount, deleteAndCountById, upsert, patch ...), а не save / delete
+ */
+public interface CarRepository extends JpaRepository<Car, Long>, CarSearchRepository, CarStatsRepository,
+        CarUpsertRepository, CarPatchRepository, CarModelSuggestRepository, CarCatalogRepository {
+    @Cacheable(cacheNames = CarCacheKeys.CARS_BY_COLOR, key = "T(de.ait.training.cache.CarCacheKeys).color(#p0)")
+    @Transactional(readOnly = true)
+    List<CarDto> findCarByColorIgnoreCase(String color);
+
+    @Cacheable(cacheNames = CarCacheKeys.CARS_BY_PRICE, key = "T(de.ait.training.cache.CarCacheKeys).between(#p0, #p1)")
+    @Transactional(readOnly = true)
+    List<CarDto> findByPriceBetween(Double min, Double max);
+
+    @Cacheable(cacheNames = CarCacheKeys.CARS_BY_PRICE, key = "T(de.ait.training.cache.CarCacheKeys).under(#p0)")
+    @Transactional(readOnly = true)
+    List<CarDto> findByPriceLessThanEqual(Double max);
+
+    @Cacheable(cacheNames = CarCacheKeys.CARS_BY_PRICE, key = "T(de.ait.training.cache.CarCacheKeys).over(#p0)")
+    @Transactional(readOnly = true)
+    List<CarDto> findByPriceGreaterThanEqual(Double min);
+
+    @Override
+    @Cacheable(cacheNames = CarCacheKeys.CARS, key = "T(de.ait.training.cache.CarCacheKeys).id(#p0)")
+    Optional<Car> findById(Long id);
+
+    /**
+     * Keyset-страница: следующие {@code limit} автомобилей с id больше {@code after}, по возрастанию id
+     */
+    @Transactional(readOnly = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    List<Car> findByIdGreaterThanOrderByIdAsc(Long after, Limit limit);
+
+    /**
+     * Версия всего каталога для ETag коллекций: счетчик изменений, одна строка по первичному ключу
+     */
+    @Transactional(readOnly = true)
+    @Query("select new de.ait.training.dto.CarCatalogVersion(x.changes) from CarCatalogChanges x where x.id = 1")
+    CarCatalogVersion findCatalogVersion();
+
+    /**
+     * Сохраняет новый автомобиль и в той же транзакции увеличивает счетчик изменений каталога
+     */
+    @Transactional
+    default Car saveAndCount(Car car) {
+        Car saved = save(car);
+        countChange();
+        return saved;
+    }
+
+    /**
+     * Сохраняет пачку новых автомобилей, счетчик изменений каталога увеличивается один раз на пачку
+     */
+    @Transactional
+    default List<Car> saveAllAndCount(List<Car> cars) {
+        List<Car> saved = saveAll(cars);
+        countChange();
+        return saved;
+    }
+
+    /**
+     * Удаляет автомобиль и в той же транзакции увеличивает счетчик изменений каталога
+     *
+     * @return false, если автомобиля с таким id нет
+     */
+    @Transactional
+    default boolean deleteAndCountById(Long id) {
+        if (deleteCarById(id) == 0) {
+            return false;
+        }
+        countChange();
+        return true;
+    }
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from Car c where c.id = ?1")
+    int deleteCarById(Long id);
+}
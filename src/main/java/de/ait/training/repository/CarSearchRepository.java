@@ -0,0 +1,23 @@
+package de.ait.training.repository;
+
+import de.ait.training.dto.CarDto;
+import de.ait.training.dto.CarSearchCriteria;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * Поиск по нескольким фильтрам сразу: Criteria API собирает один SELECT
+ * только с заданными условиями, сортировкой и LIMIT
+ */
+public interface CarSearchRepository {
+
+    /**
+     * @param sort  по id, color, model, price, year или engineType, при равенстве - по id
+     * @param limit максимум строк
+     * @throws org.springframework.dao.InvalidDataAccessApiUsageException если сортировка по неизвестному полю
+     */
+    @Transactional(readOnly = true)
+    List<CarDto> search(CarSearchCriteria criteria, Sort sort, int limit);
+}
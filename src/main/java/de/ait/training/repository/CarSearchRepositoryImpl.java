@@ -0,0 +1,80 @@
+package de.ait.training.repository;
+
+import de.ait.training.dto.CarDto;
+import de.ait.training.dto.CarSearchCriteria;
+import de.ait.training.model.Car;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Order;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Sort;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Условия цвета и типа двигателя строятся как upper(column) = ?, чтобы попадать
+ * в индексы по выражению (changeset 8.0)
+ */
+@RequiredArgsConstructor
+class CarSearchRepositoryImpl implements CarSearchRepository {
+    private static final Set<String> SORTABLE = Set.of("id", "color", "model", "price", "year", "engineType");
+
+    private final EntityManager entityManager;
+
+    @Override
+    public List<CarDto> search(CarSearchCriteria criteria, Sort sort, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<CarDto> query = cb.createQuery(CarDto.class);
+        Root<Car> car = query.from(Car.class);
+        query.select(cb.construct(CarDto.class, car.get("id"), car.get("color"), car.get("model"),
+                car.get("price"), car.get("year"), car.get("engineType")));
+
+        List<Predicate> predicates = new ArrayList<>();
+        if (criteria.color() != null) {
+            predicates.add(cb.equal(cb.upper(car.get("color")), criteria.color().toUpperCase(Locale.ROOT)));
+        }
+        if (criteria.engineType() != null) {
+            predicates.add(cb.equal(cb.upper(car.get("engineType")), criteria.engineType().toUpperCase(Locale.ROOT)));
+        }
+        if (criteria.minPrice() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(car.get("price"), criteria.minPrice()));
+        }
+        if (criteria.maxPrice() != null) {
+            predicates.add(cb.lessThanOrEqualTo(car.get("price"), criteria.maxPrice()));
+        }
+        if (criteria.minYear() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(car.get("year"), criteria.minYear()));
+        }
+        if (criteria.maxYear() != null) {
+            predicates.add(cb.lessThanOrEqualTo(car.get("year"), criteria.maxYear()));
+        }
+        query.where(predicates.toArray(Predicate[]::new));
+        query.orderBy(orders(cb, car, sort));
+
+        return entityManager.createQuery(query).setMaxResults(limit).getResultList();
+    }
+
+    private static List<Order> orders(CriteriaBuilder cb, Root<Car> car, Sort sort) {
+        List<Order> orders = new ArrayList<>();
+        boolean byId = false;
+        for (Sort.Order order : sort) {
+            if (!SORTABLE.contains(order.getProperty())) {
+                throw new IllegalArgumentException("Unknown sort property " + order.getProperty());
+            }
+            byId |= order.getProperty().equals("id");
+            orders.add(order.isAscending() ? cb.asc(car.get(order.getProperty()))
+                    : cb.desc(car.get(order.getProperty())));
+        }
+        // порядок при равных значениях должен быть стабильным, иначе LIMIT режет случайно
+        if (!byId) {
+            orders.add(cb.asc(car.get("id")));
+        }
+        return orders;
+    }
+}
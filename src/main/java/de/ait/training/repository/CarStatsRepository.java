@@ -0,0 +1,19 @@
+package de.ait.training.repository;
+
+import de.ait.training.dto.CarStats;
+import de.ait.training.dto.CarStatsGroupBy;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * Статистика цен одним запросом с GROUP BY в базе
+ */
+public interface CarStatsRepository {
+
+    /**
+     * @param groupBy колонка группировки, null - одна строка на весь каталог
+     */
+    @Transactional(readOnly = true)
+    List<CarStats> stats(CarStatsGroupBy groupBy);
+}
@@ -0,0 +1,44 @@
+package de.ait.training.repository;
+
+import de.ait.training.dto.CarStats;
+import de.ait.training.dto.CarStatsGroupBy;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+
+/**
+ * percentile_cont ... WITHIN GROUP есть в PostgreSQL и H2, в JPQL его нет - поэтому нативный SQL.
+ * Колонка группировки берется только из CarStatsGroupBy
+ */
+@RequiredArgsConstructor
+class CarStatsRepositoryImpl implements CarStatsRepository {
+    private static final String AGGREGATES = "count(*), min(price), max(price), avg(price), "
+            + "percentile_cont(0.5) WITHIN GROUP (ORDER BY price), "
+            + "percentile_cont(0.9) WITHIN GROUP (ORDER BY price), "
+            + "percentile_cont(0.99) WITHIN GROUP (ORDER BY price)";
+
+    private final EntityManager entityManager;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<CarStats> stats(CarStatsGroupBy groupBy) {
+        String sql = groupBy == null
+                ? "SELECT NULL, " + AGGREGATES + " FROM cars"
+                : "SELECT " + groupBy.column() + ", " + AGGREGATES + " FROM cars"
+                + " GROUP BY " + groupBy.column() + " ORDER BY " + groupBy.column() + " NULLS LAST";
+        List<Object[]> rows = entityManager.createNativeQuery(sql).getResultList();
+        return rows.stream().map(CarStatsRepositoryImpl::toStats).toList();
+    }
+
+    private static CarStats toStats(Object[] row) {
+        return new CarStats(row[0] != null ? row[0].toString() : null,
+                ((Number) row[1]).longValue(),
+                toDouble(row[2]), toDouble(row[3]), toDouble(row[4]),
+                toDouble(row[5]), toDouble(row[6]), toDouble(row[7]));
+    }
+
+    private static Double toDouble(Object value) {
+        return value != null ? ((Number) value).doubleValue() : null;
+    }
+}
@@ -0,0 +1,28 @@
+package de.ait.training.repository;
+
+import de.ait.training.dto.CarUpsertResult;
+import de.ait.training.model.Car;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * PUT без предварительного findById: вставка или замена автомобиля одним SQL-запросом
+ * (INSERT ... ON CONFLICT (id) DO UPDATE на PostgreSQL, MERGE на H2)
+ */
+public interface CarUpsertRepository {
+
+    /**
+     * Наименьший id, с которым PUT создает автомобиль. cars_seq ограничена значением CLIENT_ID_MIN - 1
+     * (changelog 13.0), поэтому меньшие id выдает только последовательность - в том числе блоками,
+     * которые Hibernate этого или другого экземпляра уже взял, но еще не раздал
+     */
+    long CLIENT_ID_MIN = 1_000_000_000_000L;
+
+    /**
+     * Автомобиль с id меньше CLIENT_ID_MIN только заменяется: если его нет, ничего не создается (ID_RESERVED)
+     *
+     * @param car             автомобиль с id, по которому ищется строка
+     * @param expectedVersion если не null, существующая строка заменяется только при такой версии
+     */
+    @Transactional
+    CarUpsertResult upsert(Car car, Long expectedVersion);
+}
@@ -0,0 +1,119 @@
+package de.ait.training.repository;
+
+import de.ait.training.dto.CarUpsertResult;
+import de.ait.training.model.Car;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.query.TypedParameterValue;
+import org.hibernate.type.StandardBasicTypes;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+
+/**
+ * Один запрос возвращает одну строку: новые version / updated_at (NULL, если версия не совпала)
+ * и старые значения строки из CTE old (NULL, если строки не было).
+ * Вставка пишет version = 0, замена - version + 1, поэтому по новой версии видно, что произошло.
+ * updated_at - время JVM (Instant.now()), как у @UpdateTimestamp и массовых UPDATE, а не CURRENT_TIMESTAMP базы.
+ * id вставки приходит из пути, а не из cars_seq, поэтому вставка идет только для id от CLIENT_ID_MIN -
+ * последовательность их не выдает. Меньший id без строки - ни вставки, ни замены (ID_RESERVED).
+ * Цена в ответе - из сохраненной строки (NUMERIC(12,2)), а не из запроса.
+ * Вставка и замена увеличивают счетчик изменений каталога в той же транзакции
+ */
+@RequiredArgsConstructor
+class CarUpsertRepositoryImpl implements CarUpsertRepository {
+    private static final String OLD = "old AS (SELECT color, model, price, year, engine_type, version, updated_at"
+            + " FROM cars WHERE id = :id)";
+    private static final String RESULT = "SELECT saved.version, saved.updated_at,"
+            + " old.color, old.model, old.price, old.year, old.engine_type, old.version, old.updated_at, saved.price";
+
+    private static final String POSTGRES_UPSERT = "WITH " + OLD + ", saved AS ("
+            + "INSERT INTO cars (id, color, model, price, year, engine_type, version, updated_at)"
+            + " SELECT :id, :color, :model, :price, :year, :engineType, 0, :now"
+            + " WHERE :id >= :clientIdMin OR EXISTS (SELECT 1 FROM old)"
+            + " ON CONFLICT (id) DO UPDATE SET color = EXCLUDED.color, model = EXCLUDED.model,"
+            + " price = EXCLUDED.price, year = EXCLUDED.year, engine_type = EXCLUDED.engine_type,"
+            + " version = cars.version + 1, updated_at = EXCLUDED.updated_at"
+            + "%s RETURNING version, updated_at, price) "
+            + RESULT + " FROM (SELECT 1) one LEFT JOIN saved ON TRUE LEFT JOIN old ON TRUE";
+    private static final String POSTGRES_VERSION_CHECK = " WHERE cars.version = :expectedVersion";
+
+    // в H2 MERGE нельзя вынести в CTE, его строки читаются через FINAL TABLE прямо во FROM
+    private static final String H2_MERGE = "WITH " + OLD + " " + RESULT + " FROM (SELECT 1) one"
+            + " LEFT JOIN FINAL TABLE (MERGE INTO cars c"
+            + " USING (VALUES (CAST(:id AS BIGINT), CAST(:color AS VARCHAR), CAST(:model AS VARCHAR),"
+            + " CAST(:price AS DOUBLE PRECISION), CAST(:year AS INTEGER), CAST(:engineType AS VARCHAR),"
+            + " CAST(:now AS TIMESTAMP WITH TIME ZONE)))"
+            + " s(id, color, model, price, year, engine_type, updated_at) ON c.id = s.id"
+            + " WHEN MATCHED%s THEN UPDATE SET color = s.color, model = s.model, price = s.price,"
+            + " year = s.year, engine_type = s.engine_type, version = c.version + 1, updated_at = s.updated_at"
+            + " WHEN NOT MATCHED AND s.id >= CAST(:clientIdMin AS BIGINT)"
+            + " THEN INSERT (id, color, model, price, year, engine_type, version, updated_at)"
+            + " VALUES (s.id, s.color, s.model, s.price, s.year, s.engine_type, 0, s.updated_at)"
+            + ") saved ON TRUE LEFT JOIN old ON TRUE";
+    private static final String H2_VERSION_CHECK = " AND c.version = :expectedVersion";
+
+    private final EntityManager entityManager;
+    private final CarCatalogRepositoryImpl catalogRepository;
+
+    @Override
+    public CarUpsertResult upsert(Car car, Long expectedVersion) {
+        boolean h2 = isH2();
+        String versionCheck = expectedVersion == null ? "" : h2 ? H2_VERSION_CHECK : POSTGRES_VERSION_CHECK;
+        Query query = entityManager.createNativeQuery(String.format(h2 ? H2_MERGE : POSTGRES_UPSERT, versionCheck))
+                .setParameter("id", car.getId())
+                .setParameter("color", new TypedParameterValue<>(StandardBasicTypes.STRING, car.getColor()))
+                .setParameter("model", new TypedParameterValue<>(StandardBasicTypes.STRING, car.getModel()))
+                .setParameter("price", car.getPrice())
+                .setParameter("year", car.getYear())
+                .setParameter("engineType", new TypedParameterValue<>(StandardBasicTypes.STRING, car.getEngineType()))
+                .setParameter("now", Instant.now())
+                .setParameter("clientIdMin", CLIENT_ID_MIN);
+        if (expectedVersion != null) {
+            query.setParameter("expectedVersion", expectedVersion);
+        }
+        Object[] row = (Object[]) query.getSingleResult();
+
+        Car before = null;
+        if (row[7] != null) {
+            before = new Car((String) row[2], (String) row[3], ((Number) row[4]).doubleValue());
+            before.setId(car.getId());
+            before.setYear(((Number) row[5]).intValue());
+            before.setEngineType((String) row[6]);
+            before.setVersion(((Number) row[7]).longValue());
+            before.setUpdatedAt(toInstant(row[8]));
+        }
+        if (row[0] == null) {
+            return new CarUpsertResult(before != null ? CarUpsertResult.Status.VERSION_MISMATCH
+                    : CarUpsertResult.Status.ID_RESERVED, null, null);
+        }
+        catalogRepository.countChange();
+        Car after = new Car(car.getColor(), car.getModel(), ((Number) row[9]).doubleValue());
+        after.setId(car.getId());
+        after.setYear(car.getYear());
+        after.setEngineType(car.getEngineType());
+        after.setVersion(((Number) row[0]).longValue());
+        after.setUpdatedAt(toInstant(row[1]));
+        return new CarUpsertResult(before == null ? CarUpsertResult.Status.CREATED : CarUpsertResult.Status.UPDATED,
+                before, after);
+    }
+
+    private boolean isH2() {
+        return entityManager.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class)
+                .getJdbcServices().getDialect() instanceof H2Dialect;
+    }
+
+    private static Instant toInstant(Object value) {
+        return switch (value) {
+            case null -> null;
+            case Instant instant -> instant;
+            case OffsetDateTime dateTime -> dateTime.toInstant();
+            case Timestamp timestamp -> timestamp.toInstant();
+            default -> throw new IllegalStateException("Unexpected updated_at type " + value.getClass());
+        };
+    }
+}
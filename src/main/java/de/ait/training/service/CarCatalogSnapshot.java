@@ -0,0 +1,570 @@
+package de.ait.training.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import de.ait.training.dto.CarDto;
+import de.ait.training.event.CarsBulkUpdatedEvent;
+import de.ait.training.model.Car;
+import de.ait.training.repository.CarRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.DoublePredicate;
+
+/**
+ * Весь каталог в памяти по колонкам, для чтения без базы: GET /api/cars, страницы, /{id},
+ * фильтры по цвету и цене.
+ * Строки лежат по возрастанию id в сегментах до 2 * SEGMENT_SIZE строк. В сегменте каждая колонка -
+ * свой массив: long id / version / updated_at (микросекунды), double price, int year,
+ * а color, model и engineType - int-коды словарей. Строка из словаря хранится один раз
+ * вместе с готовым JSON (SerializedString), поэтому ни String на каждый автомобиль,
+ * ни повторного кодирования строк при выдаче нет.
+ * Опубликованные сегменты не меняются: запись копирует только затронутые сегменты
+ * и публикует новое состояние (copy-on-write), чтение идет без блокировок.
+ * Обновляется по событиям CarChangedEvent / CarsImportedEvent / CarsUpdatedEvent, после изменения
+ * цен на процент (CarsBulkUpdatedEvent) перестраивается из базы в фоне. Изменения во время загрузки не теряются,
+ * до первой загрузки isReady() = false (см. LoadableCarIndex).
+ * Включается свойством app.cars.snapshot.enabled=true
+ */
+@Service
+@ConditionalOnProperty(name = "app.cars.snapshot.enabled", havingValue = "true")
+public class CarCatalogSnapshot extends LoadableCarIndex<CarCatalogSnapshot.Loading> {
+    static final int SEGMENT_SIZE = 4096;
+    private static final long NO_VALUE = Long.MIN_VALUE;
+
+    private static final SerializableString ID = new SerializedString("id");
+    private static final SerializableString COLOR = new SerializedString("color");
+    private static final SerializableString MODEL = new SerializedString("model");
+    private static final SerializableString PRICE = new SerializedString("price");
+    private static final SerializableString YEAR = new SerializedString("year");
+    private static final SerializableString ENGINE_TYPE = new SerializedString("engineType");
+    private static final SerializableString VERSION = new SerializedString("version");
+    private static final SerializableString UPDATED_AT = new SerializedString("updatedAt");
+
+    // словари пополняются только под блокировкой записи, коды не переиспользуются
+    private final Dictionary colors = new Dictionary();
+    private final Dictionary models = new Dictionary();
+    private final Dictionary engineTypes = new Dictionary();
+
+    private volatile State state = State.EMPTY;
+
+    public CarCatalogSnapshot(CarRepository carRepository) {
+        super(carRepository);
+    }
+
+    /**
+     * Опубликованное состояние: сегменты и словари, которыми закодированы их строки
+     */
+    private record State(Segment[] segments, String[][] dictionaries, SerializableString[][] json, int size) {
+        static final State EMPTY = new State(new Segment[0], new String[3][0], new SerializableString[3][0], 0);
+    }
+
+    /**
+     * Сегменты, собираемые загрузкой
+     */
+    static final class Loading {
+        private final List<Segment> segments = new ArrayList<>();
+        private Segment current;
+        private int size;
+    }
+
+    @Override
+    protected Loading newState() {
+        return new Loading();
+    }
+
+    @Override
+    protected void addLoaded(Loading loading, List<Car> chunk) {
+        // словари пополняются под той же блокировкой, что и при записи
+        synchronized (this) {
+            for (Car car : chunk) {
+                if (loading.current == null || loading.current.size == SEGMENT_SIZE) {
+                    loading.current = new Segment(SEGMENT_SIZE);
+                    loading.segments.add(loading.current);
+                }
+                loading.current.insert(loading.current.size, encode(car));
+                loading.size++;
+            }
+        }
+    }
+
+    @Override
+    protected void publish(Loading loading) {
+        loading.segments.forEach(Segment::trim);
+        publish(loading.segments, loading.size);
+    }
+
+    @EventListener
+    @Order(CarCatalogVersions.DATA_LISTENER_ORDER)
+    public void onCarsBulkUpdated(CarsBulkUpdatedEvent event) {
+        reloadLater();
+    }
+
+    public int size() {
+        return state.size();
+    }
+
+    public Optional<Car> findById(long id) {
+        State current = state;
+        int segment = segmentFor(current.segments(), id);
+        if (segment == current.segments().length) {
+            return Optional.empty();
+        }
+        Segment rows = current.segments()[segment];
+        int row = Arrays.binarySearch(rows.ids, 0, rows.size, id);
+        return row < 0 ? Optional.empty() : Optional.of(car(current, rows, row));
+    }
+
+    /**
+     * Keyset-страница, как CarRepository.findByIdGreaterThanOrderByIdAsc
+     */
+    public List<Car> page(long after, int limit) {
+        State current = state;
+        List<Car> page = new ArrayList<>(Math.min(limit, current.size()));
+        for (int segment = segmentFor(current.segments(), after + 1); segment < current.segments().length; segment++) {
+            Segment rows = current.segments()[segment];
+            for (int row = firstRowAfter(rows, after); row < rows.size; row++) {
+                if (page.size() == limit) {
+                    return page;
+                }
+                page.add(car(current, rows, row));
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Пишет автомобили с id больше after объектами Car (тот же JSON, что дает ObjectMapper),
+     * начало и конец массива пишет вызывающий код
+     */
+    public void writeCars(long after, JsonGenerator generator) throws IOException {
+        State current = state;
+        SerializableString[] colorJson = current.json()[0];
+        SerializableString[] modelJson = current.json()[1];
+        SerializableString[] engineTypeJson = current.json()[2];
+        for (int segment = segmentFor(current.segments(), after + 1); segment < current.segments().length; segment++) {
+            Segment rows = current.segments()[segment];
+            for (int row = firstRowAfter(rows, after); row < rows.size; row++) {
+                generator.writeStartObject();
+                generator.writeFieldName(ID);
+                generator.writeNumber(rows.ids[row]);
+                generator.writeFieldName(COLOR);
+                writeCode(generator, colorJson, rows.colors[row]);
+                generator.writeFieldName(MODEL);
+                writeCode(generator, modelJson, rows.models[row]);
+                generator.writeFieldName(PRICE);
+                generator.writeNumber(rows.prices[row]);
+                generator.writeFieldName(YEAR);
+                generator.writeNumber(rows.years[row]);
+                generator.writeFieldName(ENGINE_TYPE);
+                writeCode(generator, engineTypeJson, rows.engineTypes[row]);
+                generator.writeFieldName(VERSION);
+                if (rows.versions[row] == NO_VALUE) {
+                    generator.writeNull();
+                } else {
+                    generator.writeNumber(rows.versions[row]);
+                }
+                generator.writeFieldName(UPDATED_AT);
+                if (rows.updatedAt[row] == NO_VALUE) {
+                    generator.writeNull();
+                } else {
+                    generator.writeString(toInstant(rows.updatedAt[row]).toString());
+                }
+                generator.writeEndObject();
+            }
+            generator.flush();
+        }
+    }
+
+    public List<CarDto> findByColorIgnoreCase(String color) {
+        State current = state;
+        String[] values = current.dictionaries()[0];
+        boolean[] matches = new boolean[values.length];
+        boolean any = false;
+        for (int code = 0; code < values.length; code++) {
+            matches[code] = values[code].equalsIgnoreCase(color);
+            any |= matches[code];
+        }
+        if (!any) {
+            return List.of();
+        }
+        List<CarDto> found = new ArrayList<>();
+        for (Segment rows : current.segments()) {
+            for (int row = 0; row < rows.size; row++) {
+                int code = rows.colors[row];
+                if (code >= 0 && matches[code]) {
+                    found.add(dto(current, rows, row));
+                }
+            }
+        }
+        return found;
+    }
+
+    public List<CarDto> findByPriceBetween(double min, double max) {
+        return findByPrice(price -> price >= min && price <= max);
+    }
+
+    public List<CarDto> findByPriceLessThanEqual(double max) {
+        return findByPrice(price -> price <= max);
+    }
+
+    public List<CarDto> findByPriceGreaterThanEqual(double min) {
+        return findByPrice(price -> price >= min);
+    }
+
+    /**
+     * Добавляет или заменяет автомобиль (после postCar / putCar / patchCar)
+     */
+    @Override
+    public synchronized void put(Car car) {
+        write(List.of(car), List.of());
+    }
+
+    /**
+     * Удаляет автомобиль (после deleteCar)
+     */
+    @Override
+    public synchronized void remove(Long id) {
+        write(List.of(), List.of(id));
+    }
+
+    /**
+     * Пачка автомобилей (после импорта): каждый затронутый сегмент копируется один раз на пачку
+     */
+    @Override
+    public synchronized void putAll(List<Car> cars) {
+        write(cars, List.of());
+    }
+
+    @Override
+    protected long version(Long id) {
+        State current = state;
+        int segment = segmentFor(current.segments(), id);
+        if (segment == current.segments().length) {
+            return ABSENT;
+        }
+        Segment rows = current.segments()[segment];
+        int row = Arrays.binarySearch(rows.ids, 0, rows.size, id);
+        if (row < 0) {
+            return ABSENT;
+        }
+        return rows.versions[row] == NO_VALUE ? UNVERSIONED : rows.versions[row];
+    }
+
+    private List<CarDto> findByPrice(DoublePredicate matches) {
+        State current = state;
+        List<CarDto> found = new ArrayList<>();
+        for (Segment rows : current.segments()) {
+            double[] prices = rows.prices;
+            for (int row = 0; row < rows.size; row++) {
+                if (matches.test(prices[row])) {
+                    found.add(dto(current, rows, row));
+                }
+            }
+        }
+        return found;
+    }
+
+    private void write(List<Car> puts, List<Long> removes) {
+        State current = state;
+        List<Segment> segments = new ArrayList<>(Arrays.asList(current.segments()));
+        // сегменты, уже скопированные в этой записи: их можно менять на месте
+        Set<Segment> owned = Collections.newSetFromMap(new IdentityHashMap<>());
+        int size = current.size();
+
+        for (Car car : puts) {
+            Segment.Row row = encode(car);
+            if (segments.isEmpty()) {
+                Segment first = new Segment(SEGMENT_SIZE);
+                first.insert(0, row);
+                segments.add(first);
+                owned.add(first);
+                size++;
+                continue;
+            }
+            // id больше всех - в последний сегмент
+            int index = Math.min(segmentFor(segments, row.id()), segments.size() - 1);
+            Segment segment = own(segments, index, owned);
+            int position = Arrays.binarySearch(segment.ids, 0, segment.size, row.id());
+            if (position >= 0) {
+                segment.set(position, row);
+            } else {
+                segment.insert(-position - 1, row);
+                size++;
+                if (segment.size > 2 * SEGMENT_SIZE) {
+                    Segment tail = segment.split();
+                    segments.add(index + 1, tail);
+                    owned.add(tail);
+                }
+            }
+        }
+        for (Long id : removes) {
+            int index = segmentFor(segments, id);
+            if (index == segments.size()) {
+                continue;
+            }
+            Segment segment = segments.get(index);
+            int position = Arrays.binarySearch(segment.ids, 0, segment.size, id);
+            if (position < 0) {
+                continue;
+            }
+            segment = own(segments, index, owned);
+            segment.delete(position);
+            size--;
+            if (segment.size == 0) {
+                segments.remove(index);
+            }
+        }
+        // запас емкости после вставок и деления не публикуется
+        owned.forEach(Segment::trim);
+        publish(segments, size);
+    }
+
+    private static Segment own(List<Segment> segments, int index, Set<Segment> owned) {
+        Segment segment = segments.get(index);
+        if (!owned.contains(segment)) {
+            segment = segment.copy();
+            segments.set(index, segment);
+            owned.add(segment);
+        }
+        return segment;
+    }
+
+    private void publish(List<Segment> segments, int size) {
+        state = new State(segments.toArray(new Segment[0]),
+                new String[][]{colors.values(), models.values(), engineTypes.values()},
+                new SerializableString[][]{colors.json(), models.json(), engineTypes.json()},
+                size);
+    }
+
+    private Segment.Row encode(Car car) {
+        return new Segment.Row(car.getId(), colors.code(car.getColor()), models.code(car.getModel()),
+                engineTypes.code(car.getEngineType()), car.getPrice(), car.getYear(),
+                car.getVersion() != null ? car.getVersion() : NO_VALUE,
+                car.getUpdatedAt() != null ? ChronoUnit.MICROS.between(Instant.EPOCH, car.getUpdatedAt()) : NO_VALUE);
+    }
+
+    private static Car car(State state, Segment rows, int row) {
+        Car car = new Car(decode(state, 0, rows.colors[row]), decode(state, 1, rows.models[row]), rows.prices[row]);
+        car.setId(rows.ids[row]);
+        car.setYear(rows.years[row]);
+        car.setEngineType(decode(state, 2, rows.engineTypes[row]));
+        car.setVersion(rows.versions[row] == NO_VALUE ? null : rows.versions[row]);
+        car.setUpdatedAt(rows.updatedAt[row] == NO_VALUE ? null : toInstant(rows.updatedAt[row]));
+        return car;
+    }
+
+    private static CarDto dto(State state, Segment rows, int row) {
+        return new CarDto(rows.ids[row], decode(state, 0, rows.colors[row]), decode(state, 1, rows.models[row]),
+                rows.prices[row], rows.years[row], decode(state, 2, rows.engineTypes[row]));
+    }
+
+    private static String decode(State state, int dictionary, int code) {
+        return code < 0 ? null : state.dictionaries()[dictionary][code];
+    }
+
+    private static void writeCode(JsonGenerator generator, SerializableString[] json, int code) throws IOException {
+        if (code < 0) {
+            generator.writeNull();
+        } else {
+            generator.writeString(json[code]);
+        }
+    }
+
+    private static Instant toInstant(long micros) {
+        return Instant.EPOCH.plus(micros, ChronoUnit.MICROS);
+    }
+
+    /** первый сегмент, последний id которого >= id (или длина, если таких нет) */
+    private static int segmentFor(Segment[] segments, long id) {
+        return segmentFor(Arrays.asList(segments), id);
+    }
+
+    private static int segmentFor(List<Segment> segments, long id) {
+        int low = 0;
+        int high = segments.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (lastId(segments.get(mid)) < id) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int firstRowAfter(Segment rows, long after) {
+        int position = Arrays.binarySearch(rows.ids, 0, rows.size, after);
+        return position >= 0 ? position + 1 : -position - 1;
+    }
+
+    private static long lastId(Segment segment) {
+        return segment.ids[segment.size - 1];
+    }
+
+    /**
+     * Строки одной колонки: код -> значение и его JSON
+     */
+    private static final class Dictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private String[] values = new String[0];
+        private SerializableString[] json = new SerializableString[0];
+
+        int code(String value) {
+            if (value == null) {
+                return -1;
+            }
+            Integer code = codes.get(value);
+            if (code != null) {
+                return code;
+            }
+            int next = values.length;
+            values = Arrays.copyOf(values, next + 1);
+            values[next] = value;
+            json = Arrays.copyOf(json, next + 1);
+            json[next] = new SerializedString(value);
+            codes.put(value, next);
+            return next;
+        }
+
+        String[] values() {
+            return values;
+        }
+
+        SerializableString[] json() {
+            return json;
+        }
+    }
+
+    /**
+     * Сегмент строк по возрастанию id. После публикации не меняется,
+     * запись меняет только свою копию (copy)
+     */
+    private static final class Segment {
+        private long[] ids;
+        private int[] colors;
+        private int[] models;
+        private int[] engineTypes;
+        private double[] prices;
+        private int[] years;
+        private long[] versions;
+        private long[] updatedAt;
+        private int size;
+
+        record Row(long id, int color, int model, int engineType, double price, int year, long version,
+                   long updatedAt) {
+        }
+
+        Segment(int capacity) {
+            ids = new long[capacity];
+            colors = new int[capacity];
+            models = new int[capacity];
+            engineTypes = new int[capacity];
+            prices = new double[capacity];
+            years = new int[capacity];
+            versions = new long[capacity];
+            updatedAt = new long[capacity];
+        }
+
+        Segment copy() {
+            Segment copy = new Segment(0);
+            int capacity = size + 1;
+            copy.ids = Arrays.copyOf(ids, capacity);
+            copy.colors = Arrays.copyOf(colors, capacity);
+            copy.models = Arrays.copyOf(models, capacity);
+            copy.engineTypes = Arrays.copyOf(engineTypes, capacity);
+            copy.prices = Arrays.copyOf(prices, capacity);
+            copy.years = Arrays.copyOf(years, capacity);
+            copy.versions = Arrays.copyOf(versions, capacity);
+            copy.updatedAt = Arrays.copyOf(updatedAt, capacity);
+            copy.size = size;
+            return copy;
+        }
+
+        void set(int position, Row row) {
+            ids[position] = row.id();
+            colors[position] = row.color();
+            models[position] = row.model();
+            engineTypes[position] = row.engineType();
+            prices[position] = row.price();
+            years[position] = row.year();
+            versions[position] = row.version();
+            updatedAt[position] = row.updatedAt();
+        }
+
+        void insert(int position, Row row) {
+            if (size == ids.length) {
+                grow(Math.max(16, size * 2));
+            }
+            shift(position, position + 1, size - position);
+            size++;
+            set(position, row);
+        }
+
+        void delete(int position) {
+            shift(position + 1, position, size - position - 1);
+            size--;
+        }
+
+        /** отрезает вторую половину строк в новый сегмент */
+        Segment split() {
+            int half = size / 2;
+            Segment tail = new Segment(size - half);
+            System.arraycopy(ids, half, tail.ids, 0, size - half);
+            System.arraycopy(colors, half, tail.colors, 0, size - half);
+            System.arraycopy(models, half, tail.models, 0, size - half);
+            System.arraycopy(engineTypes, half, tail.engineTypes, 0, size - half);
+            System.arraycopy(prices, half, tail.prices, 0, size - half);
+            System.arraycopy(years, half, tail.years, 0, size - half);
+            System.arraycopy(versions, half, tail.versions, 0, size - half);
+            System.arraycopy(updatedAt, half, tail.updatedAt, 0, size - half);
+            tail.size = size - half;
+            size = half;
+            return tail;
+        }
+
+        void trim() {
+            if (ids.length > size) {
+                grow(size);
+            }
+        }
+
+        private void shift(int from, int to, int length) {
+            System.arraycopy(ids, from, ids, to, length);
+            System.arraycopy(colors, from, colors, to, length);
+            System.arraycopy(models, from, models, to, length);
+            System.arraycopy(engineTypes, from, engineTypes, to, length);
+            System.arraycopy(prices, from, prices, to, length);
+            System.arraycopy(years, from, years, to, length);
+            System.arraycopy(versions, from, versions, to, length);
+            System.arraycopy(updatedAt, from, updatedAt, to, length);
+        }
+
+        private void grow(int capacity) {
+            ids = Arrays.copyOf(ids, capacity);
+            colors = Arrays.copyOf(colors, capacity);
+            models = Arrays.copyOf(models, capacity);
+            engineTypes = Arrays.copyOf(engineTypes, capacity);
+            prices = Arrays.copyOf(prices, capacity);
+            years = Arrays.copyOf(years, capacity);
+            versions = Arrays.copyOf(versions, capacity);
+            updatedAt = Arrays.copyOf(updatedAt, capacity);
+        }
+    }
+}
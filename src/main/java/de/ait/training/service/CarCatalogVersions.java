@@ -0,0 +1,135 @@
+package de.ait.training.service;
+
+import de.ait.training.dto.CarCatalogVersion;
+import de.ait.training.event.CarCatalogChangeCountedEvent;
+import de.ait.training.event.CarChangedEvent;
+import de.ait.training.event.CarsBulkUpdatedEvent;
+import de.ait.training.event.CarsImportedEvent;
+import de.ait.training.event.CarsUpdatedEvent;
+import de.ait.training.repository.CarRepository;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.TreeSet;
+
+/**
+ * Версия каталога для ETag ответов из памяти (индекс цен, сводка статистики, снимок каталога, кэш Caffeine)
+ * без запроса в базу: значение счетчика car_catalog_changes.changes, изменения до которого уже применены
+ * к этим данным. Первое значение читается из базы, дальше версия растет по событиям изменений.
+ * Слушатели, которые меняют данные в памяти, идут с порядком DATA_LISTENER_ORDER, то есть раньше этого:
+ * версия растет только после того, как данные изменены.
+ * Счетчик увеличивается в транзакции изменения (CarCatalogChangeCountedEvent), событие об автомобилях
+ * публикует тот же поток после коммита. Если два изменения применены не в порядке счетчика
+ * (5 выдано раньше, но еще не применено, а 6 уже применено), данных в памяти нет ни в одной версии
+ * базы - до применения 5 версии нет совсем, и ответ идет без ETag.
+ * Данные в памяти знают только об изменениях этого экземпляра, версия - тоже
+ */
+@Service
+public class CarCatalogVersions {
+    /** порядок слушателей, которые меняют данные в памяти: раньше слушателей этого класса */
+    public static final int DATA_LISTENER_ORDER = Ordered.LOWEST_PRECEDENCE - 1;
+    private static final long UNKNOWN = -1;
+
+    private final CarRepository carRepository;
+    // значения счетчика, выданные транзакциям этого экземпляра, изменения которых еще не применены
+    private final NavigableSet<Long> pending = new TreeSet<>();
+    // значения, выданные в этом потоке: их применяет следующее событие об автомобилях из этого потока
+    private final ThreadLocal<List<Long>> counted = ThreadLocal.withInitial(ArrayList::new);
+    private long applied = UNKNOWN;
+
+    public CarCatalogVersions(CarRepository carRepository) {
+        this.carRepository = carRepository;
+    }
+
+    /**
+     * @return версия данных в памяти, пусто - изменения применены не по порядку и версии у данных нет
+     */
+    public Optional<CarCatalogVersion> current() {
+        synchronized (this) {
+            if (applied != UNKNOWN) {
+                return version();
+            }
+        }
+        long loaded = carRepository.findCatalogVersion().changes();
+        synchronized (this) {
+            applied = Math.max(applied, loaded);
+            return version();
+        }
+    }
+
+    @EventListener
+    public void onChangeCounted(CarCatalogChangeCountedEvent event) {
+        long changes = event.changes();
+        synchronized (this) {
+            pending.add(changes);
+        }
+        counted.get().add(changes);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    counted.get().remove(changes);
+                    synchronized (CarCatalogVersions.this) {
+                        pending.remove(changes);
+                    }
+                }
+            }
+        });
+    }
+
+    @EventListener
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void onCarChanged(CarChangedEvent event) {
+        applyCounted();
+    }
+
+    @EventListener
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void onCarsImported(CarsImportedEvent event) {
+        applyCounted();
+    }
+
+    @EventListener
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void onCarsUpdated(CarsUpdatedEvent event) {
+        applyCounted();
+    }
+
+    @EventListener
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void onCarsBulkUpdated(CarsBulkUpdatedEvent event) {
+        applyCounted();
+    }
+
+    private void applyCounted() {
+        List<Long> changes = counted.get();
+        if (changes.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            for (Long change : changes) {
+                pending.remove(change);
+                if (applied != UNKNOWN) {
+                    applied = Math.max(applied, change);
+                }
+            }
+        }
+        changes.clear();
+    }
+
+    private Optional<CarCatalogVersion> version() {
+        // выдано значение не больше версии, а его изменение еще не применено
+        if (!pending.isEmpty() && pending.first() <= applied) {
+            return Optional.empty();
+        }
+        return Optional.of(new CarCatalogVersion(applied));
+    }
+}
@@ -0,0 +1,367 @@
+package de.ait.training.service;
+
+import de.ait.training.dto.CarChange;
+import de.ait.training.dto.CarChangePage;
+import de.ait.training.dto.CarDto;
+import de.ait.training.event.CarChangedEvent;
+import de.ait.training.event.CarsBulkUpdatedEvent;
+import de.ait.training.event.CarsImportedEvent;
+import de.ait.training.event.CarsUpdatedEvent;
+import de.ait.training.model.Car;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Лента изменений каталога: каждое изменение через API получает следующий seq
+ * и попадает в кольцевой буфер последних {@code capacity} изменений.
+ * Клиенты получают только изменения после своей позиции epoch:seq - подпиской SSE или long-poll,
+ * без чтения таблицы. Лента своя у каждого экземпляра приложения и живет до его остановки:
+ * epoch - случайный идентификатор, новый при каждом запуске, а изменения, сделанные через другой
+ * экземпляр, в ней не появляются. Если позиция из другой ленты (сервер перезапущен, запрос попал
+ * на другой экземпляр) или нужные изменения уже вытеснены из буфера, клиент получает reset
+ * и перечитывает каталог один раз.
+ * У каждого SSE-подписчика своя очередь на {@code subscriber-queue} изменений и свой виртуальный поток,
+ * который отправляет из нее события по порядку. Новое изменение кладется в очереди без ожидания:
+ * медленный клиент не задерживает ни запись в базу, ни других подписчиков. Подписчик, чья очередь
+ * переполнилась, отключается и при переподключении с Last-Event-ID дочитывает пропущенное из буфера.
+ * Без изменений подписчику раз в {@code heartbeat-ms} уходит комментарий - соединение не закрывают
+ * прокси, а отключившийся клиент обнаруживается
+ */
+@Slf4j
+@Service
+public class CarChangeFeed {
+    static final String CHANGE_EVENT = "change";
+    static final String RESET_EVENT = "reset";
+    static final String HEARTBEAT_COMMENT = "heartbeat";
+
+    private final String epoch = UUID.randomUUID().toString().replace("-", "").substring(0, 12);
+    private final CarChange[] buffer;
+    private final int maxBatch;
+    private final long pollTimeoutMs;
+    private final long sseTimeoutMs;
+    private final int subscriberQueue;
+    private final long heartbeatMs;
+
+    // номер последнего изменения, буфер и ожидающие long-poll защищены this
+    private long lastSeq;
+    private final List<Waiter> waiters = new ArrayList<>();
+
+    // добавляются и получают новые изменения под this
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final AtomicLong subscriberCount = new AtomicLong();
+
+    private record Waiter(long since, int limit, DeferredResult<CarChangePage> result) {
+    }
+
+    private static final class Subscriber {
+        private final SseEmitter emitter;
+        private final BlockingQueue<CarChange> queue;
+        private Thread sender;
+        private volatile boolean closed;
+        // очередь переполнилась: поток подписчика завершает соединение
+        private volatile boolean dropped;
+        // меняется только в потоке подписчика
+        private long lastSent;
+
+        Subscriber(SseEmitter emitter, int queueCapacity, long lastSent) {
+            this.emitter = emitter;
+            this.queue = new LinkedBlockingQueue<>(queueCapacity);
+            this.lastSent = lastSent;
+        }
+    }
+
+    public CarChangeFeed(@Value("${app.cars.changes.capacity:10000}") int capacity,
+                         @Value("${app.cars.changes.max-batch:1000}") int maxBatch,
+                         @Value("${app.cars.changes.poll-timeout-ms:30000}") long pollTimeoutMs,
+                         @Value("${app.cars.changes.sse-timeout-ms:1800000}") long sseTimeoutMs,
+                         @Value("${app.cars.changes.subscriber-queue:1000}") int subscriberQueue,
+                         @Value("${app.cars.changes.heartbeat-ms:15000}") long heartbeatMs) {
+        this.buffer = new CarChange[capacity];
+        this.maxBatch = maxBatch;
+        this.pollTimeoutMs = pollTimeoutMs;
+        this.sseTimeoutMs = sseTimeoutMs;
+        this.subscriberQueue = subscriberQueue;
+        this.heartbeatMs = heartbeatMs;
+    }
+
+    @EventListener
+    public void onCarChanged(CarChangedEvent event) {
+        if (event.before() == null) {
+            append(List.of(change(CarChange.Type.CREATED, event.after())));
+        } else if (event.after() == null) {
+            append(List.of(new CarChange(0, CarChange.Type.DELETED, event.before().getId(), null, null)));
+        } else {
+            append(List.of(change(CarChange.Type.UPDATED, event.after())));
+        }
+    }
+
+    @EventListener
+    public void onCarsImported(CarsImportedEvent event) {
+        append(event.cars().stream().map(car -> change(CarChange.Type.CREATED, car)).toList());
+    }
+
+    @EventListener
+    public void onCarsUpdated(CarsUpdatedEvent event) {
+        append(event.after().stream().map(car -> change(CarChange.Type.UPDATED, car)).toList());
+    }
+
+    @EventListener
+    public void onCarsBulkUpdated(CarsBulkUpdatedEvent event) {
+        append(List.of(new CarChange(0, CarChange.Type.BULK_UPDATED, null, null, null)));
+    }
+
+    public String epoch() {
+        return epoch;
+    }
+
+    public synchronized long lastSeq() {
+        return lastSeq;
+    }
+
+    /**
+     * Позиция в ленте для since и id SSE-событий
+     */
+    public String cursor(long seq) {
+        return epoch + ":" + seq;
+    }
+
+    /**
+     * @return seq из позиции этой ленты или null, если позиция из другой ленты или не в этом формате
+     */
+    Long seqOf(String cursor) {
+        String prefix = epoch + ":";
+        if (!cursor.startsWith(prefix)) {
+            return null;
+        }
+        try {
+            return Long.valueOf(cursor.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Изменения после since, не больше limit (и не больше max-batch)
+     */
+    public synchronized CarChangePage page(long since, int limit) {
+        return page(since, false, limit);
+    }
+
+    /**
+     * @param since позиция epoch:seq, null - с начала ленты
+     */
+    public synchronized CarChangePage page(String since, int limit) {
+        Long seq = since != null ? seqOf(since) : Long.valueOf(0);
+        return seq != null ? page(seq, false, limit) : page(0, true, limit);
+    }
+
+    /**
+     * При reset изменений в ответе нет: клиент перечитывает каталог, в котором уже есть все изменения
+     * до lastSeq ленты, и продолжает с него
+     */
+    private CarChangePage page(long since, boolean otherEpoch, int limit) {
+        long oldest = Math.max(1, lastSeq - buffer.length + 1);
+        if (otherEpoch || since > lastSeq || since < oldest - 1) {
+            return new CarChangePage(List.of(), epoch, lastSeq, true);
+        }
+        long from = since + 1;
+        long to = Math.min(lastSeq, from + Math.min(limit, maxBatch) - 1);
+        List<CarChange> changes = new ArrayList<>((int) Math.max(0, to - from + 1));
+        for (long seq = from; seq <= to; seq++) {
+            changes.add(buffer[slot(seq)]);
+        }
+        return new CarChangePage(changes, epoch, !changes.isEmpty() ? to : since, false);
+    }
+
+    /**
+     * Long-poll: сразу, если после since уже есть изменения или since из другой ленты,
+     * иначе при первом изменении или по таймауту с пустым списком
+     *
+     * @param since позиция epoch:seq, null - с начала ленты
+     */
+    public DeferredResult<CarChangePage> poll(String since, int limit) {
+        Long seq = since != null ? seqOf(since) : Long.valueOf(0);
+        if (seq == null) {
+            DeferredResult<CarChangePage> reset = new DeferredResult<>(pollTimeoutMs);
+            reset.setResult(page(since, limit));
+            return reset;
+        }
+        return poll(seq.longValue(), limit);
+    }
+
+    private DeferredResult<CarChangePage> poll(long since, int limit) {
+        DeferredResult<CarChangePage> result = new DeferredResult<>(pollTimeoutMs, () -> page(since, limit));
+        Waiter waiter = new Waiter(since, limit, result);
+        result.onCompletion(() -> removeWaiter(waiter));
+        CarChangePage ready;
+        synchronized (this) {
+            ready = page(since, limit);
+            if (ready.changes().isEmpty() && !ready.reset()) {
+                waiters.add(waiter);
+                return result;
+            }
+        }
+        result.setResult(ready);
+        return result;
+    }
+
+    /**
+     * SSE-подписка: сначала изменения после since из буфера, затем новые по мере появления.
+     * id события - epoch:seq, его браузер возвращает в Last-Event-ID при переподключении.
+     * Позиция из другой ленты дает событие reset
+     *
+     * @param since последняя полученная позиция epoch:seq, null - только новые изменения
+     */
+    public SseEmitter subscribe(String since) {
+        return subscribe(since, new SseEmitter(sseTimeoutMs));
+    }
+
+    SseEmitter subscribe(String since, SseEmitter emitter) {
+        Subscriber subscriber;
+        synchronized (this) {
+            Long seq = since != null ? seqOf(since) : Long.valueOf(lastSeq);
+            // seq больше последнего дает reset в page
+            subscriber = new Subscriber(emitter, subscriberQueue, seq != null ? seq : Long.MAX_VALUE);
+            subscriber.sender = Thread.ofVirtual().name("car-changes-" + subscriberCount.incrementAndGet())
+                    .unstarted(() -> send(subscriber));
+            // изменения до этого момента поток прочитает из буфера, после - из очереди
+            subscribers.add(subscriber);
+        }
+        emitter.onCompletion(() -> close(subscriber));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(e -> close(subscriber));
+        subscriber.sender.start();
+        return emitter;
+    }
+
+    public int subscribers() {
+        return subscribers.size();
+    }
+
+    @PreDestroy
+    void stop() {
+        subscribers.forEach(subscriber -> {
+            close(subscriber);
+            subscriber.emitter.complete();
+        });
+    }
+
+    private void append(List<CarChange> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        List<Waiter> ready;
+        synchronized (this) {
+            for (CarChange change : changes) {
+                lastSeq++;
+                buffer[slot(lastSeq)] = new CarChange(lastSeq, change.type(), change.id(), change.version(),
+                        change.car());
+            }
+            ready = new ArrayList<>(waiters);
+            waiters.clear();
+            for (Subscriber subscriber : subscribers) {
+                offer(subscriber, changes.size());
+            }
+        }
+        ready.forEach(waiter -> waiter.result().setResult(page(waiter.since(), waiter.limit())));
+    }
+
+    /**
+     * Кладет последние count изменений в очередь подписчика, вызывается под this
+     */
+    private void offer(Subscriber subscriber, int count) {
+        for (long seq = lastSeq - count + 1; seq <= lastSeq; seq++) {
+            if (!subscriber.queue.offer(buffer[slot(seq)])) {
+                log.warn("Change feed subscriber {} is too slow, disconnecting", subscriber.sender.getName());
+                subscriber.dropped = true;
+                close(subscriber);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Поток подписчика: изменения после since из буфера, потом из очереди
+     */
+    private void send(Subscriber subscriber) {
+        try {
+            CarChangePage page;
+            do {
+                page = page(subscriber.lastSent, maxBatch);
+                if (page.reset()) {
+                    // старые изменения не отправляются: клиент перечитывает каталог и продолжает
+                    // с текущей позиции, в том числе после переподключения с этим Last-Event-ID
+                    subscriber.emitter.send(SseEmitter.event().id(page.next()).name(RESET_EVENT).data(page.next()));
+                }
+                for (CarChange change : page.changes()) {
+                    send(subscriber, change);
+                }
+                subscriber.lastSent = page.lastSeq();
+            } while (page.changes().size() == maxBatch);
+            while (!subscriber.closed) {
+                CarChange change = subscriber.queue.poll(heartbeatMs, TimeUnit.MILLISECONDS);
+                if (change == null) {
+                    subscriber.emitter.send(SseEmitter.event().comment(HEARTBEAT_COMMENT));
+                } else if (change.seq() > subscriber.lastSent) {
+                    // более ранние уже отправлены из буфера
+                    send(subscriber, change);
+                    subscriber.lastSent = change.seq();
+                }
+            }
+        } catch (IOException | IllegalStateException e) {
+            // клиент отключился или подписка уже завершена
+            log.debug("Change feed subscriber dropped: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            // подписка закрыта
+        } finally {
+            close(subscriber);
+            if (subscriber.dropped) {
+                subscriber.emitter.complete();
+            }
+        }
+    }
+
+    private void send(Subscriber subscriber, CarChange change) throws IOException {
+        subscriber.emitter.send(SseEmitter.event()
+                .id(cursor(change.seq()))
+                .name(CHANGE_EVENT)
+                .data(change, MediaType.APPLICATION_JSON));
+    }
+
+    private void close(Subscriber subscriber) {
+        subscriber.closed = true;
+        subscribers.remove(subscriber);
+        if (subscriber.sender != Thread.currentThread()) {
+            subscriber.sender.interrupt();
+        }
+    }
+
+    private synchronized void removeWaiter(Waiter waiter) {
+        waiters.remove(waiter);
+    }
+
+    private int slot(long seq) {
+        return (int) (seq % buffer.length);
+    }
+
+    private static CarChange change(CarChange.Type type, Car car) {
+        return new CarChange(0, type, car.getId(), car.getVersion(), CarDto.from(car));
+    }
+}
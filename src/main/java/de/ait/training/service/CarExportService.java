@@ -0,0 +1,110 @@
+package de.ait.training.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import de.ait.training.model.Car;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Выгрузка всего каталога в NDJSON или CSV.
+ * Автомобили читаются одним запросом через курсор (Stream из ScrollableResults, fetch size задает,
+ * сколько строк драйвер держит в памяти), каждая записанная строка сразу отсоединяется
+ * от persistence context - память не зависит от размера таблицы.
+ * В PostgreSQL курсор с fetch size работает только внутри транзакции, поэтому метод транзакционный
+ */
+@Slf4j
+@Service
+public class CarExportService {
+
+    public enum Format {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv", "csv");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String contentType() {
+            return contentType;
+        }
+
+        public String extension() {
+            return extension;
+        }
+    }
+
+    private static final CsvSchema CSV_SCHEMA = CsvSchema.builder()
+            .addColumn("id")
+            .addColumn("color")
+            .addColumn("model")
+            .addColumn("price")
+            .addColumn("year")
+            .addColumn("engineType")
+            .addColumn("version")
+            .addColumn("updatedAt")
+            .setUseHeader(true)
+            .build();
+
+    private final EntityManager entityManager;
+    private final ObjectWriter ndjsonWriter;
+    private final ObjectWriter csvWriter;
+    private final int fetchSize;
+
+    public CarExportService(EntityManager entityManager,
+                            ObjectMapper objectMapper,
+                            @Value("${app.cars.export.fetch-size:1000}") int fetchSize) {
+        this.entityManager = entityManager;
+        // сбрасывать буфер после каждой строки не нужно - это делает ответ Tomcat по мере заполнения
+        this.ndjsonWriter = objectMapper.writer()
+                .withRootValueSeparator("\n")
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        CsvMapper csvMapper = new CsvMapper();
+        csvMapper.findAndRegisterModules();
+        this.csvWriter = csvMapper.writer(CSV_SCHEMA)
+                .without(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * @return сколько автомобилей выгружено
+     */
+    @Transactional(readOnly = true)
+    public long export(Format format, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        long exported = 0;
+        try (Stream<Car> cars = entityManager.createQuery("select c from Car c order by c.id", Car.class)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize)
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .getResultStream();
+             SequenceWriter writer = (format == Format.CSV ? csvWriter : ndjsonWriter).writeValues(out)) {
+            Iterator<Car> iterator = cars.iterator();
+            while (iterator.hasNext()) {
+                Car car = iterator.next();
+                writer.write(car);
+                entityManager.detach(car);
+                exported++;
+            }
+        }
+        log.info("Exported {} cars as {} in {} ms", exported, format, (System.nanoTime() - start) / 1_000_000);
+        return exported;
+    }
+}
@@ -0,0 +1,89 @@
+package de.ait.training.service;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.ait.training.dto.BulkImportResult;
+import de.ait.training.event.CarsImportedEvent;
+import de.ait.training.model.Car;
+import de.ait.training.repository.CarRepository;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Массовый импорт автомобилей из JSON-массива или NDJSON (один автомобиль на строку).
+ * Поток читается по одному объекту, автомобили сохраняются пачками по batchSize -
+ * каждая пачка в своей транзакции, после нее persistence context очищается,
+ * поэтому память не зависит от размера файла. INSERT внутри пачки склеиваются
+ * в JDBC batch (hibernate.jdbc.batch_size, id из последовательности cars_seq)
+ */
+@Slf4j
+@Service
+public class CarImportService {
+
+    private final CarRepository carRepository;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int batchSize;
+
+    public CarImportService(CarRepository carRepository,
+                            EntityManager entityManager,
+                            TransactionTemplate transactionTemplate,
+                            ObjectMapper objectMapper,
+                            ApplicationEventPublisher eventPublisher,
+                            @Value("${app.cars.import.batch-size:500}") int batchSize) {
+        this.carRepository = carRepository;
+        this.entityManager = entityManager;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.eventPublisher = eventPublisher;
+        this.batchSize = batchSize;
+    }
+
+    public BulkImportResult importCars(InputStream in) throws IOException {
+        long imported = 0;
+        int batches = 0;
+        // для JSON-массива итератор идет по его элементам, для NDJSON - по объектам верхнего уровня
+        try (MappingIterator<Car> cars = objectMapper.readerFor(Car.class).readValues(in)) {
+            List<Car> batch = new ArrayList<>(batchSize);
+            while (cars.hasNextValue()) {
+                Car car = cars.nextValue();
+                car.setId(null);
+                car.setVersion(null);
+                batch.add(car);
+                if (batch.size() == batchSize) {
+                    saveBatch(batch);
+                    imported += batch.size();
+                    batches++;
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                saveBatch(batch);
+                imported += batch.size();
+                batches++;
+            }
+        }
+        log.info("Imported {} cars in {} batches", imported, batches);
+        return new BulkImportResult(imported, batches);
+    }
+
+    private void saveBatch(List<Car> batch) {
+        transactionTemplate.executeWithoutResult(status -> {
+            carRepository.saveAllAndCount(batch);
+            entityManager.flush();
+            entityManager.clear();
+        });
+        eventPublisher.publishEvent(new CarsImportedEvent(batch));
+    }
+}
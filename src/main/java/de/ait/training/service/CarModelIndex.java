@@ -0,0 +1,194 @@
+package de.ait.training.service;
+
+import de.ait.training.dto.ModelSuggestion;
+import de.ait.training.model.Car;
+import de.ait.training.repository.CarRepository;
+import de.ait.training.util.ModelWords;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Префиксный индекс названий моделей для подсказок /api/cars/models/suggest.
+ * Для каждой модели в отсортированный массив кладется ключ с начала названия и с начала
+ * каждого следующего слова ("bmw x5" и "x5"), поиск - бинарный поиск и проход по диапазону
+ * ключей с этим префиксом. Массив ключей неизменяемый (copy-on-write) и перестраивается только
+ * при появлении или исчезновении модели, количество автомобилей читается из ConcurrentHashMap.
+ * Загружается из базы и обновляется по событиям CarChangedEvent / CarsImportedEvent (см. LoadableCarIndex).
+ * Включается свойством app.cars.model-index.enabled=true
+ */
+@Service
+@ConditionalOnProperty(name = "app.cars.model-index.enabled", havingValue = "true")
+public class CarModelIndex extends LoadableCarIndex<Map<Long, CarModelIndex.Entry>> {
+
+    /** id -> модель и версия, чтобы при изменении или удалении уменьшить счетчик прежней модели */
+    private Map<Long, Entry> models = new HashMap<>();
+    private volatile Map<String, Integer> counts = new ConcurrentHashMap<>();
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    /**
+     * @param keys   ключи в нижнем регистре, по возрастанию
+     * @param models модель для каждого ключа
+     * @param whole  ключ - все название модели, а не его часть с начала слова
+     */
+    private record Snapshot(String[] keys, String[] models, boolean[] whole) {
+        static final Snapshot EMPTY = new Snapshot(new String[0], new String[0], new boolean[0]);
+    }
+
+    record Entry(String model, long version) {
+        static Entry of(Car car) {
+            return new Entry(car.getModel(), car.getVersion() != null ? car.getVersion() : UNVERSIONED);
+        }
+    }
+
+    private record Key(String key, String model, boolean whole) {
+    }
+
+    private record Ranked(int rank, ModelSuggestion suggestion) {
+    }
+
+    public CarModelIndex(CarRepository carRepository) {
+        super(carRepository);
+    }
+
+    @Override
+    protected Map<Long, Entry> newState() {
+        return new HashMap<>();
+    }
+
+    @Override
+    protected void addLoaded(Map<Long, Entry> state, List<Car> chunk) {
+        chunk.forEach(car -> state.put(car.getId(), Entry.of(car)));
+    }
+
+    @Override
+    protected void publish(Map<Long, Entry> state) {
+        Map<String, Integer> loadedCounts = new ConcurrentHashMap<>();
+        state.values().forEach(entry -> loadedCounts.merge(entry.model(), 1, Integer::sum));
+        models = state;
+        counts = loadedCounts;
+        rebuild();
+    }
+
+    /**
+     * Сначала точное совпадение, потом модели, название которых начинается с prefix,
+     * потом совпадения с начала слова; внутри - по количеству автомобилей и по алфавиту
+     */
+    public List<ModelSuggestion> suggest(String prefix, int limit) {
+        String key = prefix.trim().toLowerCase(Locale.ROOT);
+        if (key.isEmpty()) {
+            return List.of();
+        }
+        Snapshot current = snapshot;
+        Map<String, Integer> currentCounts = counts;
+        String[] keys = current.keys();
+        // модель -> лучший ранг: 0 - точное совпадение, 1 - с начала названия, 2 - с начала слова
+        Map<String, Integer> ranks = new HashMap<>();
+        for (int i = lowerBound(keys, key); i < keys.length && keys[i].startsWith(key); i++) {
+            int rank = !current.whole()[i] ? 2 : keys[i].length() == key.length() ? 0 : 1;
+            ranks.merge(current.models()[i], rank, Math::min);
+        }
+        return ranks.entrySet().stream()
+                .map(entry -> new Ranked(entry.getValue(), new ModelSuggestion(entry.getKey(),
+                        currentCounts.getOrDefault(entry.getKey(), 0))))
+                .sorted(Comparator.comparingInt(Ranked::rank)
+                        .thenComparing(ranked -> ranked.suggestion().count(), Comparator.reverseOrder())
+                        .thenComparing(ranked -> ranked.suggestion().model()))
+                .limit(limit)
+                .map(Ranked::suggestion)
+                .toList();
+    }
+
+    @Override
+    public synchronized void put(Car car) {
+        String previous = model(models.put(car.getId(), Entry.of(car)));
+        if (car.getModel().equals(previous)) {
+            return;
+        }
+        boolean changed = previous != null && decrement(previous);
+        changed |= counts.merge(car.getModel(), 1, Integer::sum) == 1;
+        if (changed) {
+            rebuild();
+        }
+    }
+
+    @Override
+    public synchronized void putAll(List<Car> cars) {
+        boolean changed = false;
+        for (Car car : cars) {
+            String previous = model(models.put(car.getId(), Entry.of(car)));
+            if (car.getModel().equals(previous)) {
+                continue;
+            }
+            changed |= previous != null && decrement(previous);
+            changed |= counts.merge(car.getModel(), 1, Integer::sum) == 1;
+        }
+        if (changed) {
+            rebuild();
+        }
+    }
+
+    @Override
+    public synchronized void remove(Long id) {
+        String previous = model(models.remove(id));
+        if (previous != null && decrement(previous)) {
+            rebuild();
+        }
+    }
+
+    @Override
+    protected long version(Long id) {
+        Entry entry = models.get(id);
+        return entry == null ? ABSENT : entry.version();
+    }
+
+    private static String model(Entry entry) {
+        return entry == null ? null : entry.model();
+    }
+
+    /** @return true, если автомобилей этой модели больше нет */
+    private boolean decrement(String model) {
+        return counts.computeIfPresent(model, (key, count) -> count == 1 ? null : count - 1) == null;
+    }
+
+    private void rebuild() {
+        List<Key> keys = new ArrayList<>();
+        for (String model : counts.keySet()) {
+            String lower = model.toLowerCase(Locale.ROOT);
+            keys.add(new Key(lower, model, true));
+            for (int start : ModelWords.starts(lower)) {
+                keys.add(new Key(lower.substring(start), model, false));
+            }
+        }
+        keys.sort(Comparator.comparing(Key::key));
+        String[] sortedKeys = new String[keys.size()];
+        String[] sortedModels = new String[keys.size()];
+        boolean[] whole = new boolean[keys.size()];
+        for (int i = 0; i < keys.size(); i++) {
+            sortedKeys[i] = keys.get(i).key();
+            sortedModels[i] = keys.get(i).model();
+            whole[i] = keys.get(i).whole();
+        }
+        snapshot = new Snapshot(sortedKeys, sortedModels, whole);
+    }
+
+    private static int lowerBound(String[] keys, String key) {
+        int position = Arrays.binarySearch(keys, key);
+        if (position < 0) {
+            return -position - 1;
+        }
+        // при повторяющихся ключах - первый из них
+        while (position > 0 && keys[position - 1].equals(key)) {
+            position--;
+        }
+        return position;
+    }
+}
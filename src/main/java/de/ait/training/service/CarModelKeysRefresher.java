@@ -0,0 +1,123 @@
+package de.ait.training.service;
+
+import de.ait.training.event.CarChangedEvent;
+import de.ait.training.event.CarsImportedEvent;
+import de.ait.training.model.Car;
+import de.ait.training.repository.CarRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Держит таблицу подсказок car_model_keys в соответствии с cars: перестраивает ее одним GROUP BY при старте,
+ * дальше только меняет количества автомобилей моделей, которые добавили, удалили или переименовали
+ * на этом экземпляре (без чтения cars). Изменения за {@code app.cars.model-suggest.refresh-delay}
+ * складываются по моделям и записываются одной транзакцией, поэтому количество автомобилей в подсказках
+ * из базы отстает от каталога на эту задержку. Изменения цен модели не трогают.
+ * Если запись не удалась, изменения остаются и записываются со следующими
+ */
+@Slf4j
+@Service
+public class CarModelKeysRefresher {
+    private final CarRepository carRepository;
+    private final Duration refreshDelay;
+    private final AtomicBoolean countQueued = new AtomicBoolean();
+    // модель -> изменение количества ее автомобилей, еще не записанное в car_model_keys; защищено this
+    private Map<String, Long> pending = new HashMap<>();
+
+    public CarModelKeysRefresher(CarRepository carRepository,
+                                 @Value("${app.cars.model-suggest.refresh-delay:1s}") Duration refreshDelay) {
+        this.carRepository = carRepository;
+        this.refreshDelay = refreshDelay;
+    }
+
+    /**
+     * Полная перестройка при старте: изменения, накопленные до нее, в ней уже учтены
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void refresh() {
+        pending.clear();
+        int models = carRepository.refreshModelKeys();
+        log.debug("Model suggestions refreshed with {} models", models);
+    }
+
+    @EventListener
+    public void onCarChanged(CarChangedEvent event) {
+        String before = model(event.before());
+        String after = model(event.after());
+        if (!Objects.equals(before, after)) {
+            synchronized (this) {
+                count(before, -1);
+                count(after, 1);
+            }
+            countLater();
+        }
+    }
+
+    @EventListener
+    public void onCarsImported(CarsImportedEvent event) {
+        synchronized (this) {
+            event.cars().forEach(car -> count(model(car), 1));
+        }
+        countLater();
+    }
+
+    /**
+     * Записывает накопленные изменения. Записи идут по одной, как и перестройка
+     */
+    synchronized void countModels() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<String, Long> changes = pending;
+        pending = new HashMap<>();
+        try {
+            carRepository.countModels(changes);
+            log.debug("Model suggestions counted for {} models", changes.size());
+        } catch (RuntimeException e) {
+            changes.forEach(this::count);
+            throw e;
+        }
+    }
+
+    /**
+     * Если запись уже ждет запуска, вторая не ставится: она запишет и это изменение
+     */
+    void countLater() {
+        if (countQueued.compareAndSet(false, true)) {
+            Thread.ofPlatform().daemon(true).name("CarModelKeys-count").start(() -> {
+                try {
+                    Thread.sleep(refreshDelay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    countQueued.set(false);
+                    return;
+                }
+                countQueued.set(false);
+                try {
+                    countModels();
+                } catch (RuntimeException e) {
+                    log.error("Model suggestions count failed", e);
+                }
+            });
+        }
+    }
+
+    private void count(String model, long delta) {
+        if (model != null) {
+            pending.merge(model, delta, (a, b) -> a + b == 0 ? null : a + b);
+        }
+    }
+
+    private static String model(Car car) {
+        return car == null ? null : car.getModel();
+    }
+}
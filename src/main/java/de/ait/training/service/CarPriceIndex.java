@@ -0,0 +1,491 @@
+package de.ait.training.service;
+
+import de.ait.training.dto.CarDto;
+import de.ait.training.event.CarsBulkUpdatedEvent;
+import de.ait.training.model.Car;
+import de.ait.training.repository.CarRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * Индекс цен в памяти для эндпоинтов /api/cars/price/*.
+ * Автомобили лежат по цене (при равной цене - по id) в сегментах до 2 * SEGMENT_SIZE строк,
+ * диапазон находится бинарными поисками по сегментам и внутри сегмента и отдается как представление
+ * поверх сегментов без копирования.
+ * Опубликованные сегменты не меняются: запись копирует только затронутые сегменты (copy-on-write),
+ * прежнюю позицию автомобиля находит бинарным поиском по его старой цене из карты id -> цена,
+ * чтение идет без блокировок.
+ * Индекс обновляется по событиям CarChangedEvent / CarsImportedEvent / CarsUpdatedEvent,
+ * после изменения цен на процент (CarsBulkUpdatedEvent) перестраивается из базы в фоне (см. LoadableCarIndex).
+ * Включается свойством app.cars.price-index.enabled=true
+ */
+@Service
+@ConditionalOnProperty(name = "app.cars.price-index.enabled", havingValue = "true")
+public class CarPriceIndex extends LoadableCarIndex<CarPriceIndex.Loading> {
+    static final int SEGMENT_SIZE = 4096;
+    private static final Comparator<CarDto> BY_PRICE_AND_ID = Comparator.comparingDouble(CarDto::price)
+            .thenComparing(CarDto::id);
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    /** id -> цена и версия, меняется под блокировкой this */
+    private Map<Long, Entry> entries = new HashMap<>();
+
+    private record Entry(double price, long version) {
+        static Entry of(Car car) {
+            return new Entry(car.getPrice(), car.getVersion() != null ? car.getVersion() : UNVERSIONED);
+        }
+    }
+
+    /**
+     * Автомобили, собираемые загрузкой
+     */
+    static final class Loading {
+        private final List<CarDto> cars = new ArrayList<>();
+        private final Map<Long, Entry> entries = new HashMap<>();
+    }
+
+    public CarPriceIndex(CarRepository carRepository) {
+        super(carRepository);
+    }
+
+    @Override
+    protected Loading newState() {
+        return new Loading();
+    }
+
+    @Override
+    protected void addLoaded(Loading loading, List<Car> chunk) {
+        for (Car car : chunk) {
+            loading.cars.add(CarDto.from(car));
+            loading.entries.put(car.getId(), Entry.of(car));
+        }
+    }
+
+    @Override
+    protected void publish(Loading loading) {
+        entries = loading.entries;
+        snapshot = Snapshot.of(loading.cars.stream().sorted(BY_PRICE_AND_ID).toArray(CarDto[]::new));
+    }
+
+    public List<CarDto> findByPriceBetween(double min, double max) {
+        Snapshot current = snapshot;
+        return current.slice(current.lowerBound(min), current.upperBound(max));
+    }
+
+    public List<CarDto> findByPriceLessThanEqual(double max) {
+        Snapshot current = snapshot;
+        return current.slice(0, current.upperBound(max));
+    }
+
+    public List<CarDto> findByPriceGreaterThanEqual(double min) {
+        Snapshot current = snapshot;
+        return current.slice(current.lowerBound(min), current.size());
+    }
+
+    public int size() {
+        return snapshot.size();
+    }
+
+    @EventListener
+    @Order(CarCatalogVersions.DATA_LISTENER_ORDER)
+    public void onCarsBulkUpdated(CarsBulkUpdatedEvent event) {
+        reloadLater();
+    }
+
+    /**
+     * Добавляет или заменяет автомобиль (после postCar / putCar)
+     */
+    @Override
+    public synchronized void put(Car car) {
+        write(List.of(car), List.of());
+    }
+
+    /**
+     * Удаляет автомобиль (после deleteCar)
+     */
+    @Override
+    public synchronized void remove(Long id) {
+        write(List.of(), List.of(id));
+    }
+
+    /**
+     * Пачка автомобилей (после импорта или PATCH по id): каждый затронутый сегмент копируется один раз на пачку.
+     * Большая пачка сливается со всем индексом за один проход, а не вставляется по одному.
+     * Автомобили с теми же id, что уже есть в индексе, заменяются
+     */
+    @Override
+    public synchronized void putAll(List<Car> cars) {
+        if (cars.size() <= SEGMENT_SIZE || cars.size() <= snapshot.size() / 16) {
+            write(cars, List.of());
+            return;
+        }
+        Map<Long, CarDto> batch = new HashMap<>();
+        for (Car car : cars) {
+            batch.put(car.getId(), CarDto.from(car));
+            entries.put(car.getId(), Entry.of(car));
+        }
+        CarDto[] added = batch.values().stream().sorted(BY_PRICE_AND_ID).toArray(CarDto[]::new);
+        CarDto[] merged = new CarDto[snapshot.size() + added.length];
+        int k = 0;
+        int j = 0;
+        for (Segment segment : snapshot.segments()) {
+            for (int i = 0; i < segment.size; i++) {
+                CarDto car = segment.cars[i];
+                // прежние строки автомобилей из пачки пропускаются
+                if (batch.containsKey(car.id())) {
+                    continue;
+                }
+                while (j < added.length && BY_PRICE_AND_ID.compare(added[j], car) < 0) {
+                    merged[k++] = added[j++];
+                }
+                merged[k++] = car;
+            }
+        }
+        while (j < added.length) {
+            merged[k++] = added[j++];
+        }
+        snapshot = Snapshot.of(Arrays.copyOf(merged, k));
+    }
+
+    @Override
+    protected long version(Long id) {
+        Entry entry = entries.get(id);
+        return entry == null ? ABSENT : entry.version();
+    }
+
+    synchronized void rebuild(List<Car> cars) {
+        Loading loading = newState();
+        addLoaded(loading, cars);
+        publish(loading);
+    }
+
+    private void write(List<Car> puts, List<Long> removes) {
+        List<Segment> segments = new ArrayList<>(Arrays.asList(snapshot.segments()));
+        // сегменты, уже скопированные в этой записи: их можно менять на месте
+        Set<Segment> owned = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Long id : removes) {
+            Entry previous = entries.remove(id);
+            if (previous != null) {
+                delete(segments, owned, previous.price(), id);
+            }
+        }
+        for (Car car : puts) {
+            Entry previous = entries.put(car.getId(), Entry.of(car));
+            if (previous != null) {
+                delete(segments, owned, previous.price(), car.getId());
+            }
+            insert(segments, owned, CarDto.from(car));
+        }
+        owned.forEach(Segment::trim);
+        snapshot = Snapshot.of(segments);
+    }
+
+    private static void delete(List<Segment> segments, Set<Segment> owned, double price, long id) {
+        int index = segmentFor(segments, price, id);
+        if (index == segments.size()) {
+            return;
+        }
+        int position = segments.get(index).find(price, id);
+        if (position < 0) {
+            return;
+        }
+        Segment segment = own(segments, index, owned);
+        segment.delete(position);
+        if (segment.size == 0) {
+            segments.remove(index);
+        }
+    }
+
+    private static void insert(List<Segment> segments, Set<Segment> owned, CarDto car) {
+        if (segments.isEmpty()) {
+            Segment first = new Segment(SEGMENT_SIZE);
+            first.insert(0, car);
+            segments.add(first);
+            owned.add(first);
+            return;
+        }
+        // цена больше всех - в последний сегмент
+        int index = Math.min(segmentFor(segments, car.price(), car.id()), segments.size() - 1);
+        Segment segment = own(segments, index, owned);
+        segment.insert(-segment.find(car.price(), car.id()) - 1, car);
+        if (segment.size > 2 * SEGMENT_SIZE) {
+            Segment tail = segment.split();
+            segments.add(index + 1, tail);
+            owned.add(tail);
+        }
+    }
+
+    private static Segment own(List<Segment> segments, int index, Set<Segment> owned) {
+        Segment segment = segments.get(index);
+        if (!owned.contains(segment)) {
+            segment = segment.copy();
+            segments.set(index, segment);
+            owned.add(segment);
+        }
+        return segment;
+    }
+
+    /** первый сегмент, последняя строка которого >= (price, id), или длина, если таких нет */
+    private static int segmentFor(List<Segment> segments, double price, long id) {
+        int low = 0;
+        int high = segments.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            Segment segment = segments.get(mid);
+            if (compare(segment.prices[segment.size - 1], segment.ids[segment.size - 1], price, id) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int compare(double price, long id, double otherPrice, long otherId) {
+        int byPrice = Double.compare(price, otherPrice);
+        return byPrice != 0 ? byPrice : Long.compare(id, otherId);
+    }
+
+    /**
+     * Опубликованные сегменты и номер первой строки каждого из них
+     */
+    private record Snapshot(Segment[] segments, int[] starts, int size) {
+        static final Snapshot EMPTY = new Snapshot(new Segment[0], new int[0], 0);
+
+        /** cars уже отсортированы по цене и id */
+        static Snapshot of(CarDto[] sorted) {
+            List<Segment> segments = new ArrayList<>();
+            for (int from = 0; from < sorted.length; from += SEGMENT_SIZE) {
+                segments.add(Segment.of(Arrays.copyOfRange(sorted, from, Math.min(from + SEGMENT_SIZE, sorted.length))));
+            }
+            return of(segments);
+        }
+
+        static Snapshot of(List<Segment> segments) {
+            int[] starts = new int[segments.size()];
+            int size = 0;
+            for (int i = 0; i < segments.size(); i++) {
+                starts[i] = size;
+                size += segments.get(i).size;
+            }
+            return new Snapshot(segments.toArray(new Segment[0]), starts, size);
+        }
+
+        /** первая позиция с ценой >= price */
+        int lowerBound(double price) {
+            int low = 0;
+            int high = segments.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (segments[mid].lastPrice() < price) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low == segments.length ? size : starts[low] + segments[low].lowerBound(price);
+        }
+
+        /** первая позиция с ценой > price */
+        int upperBound(double price) {
+            int low = 0;
+            int high = segments.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (segments[mid].lastPrice() <= price) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low == segments.length ? size : starts[low] + segments[low].upperBound(price);
+        }
+
+        List<CarDto> slice(int from, int to) {
+            if (from >= to) {
+                return List.of();
+            }
+            return new Slice(this, from, to);
+        }
+
+        CarDto get(int position) {
+            int segment = Arrays.binarySearch(starts, position);
+            if (segment < 0) {
+                segment = -segment - 2;
+            }
+            return segments[segment].cars[position - starts[segment]];
+        }
+    }
+
+    /**
+     * Срез снимка [from, to) только для чтения
+     */
+    private static final class Slice extends AbstractList<CarDto> implements RandomAccess {
+        private final Snapshot snapshot;
+        private final int from;
+        private final int to;
+
+        Slice(Snapshot snapshot, int from, int to) {
+            this.snapshot = snapshot;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public CarDto get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return snapshot.get(from + index);
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+    }
+
+    /**
+     * Строки по цене и id. После публикации не меняется, запись меняет только свою копию (copy)
+     */
+    private static final class Segment {
+        private double[] prices;
+        private long[] ids;
+        private CarDto[] cars;
+        private int size;
+
+        Segment(int capacity) {
+            prices = new double[capacity];
+            ids = new long[capacity];
+            cars = new CarDto[capacity];
+        }
+
+        static Segment of(CarDto[] sorted) {
+            Segment segment = new Segment(sorted.length);
+            for (int i = 0; i < sorted.length; i++) {
+                segment.prices[i] = sorted[i].price();
+                segment.ids[i] = sorted[i].id();
+            }
+            segment.cars = sorted;
+            segment.size = sorted.length;
+            return segment;
+        }
+
+        Segment copy() {
+            Segment copy = new Segment(0);
+            copy.prices = Arrays.copyOf(prices, size + 1);
+            copy.ids = Arrays.copyOf(ids, size + 1);
+            copy.cars = Arrays.copyOf(cars, size + 1);
+            copy.size = size;
+            return copy;
+        }
+
+        double lastPrice() {
+            return prices[size - 1];
+        }
+
+        /** позиция строки (price, id), если ее нет - (-(точка вставки) - 1), как Arrays.binarySearch */
+        int find(double price, long id) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int comparison = compare(prices[mid], ids[mid], price, id);
+                if (comparison < 0) {
+                    low = mid + 1;
+                } else if (comparison > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        int lowerBound(double price) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (prices[mid] < price) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        int upperBound(double price) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (prices[mid] <= price) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        void insert(int position, CarDto car) {
+            if (size == ids.length) {
+                grow(Math.max(16, size * 2));
+            }
+            shift(position, position + 1, size - position);
+            size++;
+            prices[position] = car.price();
+            ids[position] = car.id();
+            cars[position] = car;
+        }
+
+        void delete(int position) {
+            shift(position + 1, position, size - position - 1);
+            size--;
+            cars[size] = null;
+        }
+
+        /** отрезает вторую половину строк в новый сегмент */
+        Segment split() {
+            int half = size / 2;
+            Segment tail = Segment.of(Arrays.copyOfRange(cars, half, size));
+            Arrays.fill(cars, half, size, null);
+            size = half;
+            return tail;
+        }
+
+        void trim() {
+            if (ids.length > size) {
+                grow(size);
+            }
+        }
+
+        private void shift(int from, int to, int length) {
+            System.arraycopy(prices, from, prices, to, length);
+            System.arraycopy(ids, from, ids, to, length);
+            System.arraycopy(cars, from, cars, to, length);
+        }
+
+        private void grow(int capacity) {
+            prices = Arrays.copyOf(prices, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+            cars = Arrays.copyOf(cars, capacity);
+        }
+    }
+}
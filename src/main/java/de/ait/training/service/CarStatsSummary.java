@@ -0,0 +1,230 @@
+package de.ait.training.service;
+
+import de.ait.training.dto.CarStats;
+import de.ait.training.dto.CarStatsGroupBy;
+import de.ait.training.event.CarsBulkUpdatedEvent;
+import de.ait.training.model.Car;
+import de.ait.training.repository.CarRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Сводка для /api/cars/stats в памяти, без запроса к базе.
+ * Для каждой группировки хранится по группе счетчик цен (цена -> сколько автомобилей),
+ * из него считаются min/max/avg и перцентили. Обновляется по событиям CarChangedEvent /
+ * CarsImportedEvent / CarsUpdatedEvent: автомобиль сначала убирается по id, потом добавляется заново,
+ * поэтому повторное событие не считает его дважды. После изменения цен на процент
+ * (CarsBulkUpdatedEvent) все автомобили перечитываются из базы в фоне (см. LoadableCarIndex).
+ * Включается свойством app.cars.stats.summary.enabled=true
+ */
+@Service
+@ConditionalOnProperty(name = "app.cars.stats.summary.enabled", havingValue = "true")
+public class CarStatsSummary extends LoadableCarIndex<CarStatsSummary.State> {
+
+    private State state = new State();
+
+    private record Entry(double price, long version, Map<CarStatsGroupBy, String> groups) {
+    }
+
+    public CarStatsSummary(CarRepository carRepository) {
+        super(carRepository);
+    }
+
+    @Override
+    protected State newState() {
+        return new State();
+    }
+
+    @Override
+    protected void addLoaded(State state, List<Car> chunk) {
+        chunk.forEach(state::put);
+    }
+
+    @Override
+    protected void publish(State state) {
+        this.state = state;
+    }
+
+    @EventListener
+    @Order(CarCatalogVersions.DATA_LISTENER_ORDER)
+    public void onCarsBulkUpdated(CarsBulkUpdatedEvent event) {
+        reloadLater();
+    }
+
+    /**
+     * @param groupBy группировка, null - весь каталог
+     */
+    public synchronized List<CarStats> stats(CarStatsGroupBy groupBy) {
+        if (groupBy == null) {
+            return List.of(state.total.toStats(null));
+        }
+        List<CarStats> stats = new ArrayList<>();
+        state.groups.getOrDefault(groupBy, Map.of())
+                .forEach((group, aggregate) -> stats.add(aggregate.toStats(group)));
+        return stats;
+    }
+
+    @Override
+    public synchronized void put(Car car) {
+        state.put(car);
+    }
+
+    @Override
+    public synchronized void putAll(List<Car> cars) {
+        cars.forEach(state::put);
+    }
+
+    @Override
+    public synchronized void remove(Long id) {
+        state.remove(id);
+    }
+
+    @Override
+    protected long version(Long id) {
+        Entry entry = state.cars.get(id);
+        return entry == null ? ABSENT : entry.version();
+    }
+
+    /**
+     * Счетчики всего каталога и групп
+     */
+    static final class State {
+        private static final Comparator<String> GROUP_ORDER = Comparator.nullsLast(Comparator.naturalOrder());
+        /** id -> цена, версия и значения групп, с которыми автомобиль учтен */
+        private final Map<Long, Entry> cars = new HashMap<>();
+        private final Aggregate total = new Aggregate();
+        /** группы отсортированы так, как их отдает stats */
+        private final Map<CarStatsGroupBy, Map<String, Aggregate>> groups = new EnumMap<>(CarStatsGroupBy.class);
+
+        void put(Car car) {
+            remove(car.getId());
+            Map<CarStatsGroupBy, String> values = new EnumMap<>(CarStatsGroupBy.class);
+            for (CarStatsGroupBy groupBy : CarStatsGroupBy.values()) {
+                String group = groupBy.value(car);
+                values.put(groupBy, group);
+                groups.computeIfAbsent(groupBy, key -> new TreeMap<>(GROUP_ORDER))
+                        .computeIfAbsent(group, key -> new Aggregate())
+                        .add(car.getPrice());
+            }
+            total.add(car.getPrice());
+            cars.put(car.getId(), new Entry(car.getPrice(),
+                    car.getVersion() != null ? car.getVersion() : UNVERSIONED, values));
+        }
+
+        void remove(Long id) {
+            Entry entry = cars.remove(id);
+            if (entry == null) {
+                return;
+            }
+            entry.groups().forEach((groupBy, group) -> {
+                Map<String, Aggregate> byGroup = groups.get(groupBy);
+                Aggregate aggregate = byGroup.get(group);
+                aggregate.remove(entry.price());
+                if (aggregate.count == 0) {
+                    byGroup.remove(group);
+                }
+            });
+            total.remove(entry.price());
+        }
+    }
+
+    /**
+     * Цены одной группы: отсортированный счетчик, сумма и количество.
+     * Посчитанная статистика хранится до следующего изменения группы: запрос статистики под блокировкой
+     * пересчитывает только группы, изменившиеся с прошлого запроса
+     */
+    private static final class Aggregate {
+        private static final double[] PERCENTILES = {0.5, 0.9, 0.99};
+        private final TreeMap<Double, Integer> prices = new TreeMap<>();
+        private long count;
+        private double sum;
+        private CarStats stats;
+
+        void add(double price) {
+            prices.merge(price, 1, Integer::sum);
+            count++;
+            sum += price;
+            stats = null;
+        }
+
+        void remove(double price) {
+            prices.computeIfPresent(price, (key, n) -> n == 1 ? null : n - 1);
+            count--;
+            sum -= price;
+            stats = null;
+        }
+
+        CarStats toStats(String group) {
+            if (stats == null) {
+                stats = compute(group);
+            }
+            return stats;
+        }
+
+        private CarStats compute(String group) {
+            if (count == 0) {
+                return new CarStats(group, 0, null, null, null, null, null, null);
+            }
+            double[] percentiles = percentiles();
+            return new CarStats(group, count, prices.firstKey(), prices.lastKey(), sum / count,
+                    percentiles[0], percentiles[1], percentiles[2]);
+        }
+
+        /**
+         * Как percentile_cont: позиция p * (count - 1) в отсортированных ценах, между соседями - линейно.
+         * Цены на всех нужных позициях берутся за один проход по счетчику
+         */
+        private double[] percentiles() {
+            long[] indexes = new long[PERCENTILES.length * 2];
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                long lower = (long) Math.floor(PERCENTILES[i] * (count - 1));
+                indexes[2 * i] = lower;
+                indexes[2 * i + 1] = Math.min(lower + 1, count - 1);
+            }
+            long[] sorted = indexes.clone();
+            Arrays.sort(sorted);
+            double[] at = pricesAt(sorted);
+            double[] percentiles = new double[PERCENTILES.length];
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                double position = PERCENTILES[i] * (count - 1);
+                double lowerPrice = at[Arrays.binarySearch(sorted, indexes[2 * i])];
+                double upperPrice = at[Arrays.binarySearch(sorted, indexes[2 * i + 1])];
+                percentiles[i] = lowerPrice + (upperPrice - lowerPrice) * (position - indexes[2 * i]);
+            }
+            return percentiles;
+        }
+
+        /**
+         * @param indexes позиции в отсортированных ценах по возрастанию
+         */
+        private double[] pricesAt(long[] indexes) {
+            double[] at = new double[indexes.length];
+            int next = 0;
+            long seen = 0;
+            for (Map.Entry<Double, Integer> entry : prices.entrySet()) {
+                seen += entry.getValue();
+                while (next < indexes.length && indexes[next] < seen) {
+                    at[next++] = entry.getKey();
+                }
+                if (next == indexes.length) {
+                    return at;
+                }
+            }
+            while (next < indexes.length) {
+                at[next++] = prices.lastKey();
+            }
+            return at;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package de.ait.training.service;
+
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.context.ITemplateContext;
+import org.thymeleaf.dialect.AbstractDialect;
+import org.thymeleaf.dialect.IPreProcessorDialect;
+import org.thymeleaf.engine.AbstractTemplateHandler;
+import org.thymeleaf.exceptions.TemplateProcessingException;
+import org.thymeleaf.model.IAttribute;
+import org.thymeleaf.model.IComment;
+import org.thymeleaf.model.IOpenElementTag;
+import org.thymeleaf.model.IProcessableElementTag;
+import org.thymeleaf.model.IStandaloneElementTag;
+import org.thymeleaf.model.IText;
+import org.thymeleaf.preprocessor.IPreProcessor;
+import org.thymeleaf.preprocessor.PreProcessor;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.unbescape.html.HtmlEscape;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Шаблон письма, один раз отрендеренный Thymeleaf и разрезанный на статические куски HTML
+ * и места подстановки переменных. Письмо собирается склейкой кусков с экранированными
+ * значениями, без повторного рендеринга шаблона.
+ * Подходит только для шаблонов, где переменные выводятся как текст: compile сначала проверяет
+ * разобранный шаблон - единственный атрибут th: в нем должен быть th:text="${имя}", без инлайнинга
+ * [[...]] в тексте. Любой другой th: (th:if, th:each, th:href, th:utext, ...) делает вывод зависимым
+ * от значений, и такой шаблон рендерится Thymeleaf на каждое письмо.
+ * Потом шаблон рендерится с двумя разными наборами маркеров, результат сверяется с обычным рендерингом
+ */
+record CompiledEmailTemplate(String[] segments, String[] variables) {
+    // за маркером идут спецсимволы: в выводе они должны быть экранированы как HTML-текст,
+    // иначе переменная попала в URL, выражение и т.п.
+    private static final String MARKER_SUFFIX = "<&\"' ?#/";
+    private static final String ESCAPED_MARKER_SUFFIX = HtmlEscape.escapeHtml4Xml(MARKER_SUFFIX);
+    private static final String SAMPLE_VALUE = "Sample <&> \"value\"";
+
+    private static final Pattern PLAIN_VARIABLE = Pattern.compile("\\$\\{\\s*([A-Za-z_][A-Za-z0-9_]*)\\s*}");
+    private static final String INSPECTION_VARIABLE = "compiledEmailTemplateInspection";
+
+    String render(Map<String, Object> values) {
+        StringBuilder html = new StringBuilder(estimatedLength());
+        for (int i = 0; i < variables.length; i++) {
+            html.append(segments[i]);
+            Object value = values.get(variables[i]);
+            if (value != null) {
+                // th:text в HTML-режиме экранирует так же
+                html.append(HtmlEscape.escapeHtml4Xml(value.toString()));
+            }
+        }
+        return html.append(segments[variables.length]).toString();
+    }
+
+    private int estimatedLength() {
+        int length = 0;
+        for (String segment : segments) {
+            length += segment.length();
+        }
+        return length + variables.length * 32;
+    }
+
+    /**
+     * Значения переменных в шаблон не подставляются, поэтому результат годится для любых писем
+     * по этому шаблону, с любым набором переменных
+     *
+     * @return пусто, если шаблон нельзя собрать из кусков (переменные в условиях, циклах, URL,
+     * выражениях и т.п.)
+     */
+    static Optional<CompiledEmailTemplate> compile(TemplateEngine templateEngine, String template) {
+        try {
+            Optional<Set<String>> names = textVariables(templateEngine, template);
+            if (names.isEmpty()) {
+                return Optional.empty();
+            }
+            CompiledEmailTemplate compiled = compileWithMarkers(templateEngine, template, names.get());
+            CompiledEmailTemplate check = compileWithMarkers(templateEngine, template, names.get());
+            Map<String, Object> sample = new HashMap<>();
+            names.get().forEach(name -> sample.put(name, SAMPLE_VALUE));
+            if (compiled == null || check == null
+                    || !Arrays.equals(compiled.segments, check.segments)
+                    || !Arrays.equals(compiled.variables, check.variables)
+                    || !compiled.render(sample).equals(process(templateEngine, template, sample))) {
+                return Optional.empty();
+            }
+            return Optional.of(compiled);
+        } catch (TemplateProcessingException e) {
+            return Optional.empty();
+        }
+    }
+
+    static String process(TemplateEngine templateEngine, String template, Map<String, Object> variables) {
+        Context context = new Context();
+        context.setVariables(variables);
+        return templateEngine.process(template, context);
+    }
+
+    /**
+     * Разбирает шаблон отдельным движком с теми же resolver-ами и проверяет все теги до обработки
+     *
+     * @return имена переменных из th:text или пусто, если в шаблоне есть другие th: или инлайнинг
+     */
+    private static Optional<Set<String>> textVariables(TemplateEngine templateEngine, String template) {
+        SpringTemplateEngine inspector = new SpringTemplateEngine();
+        inspector.setTemplateResolvers(templateEngine.getTemplateResolvers());
+        inspector.addDialect(new InspectionDialect());
+        Inspection inspection = new Inspection();
+        Context context = new Context();
+        context.setVariable(INSPECTION_VARIABLE, inspection);
+        inspector.process(template, context);
+        return inspection.textOnly ? Optional.of(inspection.variables) : Optional.empty();
+    }
+
+    /**
+     * Рендерит шаблон, подставив вместо каждой переменной уникальный маркер из букв и цифр
+     * и MARKER_SUFFIX, и режет результат по маркерам
+     */
+    private static CompiledEmailTemplate compileWithMarkers(TemplateEngine templateEngine, String template,
+                                                            Set<String> variableNames) {
+        String prefix = "tplvar" + UUID.randomUUID().toString().replace("-", "");
+        Map<String, Object> markers = new HashMap<>();
+        Map<String, String> names = new HashMap<>();
+        int index = 0;
+        for (String name : variableNames) {
+            String marker = prefix + "x" + index++ + "x";
+            markers.put(name, marker + MARKER_SUFFIX);
+            names.put(marker, name);
+        }
+        String html = process(templateEngine, template, markers);
+
+        List<String> segments = new ArrayList<>();
+        List<String> variables = new ArrayList<>();
+        int from = 0;
+        int found = html.indexOf(prefix);
+        while (found >= 0) {
+            int end = html.indexOf('x', html.indexOf('x', found + prefix.length()) + 1) + 1;
+            String name = names.get(html.substring(found, end));
+            if (name == null || !html.startsWith(ESCAPED_MARKER_SUFFIX, end)) {
+                return null;
+            }
+            segments.add(html.substring(from, found));
+            variables.add(name);
+            from = end + ESCAPED_MARKER_SUFFIX.length();
+            found = html.indexOf(prefix, from);
+        }
+        segments.add(html.substring(from));
+        return new CompiledEmailTemplate(segments.toArray(String[]::new), variables.toArray(String[]::new));
+    }
+
+    /**
+     * Результат проверки разобранного шаблона
+     */
+    private static final class Inspection {
+        private final Set<String> variables = new LinkedHashSet<>();
+        private boolean textOnly = true;
+    }
+
+    private static final class InspectionDialect extends AbstractDialect implements IPreProcessorDialect {
+
+        InspectionDialect() {
+            super("CompiledEmailTemplateInspection");
+        }
+
+        @Override
+        public int getDialectPreProcessorPrecedence() {
+            return 0;
+        }
+
+        @Override
+        public Set<IPreProcessor> getPreProcessors() {
+            return Set.of(new PreProcessor(TemplateMode.HTML, InspectionHandler.class, 0));
+        }
+    }
+
+    /**
+     * Видит каждое событие разобранного шаблона до процессоров Thymeleaf
+     */
+    public static final class InspectionHandler extends AbstractTemplateHandler {
+        private Inspection inspection = new Inspection();
+
+        @Override
+        public void setContext(ITemplateContext context) {
+            super.setContext(context);
+            if (context.getVariable(INSPECTION_VARIABLE) instanceof Inspection current) {
+                inspection = current;
+            }
+        }
+
+        @Override
+        public void handleOpenElement(IOpenElementTag tag) {
+            inspect(tag);
+            super.handleOpenElement(tag);
+        }
+
+        @Override
+        public void handleStandaloneElement(IStandaloneElementTag tag) {
+            inspect(tag);
+            super.handleStandaloneElement(tag);
+        }
+
+        @Override
+        public void handleText(IText text) {
+            inspectInlining(text.getText());
+            super.handleText(text);
+        }
+
+        @Override
+        public void handleComment(IComment comment) {
+            inspectInlining(comment.getContent());
+            super.handleComment(comment);
+        }
+
+        private void inspect(IProcessableElementTag tag) {
+            if (isThymeleaf(tag.getElementCompleteName())) {
+                // th:block и т.п.
+                inspection.textOnly = false;
+            }
+            for (IAttribute attribute : tag.getAllAttributes()) {
+                String name = attribute.getAttributeCompleteName();
+                if (!isThymeleaf(name)) {
+                    continue;
+                }
+                Matcher variable = PLAIN_VARIABLE.matcher(attribute.getValue() != null ? attribute.getValue().trim() : "");
+                if ((name.equals("th:text") || name.equals("data-th-text")) && variable.matches()) {
+                    inspection.variables.add(variable.group(1));
+                } else {
+                    inspection.textOnly = false;
+                }
+            }
+        }
+
+        private void inspectInlining(CharSequence text) {
+            String value = text.toString();
+            if (value.contains("[[") || value.contains("[(")) {
+                inspection.textOnly = false;
+            }
+        }
+
+        private static boolean isThymeleaf(String name) {
+            return name.startsWith("th:") || name.startsWith("data-th-");
+        }
+    }
+}
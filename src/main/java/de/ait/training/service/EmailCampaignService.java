@@ -0,0 +1,378 @@
+package de.ait.training.service;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import de.ait.training.dto.CampaignRecipient;
+import de.ait.training.dto.CampaignRequest;
+import de.ait.training.dto.CampaignResult;
+import de.ait.training.dto.CampaignResult.RecipientStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.Address;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Pattern;
+
+/**
+ * Массовая рассылка одного шаблона в фоне: start ставит рассылку в очередь и сразу возвращает ее id,
+ * состояние и статус каждого получателя - status(id).
+ * Получатели делятся на пачки по batchSize, пачки всех рассылок берут connections рабочих потоков.
+ * У каждого потока свое SMTP-соединение (Transport), открытое один раз: подключение и STARTTLS
+ * не повторяются ни на письмо, ни на пачку. Перед пачкой соединение проверяется (NOOP),
+ * если сервер его закрыл или письмо не ушло из-за обрыва - поток подключается заново
+ * и повторяет письмо один раз.
+ * Одновременно идет не больше maxJobs рассылок, из завершенных хранятся последние retainedJobs
+ */
+@Slf4j
+@Service
+public class EmailCampaignService {
+    private static final Pattern TEMPLATE_NAME = Pattern.compile("email/[A-Za-z0-9_-]+");
+    private static final String EMAIL_COLUMN = "email";
+
+    private final EmailService emailService;
+    private final JavaMailSenderImpl mailSender;
+    private final ObjectMapper objectMapper;
+    private final CsvMapper csvMapper = new CsvMapper();
+    private final int batchSize;
+    private final int maxRecipients;
+    private final int maxJobs;
+    private final int retainedJobs;
+
+    private final BlockingQueue<Batch> batches = new LinkedBlockingQueue<>();
+    private final List<Thread> workers = new ArrayList<>();
+    // в порядке запуска, защищены this
+    private final Map<String, Job> jobs = new LinkedHashMap<>();
+    private volatile boolean stopped;
+
+    private final Counter sent;
+    private final Counter failed;
+
+    /**
+     * Рассылка: получатели и их статусы, статусы пишут рабочие потоки
+     */
+    private static final class Job {
+        private final String id = UUID.randomUUID().toString();
+        private final CampaignRequest request;
+        private final List<CampaignRecipient> recipients;
+        private final AtomicReferenceArray<RecipientStatus> statuses;
+        private final AtomicInteger sent = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+
+        private Job(CampaignRequest request, List<CampaignRecipient> recipients) {
+            this.request = request;
+            this.recipients = recipients;
+            this.statuses = new AtomicReferenceArray<>(recipients.size());
+        }
+
+        boolean done() {
+            return sent.get() + failed.get() == recipients.size();
+        }
+
+        CampaignResult result(boolean withRecipients) {
+            List<RecipientStatus> list = null;
+            if (withRecipients) {
+                list = new ArrayList<>(recipients.size());
+                for (int i = 0; i < recipients.size(); i++) {
+                    RecipientStatus status = statuses.get(i);
+                    list.add(status != null ? status : RecipientStatus.pending(recipients.get(i).email()));
+                }
+            }
+            return new CampaignResult(id, recipients.size(), sent.get(), failed.get(), done(), list);
+        }
+    }
+
+    private record Batch(Job job, int from, int to) {
+    }
+
+    public EmailCampaignService(EmailService emailService,
+                                JavaMailSenderImpl mailSender,
+                                ObjectMapper objectMapper,
+                                MeterRegistry meterRegistry,
+                                @Value("${app.mail.campaign.connections:4}") int connections,
+                                @Value("${app.mail.campaign.batch-size:100}") int batchSize,
+                                @Value("${app.mail.campaign.max-recipients:50000}") int maxRecipients,
+                                @Value("${app.mail.campaign.max-jobs:10}") int maxJobs,
+                                @Value("${app.mail.campaign.retained-jobs:20}") int retainedJobs,
+                                @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.emailService = emailService;
+        this.mailSender = mailSender;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+        this.maxRecipients = maxRecipients;
+        this.maxJobs = maxJobs;
+        this.retainedJobs = retainedJobs;
+        this.sent = meterRegistry.counter("mail.campaign.sent");
+        this.failed = meterRegistry.counter("mail.campaign.failed");
+        Thread.Builder builder = virtualThreads
+                ? Thread.ofVirtual().name("mail-campaign-", 0)
+                : Thread.ofPlatform().daemon(true).name("mail-campaign-", 0);
+        for (int i = 0; i < connections; i++) {
+            workers.add(builder.start(this::work));
+        }
+    }
+
+    /**
+     * Останавливает рабочие потоки и закрывает их соединения, необработанные получатели - FAILED
+     */
+    @PreDestroy
+    void stop() {
+        stopped = true;
+        workers.forEach(Thread::interrupt);
+        for (Thread worker : workers) {
+            try {
+                worker.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        List<Batch> left = new ArrayList<>();
+        batches.drainTo(left);
+        for (Batch batch : left) {
+            for (int i = batch.from(); i < batch.to(); i++) {
+                fail(batch.job(), i, "not processed");
+            }
+        }
+    }
+
+    /**
+     * Ставит рассылку в очередь и сразу возвращает ее состояние (без статусов получателей)
+     *
+     * @throws IllegalArgumentException если шаблон не из email/ или получателей больше maxRecipients
+     * @throws IllegalStateException    если уже идут maxJobs рассылок или сервис остановлен
+     */
+    public CampaignResult start(CampaignRequest request) {
+        if (request.template() == null || !TEMPLATE_NAME.matcher(request.template()).matches()) {
+            throw new IllegalArgumentException("Unknown template " + request.template());
+        }
+        List<CampaignRecipient> recipients = request.recipients() != null ? request.recipients() : List.of();
+        if (recipients.size() > maxRecipients) {
+            throw new IllegalArgumentException("Too many recipients: " + recipients.size() + ", max " + maxRecipients);
+        }
+
+        Job job = new Job(request, recipients);
+        synchronized (this) {
+            if (stopped) {
+                throw new IllegalStateException("Campaigns are stopped");
+            }
+            long running = jobs.values().stream().filter(j -> !j.done()).count();
+            if (running >= maxJobs) {
+                throw new IllegalStateException("Too many running campaigns: " + running);
+            }
+            removeFinished();
+            jobs.put(job.id, job);
+        }
+        for (int from = 0; from < recipients.size(); from += batchSize) {
+            batches.add(new Batch(job, from, Math.min(from + batchSize, recipients.size())));
+        }
+        log.info("Campaign {} with template {} started for {} recipients", job.id, request.template(),
+                recipients.size());
+        return job.result(false);
+    }
+
+    /**
+     * @return состояние рассылки со статусом каждого получателя, пусто - рассылки нет или она уже забыта
+     */
+    public synchronized Optional<CampaignResult> status(String id) {
+        return Optional.ofNullable(jobs.get(id)).map(job -> job.result(true));
+    }
+
+    /**
+     * Читает получателей из CSV с заголовком или NDJSON: колонка/поле email - адрес,
+     * остальные - переменные шаблона
+     */
+    public List<CampaignRecipient> readRecipients(InputStream in, boolean csv) throws IOException {
+        List<CampaignRecipient> recipients = new ArrayList<>();
+        try (MappingIterator<Map<String, Object>> rows = csv
+                ? csvMapper.readerForMapOf(Object.class).with(CsvSchema.emptySchema().withHeader()).readValues(in)
+                : objectMapper.readerForMapOf(Object.class).readValues(in)) {
+            while (rows.hasNextValue()) {
+                Map<String, Object> variables = new HashMap<>(rows.nextValue());
+                Object email = variables.remove(EMAIL_COLUMN);
+                recipients.add(new CampaignRecipient(email != null ? email.toString() : null, variables));
+                if (recipients.size() > maxRecipients) {
+                    throw new IllegalArgumentException("Too many recipients, max " + maxRecipients);
+                }
+            }
+        }
+        return recipients;
+    }
+
+    /** завершенные рассылки сверх retainedJobs, самые старые первыми; вызывается под блокировкой this */
+    private void removeFinished() {
+        long finished = jobs.values().stream().filter(Job::done).count();
+        Iterator<Job> iterator = jobs.values().iterator();
+        while (finished >= retainedJobs && iterator.hasNext()) {
+            if (iterator.next().done()) {
+                iterator.remove();
+                finished--;
+            }
+        }
+    }
+
+    private void work() {
+        Transport transport = null;
+        try {
+            while (!stopped) {
+                Batch batch = batches.take();
+                try {
+                    transport = sendBatch(batch, transport);
+                } catch (RuntimeException e) {
+                    log.error("Campaign {} batch failed", batch.job().id, e);
+                    for (int i = batch.from(); i < batch.to(); i++) {
+                        fail(batch.job(), i, e.getMessage());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            close(transport);
+        }
+    }
+
+    /**
+     * Рендерит и отправляет письма пачки через соединение потока
+     *
+     * @return соединение для следующей пачки
+     */
+    private Transport sendBatch(Batch batch, Transport transport) {
+        Job job = batch.job();
+        List<MimeMessage> messages = new ArrayList<>(batch.to() - batch.from());
+        List<Integer> positions = new ArrayList<>(batch.to() - batch.from());
+        for (int i = batch.from(); i < batch.to(); i++) {
+            CampaignRecipient recipient = job.recipients.get(i);
+            try {
+                messages.add(emailService.buildMessage(recipient.email(), job.request.subject(),
+                        job.request.template(), variables(job.request, recipient)));
+                positions.add(i);
+            } catch (Exception e) {
+                fail(job, i, e);
+            }
+        }
+        if (messages.isEmpty()) {
+            return transport;
+        }
+
+        // сервер мог закрыть соединение, пока поток ждал пачку
+        if (transport != null && !transport.isConnected()) {
+            close(transport);
+            transport = null;
+        }
+        for (int k = 0; k < messages.size(); k++) {
+            int position = positions.get(k);
+            try {
+                if (transport == null) {
+                    transport = connect();
+                }
+                send(transport, messages.get(k));
+            } catch (MessagingException e) {
+                if (transport == null || transport.isConnected()) {
+                    // не подключились или сервер отклонил письмо, соединение живо
+                    fail(job, position, e);
+                    continue;
+                }
+                close(transport);
+                transport = null;
+                try {
+                    transport = connect();
+                    send(transport, messages.get(k));
+                } catch (MessagingException retry) {
+                    fail(job, position, retry);
+                    continue;
+                }
+            }
+            job.statuses.set(position, RecipientStatus.sent(job.recipients.get(position).email()));
+            job.sent.incrementAndGet();
+            sent.increment();
+        }
+        return transport;
+    }
+
+    /**
+     * Подключается так же, как JavaMailSenderImpl перед каждой отправкой
+     */
+    private Transport connect() throws MessagingException {
+        String protocol = mailSender.getProtocol();
+        if (protocol == null) {
+            protocol = mailSender.getSession().getProperty("mail.transport.protocol");
+        }
+        Transport transport = mailSender.getSession()
+                .getTransport(protocol != null ? protocol : JavaMailSenderImpl.DEFAULT_PROTOCOL);
+        String username = mailSender.getUsername();
+        String password = mailSender.getPassword();
+        transport.connect(mailSender.getHost(), mailSender.getPort(),
+                username != null && !username.isEmpty() ? username : null,
+                password != null && !password.isEmpty() ? password : null);
+        return transport;
+    }
+
+    /**
+     * Как JavaMailSenderImpl.doSend, но через уже открытое соединение
+     */
+    private static void send(Transport transport, MimeMessage message) throws MessagingException {
+        if (message.getSentDate() == null) {
+            message.setSentDate(new Date());
+        }
+        message.saveChanges();
+        Address[] addresses = message.getAllRecipients();
+        transport.sendMessage(message, addresses != null ? addresses : new Address[0]);
+    }
+
+    private static void close(Transport transport) {
+        if (transport == null) {
+            return;
+        }
+        try {
+            transport.close();
+        } catch (MessagingException e) {
+            log.debug("Campaign SMTP connection not closed cleanly: {}", e.getMessage());
+        }
+    }
+
+    private void fail(Job job, int position, Exception e) {
+        log.warn("Campaign mail to {} failed: {}", job.recipients.get(position).email(), e.getMessage());
+        fail(job, position, e.getMessage());
+    }
+
+    private void fail(Job job, int position, String error) {
+        job.statuses.set(position, RecipientStatus.failed(job.recipients.get(position).email(), error));
+        job.failed.incrementAndGet();
+        failed.increment();
+    }
+
+    private static Map<String, Object> variables(CampaignRequest request, CampaignRecipient recipient) {
+        Map<String, Object> variables = new HashMap<>();
+        if (request.variables() != null) {
+            variables.putAll(request.variables());
+        }
+        if (recipient.variables() != null) {
+            variables.putAll(recipient.variables());
+        }
+        return variables;
+    }
+}
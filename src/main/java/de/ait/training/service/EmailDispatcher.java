@@ -0,0 +1,231 @@
+package de.ait.training.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailSendException;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Асинхронная отправка писем: ограниченная очередь и пул рабочих потоков.
+ * Запрос только кладет письмо в очередь, SMTP выполняется в рабочем потоке.
+ * Рабочие потоки виртуальные, если включен spring.threads.virtual.enabled.
+ * Если очередь полна, dispatch возвращает false - вызывающий код отвечает 503 (backpressure).
+ * MailSendException повторяется с экспоненциальной задержкой.
+ * При остановке новые письма не принимаются, очередь дорабатывается в течение shutdown-timeout-ms,
+ * неотправленные письма (и прерванная повторная попытка) логируются и считаются в mail.failed.
+ * Метрики: mail.queue.depth, mail.dispatch.latency (от постановки в очередь до отправки),
+ * mail.send.duration, mail.sent, mail.failed, mail.retried, mail.rejected
+ */
+@Slf4j
+@Service
+public class EmailDispatcher {
+
+    private record EmailTask(String to, String subject, String template, Map<String, Object> variables,
+                             long enqueuedAt) {
+    }
+
+    private final EmailService emailService;
+    private final boolean enabled;
+    private final int workers;
+    private final boolean virtualThreads;
+    private final long offerTimeoutMs;
+    private final int maxAttempts;
+    private final long initialBackoffMs;
+    private final long shutdownTimeoutMs;
+
+    private final BlockingQueue<EmailTask> queue;
+    private final List<Thread> workerThreads = new ArrayList<>();
+    private volatile boolean running;
+    private volatile boolean stopped;
+    // очередь уже вычищена stop(): письмо, положенное позже, никто не отправит и не посчитает
+    private volatile boolean drained;
+
+    private final Timer dispatchLatency;
+    private final Timer sendDuration;
+    private final Counter sent;
+    private final Counter failed;
+    private final Counter retried;
+    private final Counter rejected;
+
+    public EmailDispatcher(EmailService emailService,
+                           MeterRegistry meterRegistry,
+                           @Value("${app.mail.async.enabled:false}") boolean enabled,
+                           @Value("${app.mail.async.queue-capacity:1000}") int queueCapacity,
+                           @Value("${app.mail.async.workers:4}") int workers,
+                           @Value("${app.mail.async.offer-timeout-ms:50}") long offerTimeoutMs,
+                           @Value("${app.mail.async.max-attempts:3}") int maxAttempts,
+                           @Value("${app.mail.async.initial-backoff-ms:500}") long initialBackoffMs,
+                           @Value("${app.mail.async.shutdown-timeout-ms:5000}") long shutdownTimeoutMs,
+                           @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.emailService = emailService;
+        this.enabled = enabled;
+        this.workers = workers;
+        this.offerTimeoutMs = offerTimeoutMs;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMs = initialBackoffMs;
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+        this.virtualThreads = virtualThreads;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        Gauge.builder("mail.queue.depth", queue, BlockingQueue::size)
+                .description("Emails waiting in the dispatch queue")
+                .register(meterRegistry);
+        this.dispatchLatency = Timer.builder("mail.dispatch.latency")
+                .description("Time from enqueue to successful send")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.sendDuration = Timer.builder("mail.send.duration")
+                .description("Duration of one SMTP send attempt")
+                .register(meterRegistry);
+        this.sent = meterRegistry.counter("mail.sent");
+        this.failed = meterRegistry.counter("mail.failed");
+        this.retried = meterRegistry.counter("mail.retried");
+        this.rejected = meterRegistry.counter("mail.rejected");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        // в режиме виртуальных потоков ожидание SMTP не занимает поток платформы
+        Thread.Builder builder = virtualThreads
+                ? Thread.ofVirtual().name("mail-worker-", 0)
+                : Thread.ofPlatform().daemon(true).name("mail-worker-", 0);
+        for (int i = 0; i < workers; i++) {
+            workerThreads.add(builder.start(this::work));
+        }
+        log.info("Email dispatcher started with {} {} workers", workers, virtualThreads ? "virtual" : "platform");
+    }
+
+    @PreDestroy
+    void stop() {
+        stopped = true;
+        running = false;
+        // рабочие потоки разбирают оставшуюся очередь, пока не выйдет время
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shutdownTimeoutMs);
+        try {
+            for (Thread worker : workerThreads) {
+                long left = deadline - System.nanoTime();
+                if (left > 0) {
+                    worker.join(TimeUnit.NANOSECONDS.toMillis(left) + 1);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workerThreads.forEach(Thread::interrupt);
+        drained = true;
+        List<EmailTask> unsent = new ArrayList<>();
+        queue.drainTo(unsent);
+        for (EmailTask task : unsent) {
+            log.error("Email to {} ({}) not sent, dispatcher stopped", task.to(), task.subject());
+            failed.increment();
+        }
+        if (!unsent.isEmpty()) {
+            log.warn("Email dispatcher stopped with {} emails in queue", unsent.size());
+        }
+    }
+
+    /**
+     * Ставит письмо в очередь
+     *
+     * @return false, если очередь заполнена и письмо не принято
+     */
+    public boolean dispatch(String to, String subject, String template, Map<String, Object> variables) {
+        if (stopped) {
+            rejected.increment();
+            log.warn("Email dispatcher is stopped, mail to {} rejected", to);
+            return false;
+        }
+        EmailTask task = new EmailTask(to, subject, template, variables, System.nanoTime());
+        try {
+            if (queue.offer(task, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                // stop() мог вычистить очередь между проверкой stopped и offer: письмо забираем обратно.
+                // Если его уже нет, его взял рабочий поток или посчитал stop()
+                if (drained && queue.remove(task)) {
+                    log.error("Email to {} ({}) not sent, dispatcher stopped", to, subject);
+                    failed.increment();
+                    return false;
+                }
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        rejected.increment();
+        log.warn("Email queue is full, mail to {} rejected", to);
+        return false;
+    }
+
+    public int queueDepth() {
+        return queue.size();
+    }
+
+    private void work() {
+        // после stop() поток дорабатывает очередь и выходит, когда она пуста
+        while (running || !queue.isEmpty()) {
+            try {
+                EmailTask task = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (task != null) {
+                    send(task);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void send(EmailTask task) throws InterruptedException {
+        long backoff = initialBackoffMs;
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            long start = System.nanoTime();
+            try {
+                emailService.deliver(task.to(), task.subject(), task.template(), task.variables());
+                sendDuration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                dispatchLatency.record(System.nanoTime() - task.enqueuedAt(), TimeUnit.NANOSECONDS);
+                sent.increment();
+                return;
+            } catch (MailSendException e) {
+                sendDuration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                if (attempt == maxAttempts) {
+                    log.error("Email to {} failed after {} attempts", task.to(), attempt, e);
+                    break;
+                }
+                log.warn("Email to {} failed (attempt {}), retry in {} ms", task.to(), attempt, backoff);
+                retried.increment();
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    log.error("Email to {} not sent, dispatcher stopped before retry", task.to());
+                    failed.increment();
+                    throw interrupted;
+                }
+                backoff *= 2;
+            } catch (Exception e) {
+                log.error("Exception while sending email to {}", task.to(), e);
+                break;
+            }
+        }
+        failed.increment();
+    }
+}
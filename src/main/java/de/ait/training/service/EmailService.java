@@ -1,11 +1,17 @@
 package de.ait.training.service;
 
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
 import lombok.RequiredArgsConstructor;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.mail.MailException;
 import org.springframework.mail.MailSendException;
 import org.springframework.mail.javamail.JavaMailSender;
 
@@ -16,14 +22,25 @@ import org.thymeleaf.context.Context;
 
 
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Map;
-
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Отправка писем по шаблонам Thymeleaf.
+ * Шаблоны из app.mail.templates.preload разбираются и компилируются в статические куски
+ * (CompiledEmailTemplate) при старте, остальные - при первом письме; письма по скомпилированному
+ * шаблону только подставляют значения. Шаблоны с th:if, th:each, th:href и т.п. не компилируются
+ * и рендерятся Thymeleaf на каждое письмо. app.mail.templates.precompiled=false выключает компиляцию
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class EmailService {
     private final JavaMailSender mailSender;
     private final TemplateEngine templateEngine;
+    private final MeterRegistry meterRegistry;
 
     @Value("${app.mail.from.adress}")
     private String fromAddress;
@@ -31,21 +48,35 @@ public class EmailService {
     @Value("${app.mail.from.personal}")
     private String fromName;
 
+    @Value("${app.mail.templates.precompiled:true}")
+    private boolean precompiled = true;
+
+    @Value("${app.mail.templates.preload:}")
+    private List<String> preloadTemplates = List.of();
+
+    private final Map<String, Optional<CompiledEmailTemplate>> compiledTemplates = new ConcurrentHashMap<>();
+
+    /**
+     * Разбирает и компилирует шаблоны при старте, чтобы первое письмо не платило за парсинг
+     * (кэш шаблонов Thymeleaf) и компиляцию.
+     * Условие проверяется до создания бина, поэтому при пустом списке ленивый EmailService не создается
+     */
+    @EventListener(value = ApplicationReadyEvent.class,
+            condition = "!@environment.getProperty('app.mail.templates.preload', '').isBlank()")
+    public void preloadTemplates() {
+        for (String template : preloadTemplates) {
+            templateEngine.process(template, new Context());
+            if (precompiled) {
+                compiled(template);
+            }
+            log.info("Email template {} preloaded", template);
+        }
+    }
+
     public void sendTamplateEmail(String to, String subject, String template, Map<String, Object> variables) {
 
         try {
-            MimeMessage mimeMessage = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, MimeMessageHelper.MULTIPART_MODE_MIXED_RELATED,
-                    StandardCharsets.UTF_8.name());
-            helper.setFrom(fromAddress);
-            helper.setTo(to);
-            helper.setSubject(subject);
-            Context context = new Context();
-            context.setVariables(variables);
-            String html = templateEngine.process(template, context);
-            helper.setText(html, true);
-            mailSender.send(mimeMessage);
-            log.info(String.format("Sent mail to {} with subject {}", to, subject));
+            deliver(to, subject, template, variables);
         }
         catch (MailSendException e) {
             log.error(e.getMessage(), e);
@@ -59,6 +90,62 @@ public class EmailService {
 
     }
 
+    /**
+     * Рендерит шаблон и отправляет письмо, ошибки SMTP не перехватываются,
+     * чтобы вызывающий код (например EmailDispatcher) мог решить, повторять ли отправку
+     */
+    void deliver(String to, String subject, String template, Map<String, Object> variables) throws MessagingException {
+        MimeMessage mimeMessage = buildMessage(to, subject, template, variables);
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "success";
+        try {
+            mailSender.send(mimeMessage);
+        } catch (MailException e) {
+            outcome = "failure";
+            meterRegistry.counter("mail.smtp.failures", "exception", e.getClass().getSimpleName()).increment();
+            throw e;
+        } finally {
+            sample.stop(Timer.builder("mail.smtp.send")
+                    .description("SMTP send latency")
+                    .tag("outcome", outcome)
+                    .publishPercentiles(0.5, 0.99)
+                    .register(meterRegistry));
+        }
+        log.info("Sent mail to {} with subject {}", to, subject);
+    }
+
+    /**
+     * Письмо без вложений, поэтому одна text/html часть, без multipart
+     */
+    MimeMessage buildMessage(String to, String subject, String template, Map<String, Object> variables)
+            throws MessagingException {
+        MimeMessage mimeMessage = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, StandardCharsets.UTF_8.name());
+        helper.setFrom(fromAddress);
+        helper.setTo(to);
+        helper.setSubject(subject);
+        helper.setText(render(template, variables), true);
+        return mimeMessage;
+    }
+
+    String render(String template, Map<String, Object> variables) {
+        if (!precompiled) {
+            return CompiledEmailTemplate.process(templateEngine, template, variables);
+        }
+        return compiled(template).map(c -> c.render(variables))
+                .orElseGet(() -> CompiledEmailTemplate.process(templateEngine, template, variables));
+    }
+
+    private Optional<CompiledEmailTemplate> compiled(String template) {
+        return compiledTemplates.computeIfAbsent(template, key -> {
+            Optional<CompiledEmailTemplate> result = CompiledEmailTemplate.compile(templateEngine, key);
+            log.info("Email template {} {}", key,
+                    result.isPresent() ? "precompiled" : "can not be precompiled, rendered every time");
+            return result;
+        });
+    }
+
 
 }
 
@@ -0,0 +1,212 @@
+package de.ait.training.service;
+
+import de.ait.training.event.CarChangedEvent;
+import de.ait.training.event.CarsImportedEvent;
+import de.ait.training.event.CarsUpdatedEvent;
+import de.ait.training.model.Car;
+import de.ait.training.repository.CarRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Limit;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Основа данных каталога в памяти, которые загружаются из базы и потом обновляются по событиям
+ * CarChangedEvent / CarsImportedEvent (индекс цен, сводка статистики, индекс моделей, снимок каталога).
+ * Загрузка читает таблицу кусками по id в новое состояние S и публикует его целиком.
+ * События, пришедшие во время загрузки, применяются к текущему состоянию и запоминаются,
+ * после публикации они применяются еще раз к загруженному - иначе изменение, которое случилось
+ * между чтением куска и публикацией, потерялось бы, а удаленный автомобиль вернулся бы.
+ * Поэтому put / putAll / remove должны быть идемпотентны.
+ * Два запроса к одному автомобилю могут опубликовать события не в том порядке, в каком изменения
+ * попали в базу, поэтому изменение применяется, только если его версия больше версии в индексе
+ * (и больше версии удаленного автомобиля) - и сразу, и при повторе после загрузки.
+ * До окончания первой загрузки isReady() = false, и вызывающий код читает из базы.
+ * После изменения, о котором неизвестно, какие автомобили затронуты (CarsBulkUpdatedEvent),
+ * reloadLater() сразу выставляет isReady() = false и перечитывает таблицу в фоновом потоке:
+ * запрос, изменивший цены, не ждет загрузки, а несколько таких изменений подряд дают одну-две загрузки
+ *
+ * @param <S> загружаемое состояние
+ */
+@Slf4j
+public abstract class LoadableCarIndex<S> {
+    private static final int LOAD_CHUNK_SIZE = 1000;
+    /** version(id): автомобиля нет в индексе */
+    protected static final long ABSENT = Long.MIN_VALUE;
+    /** version(id): автомобиль есть, версия неизвестна - любое изменение новее */
+    protected static final long UNVERSIONED = -1;
+
+    protected final CarRepository carRepository;
+
+    // загрузки идут по одной, состояние и pending защищены this
+    private final Object loadLock = new Object();
+    private List<Runnable> pending;
+    private volatile boolean ready;
+    // сколько раз данные устарели целиком: загрузка, начатая до этого, не делает индекс готовым
+    private long staleCount;
+    private final AtomicBoolean reloadQueued = new AtomicBoolean();
+    // id -> версия удаленного автомобиля: запоздавшее изменение этой или более ранней версии его не вернет.
+    // Очищается при публикации загрузки, удаления до нее в загруженных данных уже учтены
+    private final Map<Long, Long> deleted = new HashMap<>();
+
+    protected LoadableCarIndex(CarRepository carRepository) {
+        this.carRepository = carRepository;
+    }
+
+    /**
+     * Загружает все автомобили из базы страницами по id
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        synchronized (loadLock) {
+            long staleAtStart;
+            synchronized (this) {
+                pending = new ArrayList<>();
+                staleAtStart = staleCount;
+            }
+            try {
+                S state = newState();
+                Long cursor = 0L;
+                List<Car> chunk;
+                int loaded = 0;
+                do {
+                    chunk = carRepository.findByIdGreaterThanOrderByIdAsc(cursor, Limit.of(LOAD_CHUNK_SIZE));
+                    addLoaded(state, chunk);
+                    loaded += chunk.size();
+                    if (!chunk.isEmpty()) {
+                        cursor = chunk.get(chunk.size() - 1).getId();
+                    }
+                } while (chunk.size() == LOAD_CHUNK_SIZE);
+                synchronized (this) {
+                    publish(state);
+                    deleted.clear();
+                    pending.forEach(Runnable::run);
+                    ready = staleAtStart == staleCount;
+                }
+                log.info("{} loaded with {} cars", getClass().getSimpleName(), loaded);
+            } finally {
+                synchronized (this) {
+                    pending = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * true - загрузка закончена и данные совпадают с базой
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    @EventListener
+    @Order(CarCatalogVersions.DATA_LISTENER_ORDER)
+    public void onCarChanged(CarChangedEvent event) {
+        if (event.after() != null) {
+            List<Car> cars = List.of(event.after());
+            boolean created = event.before() == null;
+            apply(() -> newer(cars, created).forEach(this::put));
+        } else {
+            Car before = event.before();
+            apply(() -> {
+                remove(before.getId());
+                deleted.merge(before.getId(), versionOf(before), Math::max);
+            });
+        }
+    }
+
+    @EventListener
+    @Order(CarCatalogVersions.DATA_LISTENER_ORDER)
+    public void onCarsImported(CarsImportedEvent event) {
+        apply(() -> putAll(newer(event.cars(), true)));
+    }
+
+    @EventListener
+    @Order(CarCatalogVersions.DATA_LISTENER_ORDER)
+    public void onCarsUpdated(CarsUpdatedEvent event) {
+        apply(() -> putAll(newer(event.after(), false)));
+    }
+
+    /**
+     * Данные устарели целиком: до конца следующей загрузки читать из базы, загрузка идет в фоне.
+     * Если загрузка уже ждет запуска, вторая не ставится
+     */
+    protected void reloadLater() {
+        synchronized (this) {
+            staleCount++;
+            ready = false;
+        }
+        if (reloadQueued.compareAndSet(false, true)) {
+            Thread.ofPlatform().daemon(true).name(getClass().getSimpleName() + "-reload").start(() -> {
+                reloadQueued.set(false);
+                try {
+                    load();
+                } catch (RuntimeException e) {
+                    log.error("{} reload failed, reads go to the database", getClass().getSimpleName(), e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Применяет изменение сейчас и, если идет загрузка, еще раз после ее публикации
+     */
+    protected synchronized void apply(Runnable change) {
+        change.run();
+        if (pending != null) {
+            pending.add(change);
+        }
+    }
+
+    /**
+     * Автомобили, версия которых больше, чем в индексе. Созданный автомобиль (created) новее удаленного
+     * с тем же id: PUT может создать его заново с версией 0
+     */
+    private List<Car> newer(List<Car> cars, boolean created) {
+        List<Car> newer = new ArrayList<>(cars.size());
+        for (Car car : cars) {
+            long stored = version(car.getId());
+            if (stored == ABSENT && created) {
+                deleted.remove(car.getId());
+            } else if (stored == ABSENT) {
+                stored = deleted.getOrDefault(car.getId(), ABSENT);
+            }
+            if (car.getVersion() == null || car.getVersion() > stored) {
+                newer.add(car);
+            }
+        }
+        return newer.size() == cars.size() ? cars : newer;
+    }
+
+    private static long versionOf(Car car) {
+        return car.getVersion() != null ? car.getVersion() : UNVERSIONED;
+    }
+
+    /** пустое состояние для загрузки */
+    protected abstract S newState();
+
+    /** добавляет в состояние кусок автомобилей, куски идут по возрастанию id */
+    protected abstract void addLoaded(S state, List<Car> chunk);
+
+    /** делает загруженное состояние текущим, вызывается под блокировкой this */
+    protected abstract void publish(S state);
+
+    /** добавляет или заменяет автомобиль */
+    public abstract void put(Car car);
+
+    /** добавляет или заменяет пачку автомобилей */
+    public abstract void putAll(List<Car> cars);
+
+    /** удаляет автомобиль, если он есть */
+    public abstract void remove(Long id);
+
+    /** версия автомобиля в индексе, ABSENT - его нет, UNVERSIONED - версия неизвестна; вызывается под блокировкой this */
+    protected abstract long version(Long id);
+}
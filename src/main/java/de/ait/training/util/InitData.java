@@ -2,34 +2,57 @@ package de.ait.training.util;
 
 
 
+import de.ait.training.event.CarsImportedEvent;
 import de.ait.training.model.Car;
 import de.ait.training.repository.CarRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.List;
 
+
+/**
+ * Начальные автомобили для пустой таблицы: одним saveAll (один JDBC batch).
+ * При app.init-data.async=true заполнение идет в фоновом потоке и не задерживает старт,
+ * поэтому может совпасть с загрузкой индексов и снимка каталога по ApplicationReadyEvent.
+ * Автомобили не теряются: CarsImportedEvent публикуется после коммита saveAll, а событие,
+ * пришедшее во время загрузки, применяется и к загруженному состоянию (LoadableCarIndex)
+ */
+@Slf4j
 @Configuration
 
 public class InitData {
     @Bean
-    CommandLineRunner init(CarRepository carRepository) {
+    CommandLineRunner init(CarRepository carRepository, ApplicationEventPublisher eventPublisher,
+                           @Value("${app.init-data.async:false}") boolean async) {
         return args -> {
-            if(carRepository.count() == 0) {
-                carRepository.save(new Car("black","BMW x5", 25000));
-                carRepository.save(new Car("green","Audi A4", 15000));
-                carRepository.save(new Car("white","MB A220", 18000));
-                carRepository.save(new Car("red","Ferrari", 250000));
-
-
+            if (async) {
+                Thread.ofVirtual().name("init-data").start(() -> seed(carRepository, eventPublisher));
+            } else {
+                seed(carRepository, eventPublisher);
             }
         };
     }
 
-}
-
-
-
-
-
+    private static void seed(CarRepository carRepository, ApplicationEventPublisher eventPublisher) {
+        try {
+            if (carRepository.count() == 0) {
+                List<Car> cars = carRepository.saveAllAndCount(List.of(
+                        new Car("black", "BMW x5", 25000),
+                        new Car("green", "Audi A4", 15000),
+                        new Car("white", "MB A220", 18000),
+                        new Car("red", "Ferrari", 250000)));
+                // кэш и индекс цен узнают о новых автомобилях так же, как после импорта
+                eventPublisher.publishEvent(new CarsImportedEvent(cars));
+                log.info("Initial {} cars saved", cars.size());
+            }
+        } catch (RuntimeException e) {
+            log.error("Initial cars were not saved", e);
+        }
+    }
 
+}
@@ -0,0 +1,27 @@
+package de.ait.training.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Начала слов в названии модели - одни и те же для индекса моделей в памяти и таблицы car_model_keys
+ */
+public final class ModelWords {
+
+    private ModelWords() {
+    }
+
+    /**
+     * @return позиции, с которых начинается второе и следующие слова: буква или цифра после другого символа
+     * ("bmw x5" -> [4])
+     */
+    public static List<Integer> starts(String name) {
+        List<Integer> starts = new ArrayList<>();
+        for (int i = 1; i < name.length(); i++) {
+            if (!Character.isLetterOrDigit(name.charAt(i - 1)) && Character.isLetterOrDigit(name.charAt(i))) {
+                starts.add(i);
+            }
+        }
+        return starts;
+    }
+}
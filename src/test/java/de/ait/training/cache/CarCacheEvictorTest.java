@@ -0,0 +1,103 @@
+package de.ait.training.cache;
+
+import de.ait.training.event.CarChangedEvent;
+import de.ait.training.event.CarsBulkUpdatedEvent;
+import de.ait.training.event.CarsUpdatedEvent;
+import de.ait.training.model.Car;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CarCacheEvictorTest {
+
+    private CaffeineCacheManager cacheManager;
+    private CarCacheEvictor evictor;
+
+    private static Car car(long id, String color, double price) {
+        Car car = new Car(color, "BMW x5", price);
+        car.setId(id);
+        return car;
+    }
+
+    @BeforeEach
+    void setUp() {
+        cacheManager = new CaffeineCacheManager(CarCacheKeys.CARS, CarCacheKeys.CARS_BY_COLOR, CarCacheKeys.CARS_BY_PRICE);
+        evictor = new CarCacheEvictor(cacheManager);
+
+        Cache byColor = cacheManager.getCache(CarCacheKeys.CARS_BY_COLOR);
+        byColor.put(CarCacheKeys.color("Black"), List.of());
+        byColor.put(CarCacheKeys.color("red"), List.of());
+        byColor.put(CarCacheKeys.color("white"), List.of());
+
+        Cache byPrice = cacheManager.getCache(CarCacheKeys.CARS_BY_PRICE);
+        byPrice.put(CarCacheKeys.between(10000.0, 30000.0), List.of());
+        byPrice.put(CarCacheKeys.under(16000.0), List.of());
+        byPrice.put(CarCacheKeys.over(100000.0), List.of());
+
+        cacheManager.getCache(CarCacheKeys.CARS).put(CarCacheKeys.id(1L), car(1, "black", 25000));
+        cacheManager.getCache(CarCacheKeys.CARS).put(CarCacheKeys.id(2L), car(2, "white", 18000));
+    }
+
+    @Test
+    @DisplayName("put: old and new color and ranges with old or new price are evicted, others stay")
+    void testEvictOnUpdate() {
+        evictor.onCarChanged(new CarChangedEvent(car(1, "black", 25000), car(1, "RED", 250000)));
+
+        Cache byColor = cacheManager.getCache(CarCacheKeys.CARS_BY_COLOR);
+        assertThat(byColor.get(CarCacheKeys.color("black"))).isNull();
+        assertThat(byColor.get(CarCacheKeys.color("red"))).isNull();
+        assertThat(byColor.get(CarCacheKeys.color("white"))).isNotNull();
+
+        Cache byPrice = cacheManager.getCache(CarCacheKeys.CARS_BY_PRICE);
+        assertThat(byPrice.get(CarCacheKeys.between(10000.0, 30000.0))).isNull();
+        assertThat(byPrice.get(CarCacheKeys.over(100000.0))).isNull();
+        assertThat(byPrice.get(CarCacheKeys.under(16000.0))).isNotNull();
+
+        assertThat(cacheManager.getCache(CarCacheKeys.CARS).get(CarCacheKeys.id(1L))).isNull();
+        assertThat(cacheManager.getCache(CarCacheKeys.CARS).get(CarCacheKeys.id(2L))).isNotNull();
+    }
+
+    @Test
+    @DisplayName("created car evicts only its color and matching price ranges")
+    void testEvictOnCreate() {
+        evictor.onCarChanged(CarChangedEvent.created(car(3, "green", 15000)));
+
+        assertThat(cacheManager.getCache(CarCacheKeys.CARS_BY_COLOR).get(CarCacheKeys.color("black"))).isNotNull();
+        Cache byPrice = cacheManager.getCache(CarCacheKeys.CARS_BY_PRICE);
+        assertThat(byPrice.get(CarCacheKeys.between(10000.0, 30000.0))).isNull();
+        assertThat(byPrice.get(CarCacheKeys.under(16000.0))).isNull();
+        assertThat(byPrice.get(CarCacheKeys.over(100000.0))).isNotNull();
+    }
+
+    @Test
+    @DisplayName("bulk price update: all car caches are cleared")
+    void testClearOnBulkUpdate() {
+        evictor.onCarsBulkUpdated(new CarsBulkUpdatedEvent(10));
+
+        assertThat(cacheManager.getCache(CarCacheKeys.CARS).get(CarCacheKeys.id(2L))).isNull();
+        assertThat(cacheManager.getCache(CarCacheKeys.CARS_BY_COLOR).get(CarCacheKeys.color("white"))).isNull();
+        assertThat(cacheManager.getCache(CarCacheKeys.CARS_BY_PRICE).get(CarCacheKeys.under(16000.0))).isNull();
+    }
+
+    @Test
+    @DisplayName("a read that started before the change cannot put its stale result back under the current key")
+    void testStaleReadNotReturned() {
+        // чтение вычислило ключи и ушло в базу до commit изменения
+        CarCacheKeys.IdKey idKey = CarCacheKeys.id(1L);
+        CarCacheKeys.PriceRange rangeKey = CarCacheKeys.between(20000.0, 40000.0);
+
+        evictor.onCarsUpdated(new CarsUpdatedEvent(List.of(car(1, "black", 25000)), List.of(car(1, "black", 35000))));
+        cacheManager.getCache(CarCacheKeys.CARS).put(idKey, car(1, "black", 25000));
+        cacheManager.getCache(CarCacheKeys.CARS_BY_PRICE).put(rangeKey, List.of());
+
+        assertThat(cacheManager.getCache(CarCacheKeys.CARS).get(CarCacheKeys.id(1L))).isNull();
+        assertThat(cacheManager.getCache(CarCacheKeys.CARS_BY_PRICE).get(CarCacheKeys.between(20000.0, 40000.0))).isNull();
+        assertThat(CarCacheKeys.between(100.0, 500.0)).isEqualTo(CarCacheKeys.between(100.0, 500.0));
+    }
+}
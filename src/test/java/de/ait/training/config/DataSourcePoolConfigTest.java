@@ -0,0 +1,68 @@
+package de.ait.training.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DataSourcePoolConfigTest {
+
+    private static MockEnvironment prodEnvironment() {
+        return new MockEnvironment()
+                .withProperty("app.datasource.pool.auto-size", "true")
+                .withProperty("app.datasource.pool.cores", "4")
+                .withProperty("app.datasource.pool.spindles", "1")
+                .withProperty("app.datasource.postgresql.prepareThreshold", "1")
+                .withProperty("app.datasource.postgresql.preparedStatementCacheQueries", "512");
+    }
+
+    @Test
+    @DisplayName("PostgreSQL pool gets cores * 2 + spindles connections, cores idle and driver statement cache properties")
+    void testPostgresql() {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:postgresql://localhost:5432/g_54_cars?reWriteBatchedInserts=true&prepareThreshold=3");
+
+        DataSourcePoolConfig.configure(dataSource, prodEnvironment());
+
+        assertThat(dataSource.getMaximumPoolSize()).isEqualTo(9);
+        assertThat(dataSource.getMinimumIdle()).isEqualTo(4);
+        assertThat(dataSource.getDataSourceProperties())
+                .containsEntry("preparedStatementCacheQueries", "512")
+                .doesNotContainKey("prepareThreshold");
+    }
+
+    @Test
+    @DisplayName("H2 gets no PostgreSQL driver properties, explicit maximum-pool-size wins")
+    void testH2() {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:testdb");
+        dataSource.setMaximumPoolSize(20);
+
+        DataSourcePoolConfig.configure(dataSource,
+                prodEnvironment().withProperty("spring.datasource.hikari.maximum-pool-size", "20"));
+
+        assertThat(dataSource.getMaximumPoolSize()).isEqualTo(20);
+        assertThat(dataSource.getDataSourceProperties()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("auto size without database cores fails, explicit minimum-idle is kept")
+    void testCoresRequired() {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:testdb");
+
+        assertThatThrownBy(() -> DataSourcePoolConfig.configure(dataSource,
+                prodEnvironment().withProperty("app.datasource.pool.cores", "0")))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("app.datasource.pool.cores");
+
+        dataSource.setMinimumIdle(2);
+        DataSourcePoolConfig.configure(dataSource,
+                prodEnvironment().withProperty("spring.datasource.hikari.minimum-idle", "2"));
+        assertThat(dataSource.getMaximumPoolSize()).isEqualTo(9);
+        assertThat(dataSource.getMinimumIdle()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,91 @@
+package de.ait.training.config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.classic.util.LogbackMDCAdapter;
+import ch.qos.logback.core.AppenderBase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LevelDiscardingAsyncAppenderTest {
+
+    private final LoggerContext loggerContext = new LoggerContext();
+    private final Logger logger = loggerContext.getLogger("test");
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<String> written = new CopyOnWriteArrayList<>();
+    private LevelDiscardingAsyncAppender appender;
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        loggerContext.setMDCAdapter(new LogbackMDCAdapter());
+        CountDownLatch blocked = new CountDownLatch(1);
+        // медленный аппендер: рабочий поток ждет release на первом событии
+        AppenderBase<ILoggingEvent> slow = new AppenderBase<>() {
+            @Override
+            protected void append(ILoggingEvent event) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                written.add(event.getFormattedMessage());
+            }
+        };
+        slow.setContext(loggerContext);
+        slow.start();
+
+        appender = new LevelDiscardingAsyncAppender();
+        appender.setContext(loggerContext);
+        appender.setQueueSize(4);
+        appender.setDiscardingThreshold(2);
+        appender.setDiscardLevel("DEBUG");
+        appender.setNeverBlock(true);
+        appender.addAppender(slow);
+        appender.start();
+
+        appender.doAppend(event(Level.WARN, "first"));
+        blocked.await();
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        appender.stop();
+    }
+
+    private LoggingEvent event(Level level, String message) {
+        return new LoggingEvent(Logger.class.getName(), logger, level, message, null, null);
+    }
+
+    @Test
+    @DisplayName("near full queue drops DEBUG but keeps INFO, full queue drops everything without blocking")
+    void testDiscardAndDrop() {
+        appender.doAppend(event(Level.INFO, "info 1"));
+        appender.doAppend(event(Level.INFO, "info 2"));
+        // в очереди 2 свободных места из 4 - ниже порога
+        appender.doAppend(event(Level.INFO, "info 3"));
+        appender.doAppend(event(Level.DEBUG, "debug"));
+        appender.doAppend(event(Level.ERROR, "error 1"));
+        appender.doAppend(event(Level.ERROR, "error 2"));
+
+        assertThat(appender.getRemainingCapacity()).isZero();
+        assertThat(appender.getDiscardedCount()).isEqualTo(1);
+        assertThat(appender.getDroppedCount()).isEqualTo(1);
+
+        release.countDown();
+        appender.stop();
+        assertThat(written).containsExactly("first", "info 1", "info 2", "info 3", "error 1");
+    }
+}
@@ -1,21 +1,72 @@
 package de.ait.training.controller;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import de.ait.training.config.SmileConfig;
 import de.ait.training.model.Car;
+import de.ait.training.dto.BulkImportResult;
+import de.ait.training.dto.BulkUpdateResult;
+import de.ait.training.dto.CarCatalogVersion;
+import de.ait.training.dto.CarChange;
+import de.ait.training.dto.CarDto;
+import de.ait.training.dto.CarPatch;
+import de.ait.training.dto.CarPatchResult;
+import de.ait.training.dto.CarSearchCriteria;
+import de.ait.training.dto.CarStats;
+import de.ait.training.dto.CarStatsGroupBy;
+import de.ait.training.dto.CarUpsertResult;
+import de.ait.training.dto.ModelSuggestion;
 import de.ait.training.repository.CarRepository;
+import de.ait.training.repository.CarUpsertRepository;
+import de.ait.training.service.CarCatalogVersions;
+import de.ait.training.service.CarChangeFeed;
+import de.ait.training.service.CarExportService;
+import de.ait.training.service.CarImportService;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 
 @WebMvcTest(controllers = RestApiCarController.class)
+@Import({SmileConfig.class, CarChangeFeed.class, CarCatalogVersions.class})
 class RestApiCarControllerTest {
 
     @Autowired
@@ -24,12 +75,28 @@ class RestApiCarControllerTest {
     @MockitoBean
     private CarRepository carRepository;
 
+    @MockitoBean
+    private CarImportService carImportService;
+
+    @MockitoBean
+    private CarExportService carExportService;
+
+    @Autowired
+    private CarChangeFeed changeFeed;
+
+    private static final CarCatalogVersion CATALOG_VERSION = new CarCatalogVersion(4L);
+
+    @BeforeEach
+    void setUp() {
+        given(carRepository.findCatalogVersion()).willReturn(CATALOG_VERSION);
+    }
+
     @Test
     void testFindCarsPriceBetweenSuccess() throws Exception {
         given(carRepository.findByPriceBetween(10000.0, 30000.0))
-                .willReturn(List.of(new Car("black", "BMW x5", 25000),
-                                    new Car("green", "Audi A4", 15000),
-                                    new Car("white", "MB A220", 18000)));
+                .willReturn(List.of(CarDto.from(new Car("black", "BMW x5", 25000)),
+                                    CarDto.from(new Car("green", "Audi A4", 15000)),
+                                    CarDto.from(new Car("white", "MB A220", 18000))));
 
         mockMvc.perform(get("/api/cars/price/between/{min}/{max}", 10000, 30000)
                 ).andExpect(status().isOk())
@@ -51,7 +118,7 @@ class RestApiCarControllerTest {
     @DisplayName("price unter then 16000, 1 car found, status OK")
     void testFindCarLessThanEqualSuccess() throws Exception {
         given(carRepository.findByPriceLessThanEqual(16000.0))
-                .willReturn(List.of(new Car("green","Audi A4", 15000)));
+                .willReturn(List.of(CarDto.from(new Car("green","Audi A4", 15000))));
 
         mockMvc.perform(get("/api/cars/price/under/{max}", 16000))
                 .andExpect(status().isOk())
@@ -59,4 +126,499 @@ class RestApiCarControllerTest {
                 .andExpect(jsonPath("$[?(@.model == 'Audi A4')]").exists());
     }
 
-}
\ No newline at end of file
+    @Test
+    @DisplayName("page after id 0 with limit 2, 2 cars found, next cursor in header, status OK")
+    void testGetCarsKeysetPageSuccess() throws Exception {
+        Car first = new Car("black", "BMW x5", 25000);
+        first.setId(1L);
+        Car second = new Car("green", "Audi A4", 15000);
+        second.setId(2L);
+        given(carRepository.findByIdGreaterThanOrderByIdAsc(eq(0L), any(Limit.class)))
+                .willReturn(List.of(first, second));
+
+        mockMvc.perform(get("/api/cars").param("after", "0").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Next-After", "2"))
+                .andExpect(jsonPath("$.length()").value(2));
+    }
+
+    @Test
+    @DisplayName("limit 0, status BadRequest")
+    void testGetCarsKeysetPageWrongLimitFailure() throws Exception {
+        mockMvc.perform(get("/api/cars").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("without limit all cars are streamed as one json array, status OK")
+    void testGetCarsStreamSuccess() throws Exception {
+        Car car = new Car("red", "Ferrari", 250000);
+        car.setId(4L);
+        given(carRepository.findByIdGreaterThanOrderByIdAsc(eq(0L), any(Limit.class)))
+                .willReturn(List.of(car));
+
+        MvcResult result = mockMvc.perform(get("/api/cars"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        // долгий таймаут выгрузки сюда не попадает
+        assertThat(result.getRequest().getAsyncContext().getTimeout())
+                .isLessThan(Duration.ofMinutes(30).toMillis());
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].model").value("Ferrari"));
+    }
+
+    @Test
+    @DisplayName("bulk import of ndjson stream, status Created")
+    void testImportCarsNdjsonSuccess() throws Exception {
+        given(carImportService.importCars(any())).willReturn(new BulkImportResult(2, 1));
+
+        mockMvc.perform(post("/api/cars/bulk")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content("""
+                                {"color":"black","model":"BMW x5","price":25000}
+                                {"color":"green","model":"Audi A4","price":15000}
+                                """))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.imported").value(2))
+                .andExpect(jsonPath("$.batches").value(1));
+    }
+
+    @Test
+    @DisplayName("collection with actual ETag in If-None-Match, status NotModified without query")
+    void testGetCarsByColorNotModified() throws Exception {
+        mockMvc.perform(get("/api/cars/color/{color}", "black")
+                        .header(HttpHeaders.IF_NONE_MATCH, CATALOG_VERSION.eTag()))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT))
+                .andExpect(header().string(HttpHeaders.ETAG, CATALOG_VERSION.eTag()))
+                .andExpect(content().string(""));
+
+        then(carRepository).should(never()).findCarByColorIgnoreCase(any());
+    }
+
+    @Test
+    @DisplayName("collection with old ETag in If-None-Match, status OK with new ETag")
+    void testGetCarsByColorModified() throws Exception {
+        given(carRepository.findCarByColorIgnoreCase("black"))
+                .willReturn(List.of(CarDto.from(new Car("black", "BMW x5", 25000))));
+
+        mockMvc.perform(get("/api/cars/color/{color}", "black")
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"3\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, CATALOG_VERSION.eTag()))
+                .andExpect(jsonPath("$.length()").value(1));
+    }
+
+    @Test
+    @DisplayName("car by id with its ETag in If-None-Match, status NotModified")
+    void testGetCarNotModified() throws Exception {
+        Car car = new Car("black", "BMW x5", 25000);
+        car.setId(1L);
+        car.setVersion(3L);
+        given(carRepository.findById(1L)).willReturn(Optional.of(car));
+
+        mockMvc.perform(get("/api/cars/{id}", 1))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1-3\""))
+                .andExpect(jsonPath("$.version").value(3));
+
+        mockMvc.perform(get("/api/cars/{id}", 1).header(HttpHeaders.IF_NONE_MATCH, "\"1-3\""))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    @DisplayName("put of existing car, one upsert with path id, status OK with new ETag")
+    void testPutCarUpdated() throws Exception {
+        Car before = new Car("black", "BMW x5", 25000);
+        before.setId(1L);
+        before.setVersion(3L);
+        Car after = new Car("white", "BMW x5", 27000);
+        after.setId(1L);
+        after.setVersion(4L);
+        given(carRepository.upsert(any(Car.class), eq(3L)))
+                .willReturn(new CarUpsertResult(CarUpsertResult.Status.UPDATED, before, after));
+
+        mockMvc.perform(put("/api/cars/{id}", 1)
+                        .header(HttpHeaders.IF_MATCH, "\"1-3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"id":7,"color":"white","model":"BMW x5","price":27000}
+                                """))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1-4\""))
+                .andExpect(jsonPath("$.version").value(4));
+
+        then(carRepository).should().upsert(argThat(car -> car.getId() == 1L), eq(3L));
+        then(carRepository).should(never()).findById(any());
+    }
+
+    @Test
+    @DisplayName("put of unknown id creates car with this id, status Created")
+    void testPutCarCreated() throws Exception {
+        Car after = new Car("white", "BMW x5", 27000);
+        after.setId(CarUpsertRepository.CLIENT_ID_MIN + 5);
+        after.setVersion(0L);
+        given(carRepository.upsert(any(Car.class), eq(null)))
+                .willReturn(new CarUpsertResult(CarUpsertResult.Status.CREATED, null, after));
+
+        mockMvc.perform(put("/api/cars/{id}", CarUpsertRepository.CLIENT_ID_MIN + 5)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"color":"white","model":"BMW x5","price":27000}
+                                """))
+                .andExpect(status().isCreated())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1000000000005-0\""))
+                .andExpect(jsonPath("$.id").value(CarUpsertRepository.CLIENT_ID_MIN + 5));
+    }
+
+    @Test
+    @DisplayName("put of unknown id from the sequence range creates nothing, status NotFound")
+    void testPutCarIdReserved() throws Exception {
+        given(carRepository.upsert(any(Car.class), eq(null)))
+                .willReturn(new CarUpsertResult(CarUpsertResult.Status.ID_RESERVED, null, null));
+
+        mockMvc.perform(put("/api/cars/{id}", 5)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"color":"white","model":"BMW x5","price":27000}
+                                """))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @DisplayName("put with stale If-Match or If-Match of another car, status PreconditionFailed")
+    void testPutCarIfMatchFailure() throws Exception {
+        given(carRepository.upsert(any(Car.class), eq(2L)))
+                .willReturn(new CarUpsertResult(CarUpsertResult.Status.VERSION_MISMATCH, null, null));
+
+        mockMvc.perform(put("/api/cars/{id}", 1)
+                        .header(HttpHeaders.IF_MATCH, "\"1-2\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"color":"white","model":"BMW x5","price":27000}
+                                """))
+                .andExpect(status().isPreconditionFailed());
+
+        mockMvc.perform(put("/api/cars/{id}", 1)
+                        .header(HttpHeaders.IF_MATCH, "\"2-3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"color":"white","model":"BMW x5","price":27000}
+                                """))
+                .andExpect(status().isPreconditionFailed());
+
+        then(carRepository).should().upsert(any(Car.class), any());
+    }
+
+    @Test
+    @DisplayName("put with stale version in body, status Conflict")
+    void testPutCarStaleVersionFailure() throws Exception {
+        given(carRepository.upsert(any(Car.class), eq(2L)))
+                .willReturn(new CarUpsertResult(CarUpsertResult.Status.VERSION_MISMATCH, null, null));
+
+        mockMvc.perform(put("/api/cars/{id}", 1)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"color":"white","model":"BMW x5","price":27000,"version":2}
+                                """))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    @DisplayName("patch with merge-patch body, only price changed, status OK with new ETag")
+    void testPatchCarSuccess() throws Exception {
+        Car before = new Car("black", "BMW x5", 25000);
+        before.setId(1L);
+        before.setVersion(3L);
+        Car after = new Car("black", "BMW x5", 24000);
+        after.setId(1L);
+        after.setVersion(4L);
+        given(carRepository.patch(1L, new CarPatch(null, null, 24000.0, null, null, null), 3L))
+                .willReturn(new CarPatchResult(CarPatchResult.Status.UPDATED, before, after));
+
+        mockMvc.perform(patch("/api/cars/{id}", 1)
+                        .header(HttpHeaders.IF_MATCH, "\"1-3\"")
+                        .contentType("application/merge-patch+json")
+                        .content("""
+                                {"price":24000}
+                                """))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1-4\""))
+                .andExpect(jsonPath("$.price").value(24000.0));
+    }
+
+    @Test
+    @DisplayName("patch of unknown id, status NotFound; stale version, status Conflict")
+    void testPatchCarFailure() throws Exception {
+        given(carRepository.patch(eq(5L), any(), any()))
+                .willReturn(new CarPatchResult(CarPatchResult.Status.NOT_FOUND, null, null));
+        mockMvc.perform(patch("/api/cars/{id}", 5)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"price":24000}
+                                """))
+                .andExpect(status().isNotFound());
+
+        given(carRepository.patch(eq(1L), any(), eq(2L)))
+                .willReturn(new CarPatchResult(CarPatchResult.Status.VERSION_MISMATCH, null, null));
+        mockMvc.perform(patch("/api/cars/{id}", 1)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"price":24000,"version":2}
+                                """))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    @DisplayName("bulk price update by id map publishes changed cars, by percent a bulk change, status OK with count")
+    void testPatchCarPricesSuccess() throws Exception {
+        Car bmw = new Car("black", "BMW x5", 25000);
+        bmw.setId(1L);
+        bmw.setVersion(0L);
+        Car bmwAfter = new Car("black", "BMW x5", 26000);
+        bmwAfter.setId(1L);
+        bmwAfter.setVersion(1L);
+        Car audi = new Car("green", "Audi A4", 15000);
+        audi.setId(2L);
+        audi.setVersion(3L);
+        Car audiAfter = new Car("green", "Audi A4", 14000);
+        audiAfter.setId(2L);
+        audiAfter.setVersion(4L);
+        given(carRepository.updatePrices(Map.of(1L, 26000.0, 2L, 14000.0)))
+                .willReturn(new BulkUpdateResult(2, 1, List.of(bmw, audi), List.of(bmwAfter, audiAfter)));
+        long since = changeFeed.lastSeq();
+        mockMvc.perform(patch("/api/cars")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"prices":{"1":26000,"2":14000}}
+                                """))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.updated").value(2))
+                .andExpect(jsonPath("$.before").doesNotExist());
+        assertThat(changeFeed.page(since, 10).changes())
+                .extracting(CarChange::type, CarChange::id, CarChange::version)
+                .containsExactly(tuple(CarChange.Type.UPDATED, 1L, 1L), tuple(CarChange.Type.UPDATED, 2L, 4L));
+        since = changeFeed.lastSeq();
+
+        given(carRepository.adjustPrices(-10.0, "red", null)).willReturn(new BulkUpdateResult(7, 1));
+        mockMvc.perform(patch("/api/cars")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"percent":-10,"color":"red"}
+                                """))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.updated").value(7));
+        assertThat(changeFeed.page(since, 10).changes()).extracting(CarChange::type)
+                .containsExactly(CarChange.Type.BULK_UPDATED);
+    }
+
+    @Test
+    @DisplayName("bulk price update with both variants, negative price or percent -100, status BadRequest")
+    void testPatchCarPricesFailure() throws Exception {
+        for (String body : List.of("""
+                        {"prices":{"1":26000},"percent":5}""", """
+                        {"prices":{"1":-1}}""", """
+                        {"percent":-100}""", "{}")) {
+            mockMvc.perform(patch("/api/cars").contentType(MediaType.APPLICATION_JSON).content(body))
+                    .andExpect(status().isBadRequest());
+        }
+        then(carRepository).should(never()).adjustPrices(anyDouble(), any(), any());
+    }
+
+    @Test
+    @DisplayName("search passes all filters, sort and limit in one repository call, status OK")
+    void testSearchCarsSuccess() throws Exception {
+        CarSearchCriteria criteria = new CarSearchCriteria("red", null, 30000.0, 2020, null, "diesel");
+        given(carRepository.search(criteria, Sort.by(Sort.Direction.DESC, "price"), 50))
+                .willReturn(List.of(CarDto.from(new Car("red", "Audi A6", 29000))));
+
+        mockMvc.perform(get("/api/cars/search")
+                        .param("color", "red")
+                        .param("maxPrice", "30000")
+                        .param("minYear", "2020")
+                        .param("engineType", "diesel")
+                        .param("sort", "price,desc")
+                        .param("limit", "50"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].model").value("Audi A6"));
+    }
+
+    @Test
+    @DisplayName("search with min price greater than max or unknown sort, status BadRequest")
+    void testSearchCarsFailure() throws Exception {
+        mockMvc.perform(get("/api/cars/search").param("minPrice", "30000").param("maxPrice", "10000"))
+                .andExpect(status().isBadRequest());
+
+        given(carRepository.search(any(), any(), eq(100))).willThrow(new InvalidDataAccessApiUsageException("version"));
+        mockMvc.perform(get("/api/cars/search").param("sort", "version"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("export as gzip csv, file streamed by export service with export timeout, status OK")
+    void testExportCarsGzip() throws Exception {
+        given(carExportService.export(eq(CarExportService.Format.CSV), any())).willAnswer(invocation -> {
+            invocation.getArgument(1, OutputStream.class).write("id,color\n1,red\n".getBytes());
+            return 1L;
+        });
+
+        MvcResult result = mockMvc.perform(get("/api/cars/export").param("format", "csv").param("gzip", "true"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertThat(result.getRequest().getAsyncContext().getTimeout()).isEqualTo(Duration.ofMinutes(30).toMillis());
+
+        byte[] body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/gzip"))
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"cars.csv.gz\""))
+                .andReturn().getResponse().getContentAsByteArray();
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            assertThat(new String(in.readAllBytes())).isEqualTo("id,color\n1,red\n");
+        }
+    }
+
+    @Test
+    @DisplayName("export in unknown format, status BadRequest")
+    void testExportCarsUnknownFormat() throws Exception {
+        mockMvc.perform(get("/api/cars/export").param("format", "xml"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("model suggestions without index come from repository, status OK; bad limit, status BadRequest")
+    void testSuggestModels() throws Exception {
+        given(carRepository.suggestModels("bm", 5)).willReturn(List.of(new ModelSuggestion("BMW x5", 3)));
+
+        mockMvc.perform(get("/api/cars/models/suggest").param("prefix", " bm ").param("limit", "5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].model").value("BMW x5"))
+                .andExpect(jsonPath("$[0].count").value(3));
+
+        mockMvc.perform(get("/api/cars/models/suggest").param("prefix", "bm").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("stats grouped by engine_type from repository, status OK")
+    void testGetStatsSuccess() throws Exception {
+        given(carRepository.stats(CarStatsGroupBy.ENGINE_TYPE))
+                .willReturn(List.of(new CarStats("diesel", 2, 10000.0, 20000.0, 15000.0, 15000.0, 19000.0, 19900.0)));
+
+        mockMvc.perform(get("/api/cars/stats").param("groupBy", "engine_type"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].group").value("diesel"))
+                .andExpect(jsonPath("$[0].p90").value(19000.0));
+    }
+
+    @Test
+    @DisplayName("stats with unknown groupBy, status BadRequest")
+    void testGetStatsFailure() throws Exception {
+        mockMvc.perform(get("/api/cars/stats").param("groupBy", "price"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("color list with Accept smile, binary Smile body with its own ETag, status OK")
+    void testGetCarsByColorSmile() throws Exception {
+        given(carRepository.findCarByColorIgnoreCase("black"))
+                .willReturn(List.of(CarDto.from(new Car("black", "BMW x5", 25000)),
+                                    CarDto.from(new Car("black", "Audi A4", 15000))));
+
+        MvcResult result = mockMvc.perform(get("/api/cars/color/{color}", "black")
+                        .accept(SmileConfig.APPLICATION_SMILE))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(SmileConfig.APPLICATION_SMILE))
+                .andExpect(header().string(HttpHeaders.ETAG, CATALOG_VERSION.smileETag()))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT))
+                .andReturn();
+
+        JsonNode cars = new ObjectMapper(new SmileFactory()).readTree(result.getResponse().getContentAsByteArray());
+        assertThat(cars).hasSize(2);
+        assertThat(cars.get(1).get("model").asText()).isEqualTo("Audi A4");
+    }
+
+    @Test
+    @DisplayName("stream with Accept smile, all cars as one Smile array, status OK")
+    void testGetCarsStreamSmile() throws Exception {
+        Car car = new Car("red", "Ferrari", 250000);
+        car.setId(4L);
+        given(carRepository.findByIdGreaterThanOrderByIdAsc(eq(0L), any(Limit.class)))
+                .willReturn(List.of(car));
+
+        MvcResult result = mockMvc.perform(get("/api/cars").accept(SmileConfig.APPLICATION_SMILE))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        MvcResult streamed = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(SmileConfig.APPLICATION_SMILE))
+                .andReturn();
+
+        JsonNode cars = new ObjectMapper(new SmileFactory()).readTree(streamed.getResponse().getContentAsByteArray());
+        assertThat(cars).hasSize(1);
+        assertThat(cars.get(0).get("model").asText()).isEqualTo("Ferrari");
+    }
+
+    @Test
+    @DisplayName("long-poll of changes returns created car after since, status OK; bad limit, status BadRequest")
+    void testPollChanges() throws Exception {
+        long since = changeFeed.lastSeq();
+        Car saved = new Car("red", "Ferrari", 250000);
+        saved.setId(7L);
+        saved.setVersion(0L);
+        given(carRepository.saveAndCount(any(Car.class))).willReturn(saved);
+
+        mockMvc.perform(post("/api/cars").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"color\":\"red\",\"model\":\"Ferrari\",\"price\":250000}"))
+                .andExpect(status().isCreated());
+
+        MvcResult result = mockMvc.perform(get("/api/cars/changes").param("since", changeFeed.cursor(since)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.changes.length()").value(1))
+                .andExpect(jsonPath("$.changes[0].seq").value(since + 1))
+                .andExpect(jsonPath("$.changes[0].type").value("CREATED"))
+                .andExpect(jsonPath("$.changes[0].car.model").value("Ferrari"))
+                .andExpect(jsonPath("$.lastSeq").value(since + 1))
+                .andExpect(jsonPath("$.next").value(changeFeed.cursor(since + 1)))
+                .andExpect(jsonPath("$.reset").value(false));
+
+        MvcResult badLimit = mockMvc.perform(get("/api/cars/changes").param("limit", "0"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(badLimit))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("SSE subscription from Last-Event-ID sends missed deletes as change events")
+    void testSubscribeChanges() throws Exception {
+        long since = changeFeed.lastSeq();
+        Car car = new Car("black", "BMW x5", 25000);
+        car.setId(1L);
+        given(carRepository.findById(1L)).willReturn(Optional.of(car));
+        given(carRepository.deleteAndCountById(1L)).willReturn(true);
+        mockMvc.perform(delete("/api/cars/{id}", 1L));
+
+        MvcResult result = mockMvc.perform(get("/api/cars/changes")
+                        .accept(MediaType.TEXT_EVENT_STREAM)
+                        .header("Last-Event-ID", changeFeed.cursor(since)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String expected = "id:" + changeFeed.cursor(since + 1) + "\nevent:change\ndata:{\"seq\":" + (since + 1) + ",\"type\":\"DELETED\",\"id\":1";
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!result.getResponse().getContentAsString().contains(expected) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(result.getResponse().getContentAsString()).contains(expected);
+    }
+}
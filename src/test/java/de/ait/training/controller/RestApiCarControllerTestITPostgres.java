@@ -1,17 +1,30 @@
 package de.ait.training.controller;
 
+import de.ait.training.dto.CarSearchCriteria;
 import de.ait.training.model.Car;
 import de.ait.training.repository.CarRepository;
+import de.ait.training.repository.CarUpsertRepository;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.*;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.util.Arrays;
 import java.util.List;
+import java.util.StringJoiner;
 
 import static org.junit.jupiter.api.Assertions.*;
 @ActiveProfiles("test")
@@ -24,6 +37,9 @@ class RestApiCarControllerTestITPostgres {
     @Autowired
     CarRepository repository;
 
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
     @Test
     public void getAllCarsSuccess() {
 
@@ -143,6 +159,120 @@ class RestApiCarControllerTestITPostgres {
     }
 
 
+    // PUT идет одним INSERT ... ON CONFLICT: неизвестный id из диапазона cars_seq не создается (404),
+    // неизвестный id от CLIENT_ID_MIN создается (201), повтор с актуальным If-Match заменяет (200), со старым - 412
+    @Test
+    public void putCarUpsertSuccess() {
+        Car car = new Car("blue", "VW Golf", 12000);
+        ResponseEntity<Car> reserved = restTemplate.exchange(
+                "/api/cars/" + 900_000_001L, HttpMethod.PUT, new HttpEntity<>(car), Car.class);
+        assertEquals(HttpStatus.NOT_FOUND, reserved.getStatusCode(), "Unexpected http status");
+
+        long id = CarUpsertRepository.CLIENT_ID_MIN + 1;
+        ResponseEntity<Car> created = restTemplate.exchange(
+                "/api/cars/" + id, HttpMethod.PUT, new HttpEntity<>(car), Car.class);
+        assertEquals(HttpStatus.CREATED, created.getStatusCode(), "Unexpected http status");
+        assertEquals(id, created.getBody().getId());
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfMatch(created.getHeaders().getETag());
+        car.setPrice(11000);
+        ResponseEntity<Car> updated = restTemplate.exchange(
+                "/api/cars/" + id, HttpMethod.PUT, new HttpEntity<>(car, headers), Car.class);
+        assertEquals(HttpStatus.OK, updated.getStatusCode(), "Unexpected http status");
+        assertEquals(1L, updated.getBody().getVersion());
+
+        ResponseEntity<Car> stale = restTemplate.exchange(
+                "/api/cars/" + id, HttpMethod.PUT, new HttpEntity<>(car, headers), Car.class);
+        assertEquals(HttpStatus.PRECONDITION_FAILED, stale.getStatusCode(), "Unexpected http status");
+
+        repository.deleteById(id);
+    }
+
+    // Проверяем планы запросов поисковых методов CarRepository.
+    // На маленькой таблице PostgreSQL всегда выберет Seq Scan, поэтому в рамках
+    // транзакции теста запрещаем его: если нужный индекс есть, план перейдет на Index/Bitmap Scan,
+    // если индекс пропал - в плане останется Seq Scan и тест упадет.
+    // EXPLAIN получает SQL и параметры, с которыми Hibernate выполнил сам метод репозитория,
+    // поэтому тест заметит и другой вид upper()/lower(), и другой тип параметра (float8 вместо numeric).
+    @Test
+    @Transactional
+    public void priceFindersUseIndex() {
+        jdbcTemplate.execute("SET LOCAL enable_seqscan = off");
+
+        assertIndexPlan(() -> repository.findByPriceBetween(10000.0, 30000.0), "idx_cars_price");
+        assertIndexPlan(() -> repository.findByPriceLessThanEqual(30000.0), "idx_cars_price");
+        assertIndexPlan(() -> repository.findByPriceGreaterThanEqual(10000.0), "idx_cars_price");
+    }
+
+    @Test
+    @Transactional
+    public void colorIgnoreCaseFinderUsesIndex() {
+        jdbcTemplate.execute("SET LOCAL enable_seqscan = off");
+
+        assertIndexPlan(() -> repository.findCarByColorIgnoreCase("red"), "idx_cars_color_upper_price");
+    }
+
+    @Test
+    @Transactional
+    public void searchCombinationsUseCompositeIndexes() {
+        jdbcTemplate.execute("SET LOCAL enable_seqscan = off");
+        Sort byPrice = Sort.by("price");
+
+        assertIndexPlan(() -> repository.search(
+                        new CarSearchCriteria("red", null, 30000.0, null, null, null), byPrice, 20),
+                "idx_cars_color_upper_price");
+        assertIndexPlan(() -> repository.search(
+                        new CarSearchCriteria(null, null, 30000.0, 2020, null, "diesel"), byPrice, 20),
+                "idx_cars_engine_type_upper_year_price");
+        assertIndexPlan(() -> repository.search(
+                        new CarSearchCriteria(null, null, 30000.0, 2020, null, null), byPrice, 20),
+                "idx_cars_year_price");
+    }
+
+    @Test
+    @Transactional
+    public void modelSuggestionsUsePatternIndex() {
+        jdbcTemplate.execute("SET LOCAL enable_seqscan = off");
+
+        assertIndexPlan(() -> repository.suggestModels("bm", 10), "idx_car_model_keys_pattern");
+    }
+
+    private void assertIndexPlan(Runnable finder, String indexName) {
+        List<StatementRecorder.RecordedStatement> statements = StatementRecorder.record(finder);
+        assertEquals(1, statements.size(), "Expected one query, got " + statements);
+        StatementRecorder.RecordedStatement query = statements.get(0);
+
+        String plan = jdbcTemplate.execute((ConnectionCallback<String>) connection -> {
+            try (PreparedStatement explain = connection.prepareStatement("EXPLAIN " + query.sql())) {
+                query.bind(explain);
+                StringJoiner lines = new StringJoiner("\n");
+                try (ResultSet rows = explain.executeQuery()) {
+                    while (rows.next()) {
+                        lines.add(rows.getString(1));
+                    }
+                }
+                return lines.toString();
+            }
+        });
+        assertFalse(plan.contains("Seq Scan"), "Sequential scan in plan: " + plan);
+        assertTrue(plan.contains(indexName), "Index " + indexName + " not used: " + plan);
+    }
+
+    @TestConfiguration
+    static class StatementRecorderConfig {
+
+        @Bean
+        static BeanPostProcessor statementRecordingDataSource() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof DataSource dataSource ? StatementRecorder.wrap(dataSource) : bean;
+                }
+            };
+        }
+    }
+
 
 
 // Примеры на будущее - как тестировать приложение, защищённое
@@ -0,0 +1,106 @@
+package de.ait.training.controller;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Обертка DataSource для тестов планов: пока выполняется {@link #record(Runnable)},
+ * запоминает SQL каждого PreparedStatement и вызовы setXxx с параметрами -
+ * так EXPLAIN повторяет запрос ровно в том виде и с теми типами параметров,
+ * с какими его выполнил Hibernate
+ */
+final class StatementRecorder {
+
+    private static final ThreadLocal<List<RecordedStatement>> RECORDING = new ThreadLocal<>();
+
+    private StatementRecorder() {
+    }
+
+    /**
+     * SQL запроса и вызовы setXxx(index, ...) в порядке выполнения
+     */
+    record RecordedStatement(String sql, List<Binding> bindings) {
+
+        /**
+         * Привязывает к statement те же параметры теми же setXxx
+         */
+        void bind(PreparedStatement statement) throws SQLException {
+            for (Binding binding : bindings) {
+                invoke(statement, binding.setter(), binding.args());
+            }
+        }
+    }
+
+    record Binding(Method setter, Object[] args) {
+    }
+
+    static DataSource wrap(DataSource dataSource) {
+        return proxy(DataSource.class, dataSource, (method, args, result) ->
+                method.getName().equals("getConnection") ? wrap((Connection) result) : result);
+    }
+
+    /**
+     * Выполняет action и возвращает подготовленные за это время запросы
+     */
+    static List<RecordedStatement> record(Runnable action) {
+        List<RecordedStatement> statements = new ArrayList<>();
+        RECORDING.set(statements);
+        try {
+            action.run();
+        } finally {
+            RECORDING.remove();
+        }
+        return statements;
+    }
+
+    private static Connection wrap(Connection connection) {
+        return proxy(Connection.class, connection, (method, args, result) -> {
+            List<RecordedStatement> statements = RECORDING.get();
+            if (statements == null || !method.getName().equals("prepareStatement")) {
+                return result;
+            }
+            RecordedStatement statement = new RecordedStatement((String) args[0], new ArrayList<>());
+            statements.add(statement);
+            return proxy(PreparedStatement.class, (PreparedStatement) result, (setter, setterArgs, ignored) -> {
+                if (setter.getName().startsWith("set") && setterArgs != null && setterArgs.length >= 2
+                        && setterArgs[0] instanceof Integer) {
+                    statement.bindings().add(new Binding(setter, setterArgs.clone()));
+                }
+                return ignored;
+            });
+        });
+    }
+
+    private interface ResultWrapper {
+        Object wrap(Method method, Object[] args, Object result) throws SQLException;
+    }
+
+    private static <T> T proxy(Class<T> type, T target, ResultWrapper wrapper) {
+        InvocationHandler handler = (proxy, method, args) -> wrapper.wrap(method, args, invoke(target, method, args));
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws SQLException {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof SQLException sqlException) {
+                throw sqlException;
+            }
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
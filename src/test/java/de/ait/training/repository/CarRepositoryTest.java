@@ -0,0 +1,330 @@
+package de.ait.training.repository;
+
+import de.ait.training.dto.CarCatalogVersion;
+import de.ait.training.dto.BulkUpdateResult;
+import de.ait.training.dto.CarDto;
+import de.ait.training.dto.CarPatch;
+import de.ait.training.dto.CarPatchResult;
+import de.ait.training.dto.CarSearchCriteria;
+import de.ait.training.dto.CarStats;
+import de.ait.training.dto.CarStatsGroupBy;
+import de.ait.training.dto.CarUpsertResult;
+import de.ait.training.dto.ModelSuggestion;
+import de.ait.training.model.Car;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.domain.Sort;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.assertj.core.api.Assertions.within;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("h2")
+class CarRepositoryTest {
+
+    @Autowired
+    CarRepository carRepository;
+
+    @Autowired
+    EntityManager entityManager;
+
+    @BeforeEach
+    void setUp() {
+        carRepository.deleteAll();
+        Car bmw = new Car("black", "BMW x5", 25000);
+        bmw.setYear(2020);
+        bmw.setEngineType("petrol");
+        carRepository.saveAll(List.of(bmw,
+                new Car("green", "Audi A4", 15000),
+                new Car("white", "MB A220", 18000),
+                new Car("red", "Ferrari", 250000)));
+    }
+
+    @Test
+    @DisplayName("color ignore case returns dto projection")
+    void testFindByColorDto() {
+        List<CarDto> cars = carRepository.findCarByColorIgnoreCase("BLACK");
+
+        assertThat(cars).hasSize(1);
+        CarDto car = cars.get(0);
+        assertThat(car.id()).isNotNull();
+        assertThat(car.model()).isEqualTo("BMW x5");
+        assertThat(car.year()).isEqualTo(2020);
+        assertThat(car.engineType()).isEqualTo("petrol");
+    }
+
+    @Test
+    @DisplayName("price finders return dto projections, bounds inclusive")
+    void testFindByPriceDto() {
+        assertThat(carRepository.findByPriceBetween(15000.0, 25000.0)).extracting(CarDto::model)
+                .containsExactlyInAnyOrder("BMW x5", "Audi A4", "MB A220");
+        assertThat(carRepository.findByPriceLessThanEqual(15000.0)).extracting(CarDto::model)
+                .containsExactly("Audi A4");
+        assertThat(carRepository.findByPriceGreaterThanEqual(250000.0)).extracting(CarDto::model)
+                .containsExactly("Ferrari");
+    }
+
+    @Test
+    @DisplayName("update increments version, stale version is rejected")
+    void testOptimisticLock() {
+        Car car = carRepository.findCarByColorIgnoreCase("red").stream()
+                .map(dto -> carRepository.findById(dto.id()).orElseThrow())
+                .findFirst().orElseThrow();
+        Long version = car.getVersion();
+        car.setPrice(240000);
+        carRepository.saveAndFlush(car);
+        assertThat(car.getVersion()).isEqualTo(version + 1);
+        assertThat(car.getUpdatedAt()).isNotNull();
+
+        Car stale = new Car("red", "Ferrari", 230000);
+        stale.setId(car.getId());
+        stale.setVersion(version);
+        assertThatThrownBy(() -> carRepository.saveAndFlush(stale))
+                .isInstanceOf(ObjectOptimisticLockingFailureException.class);
+    }
+
+    @Test
+    @DisplayName("every insert, update and delete bumps the catalog change counter once, no-op changes do not")
+    void testCatalogVersionCountsChanges() {
+        long changes = carRepository.findCatalogVersion().changes();
+        Long id = carRepository.findCarByColorIgnoreCase("green").get(0).id();
+
+        Car posted = carRepository.saveAndCount(new Car("blue", "VW Golf", 20000));
+        assertThat(carRepository.findCatalogVersion().changes()).isEqualTo(++changes);
+
+        carRepository.saveAllAndCount(List.of(new Car("blue", "VW Polo", 14000), new Car("blue", "VW Up", 11000)));
+        assertThat(carRepository.findCatalogVersion().changes()).isEqualTo(++changes);
+
+        Car replaced = new Car("blue", "VW Golf", 19000);
+        replaced.setId(posted.getId());
+        carRepository.upsert(replaced, 42L);
+        assertThat(carRepository.findCatalogVersion().changes()).isEqualTo(changes);
+        carRepository.upsert(replaced, null);
+        assertThat(carRepository.findCatalogVersion().changes()).isEqualTo(++changes);
+
+        carRepository.patch(id, new CarPatch(null, null, 16000.0, null, null, null), null);
+        assertThat(carRepository.findCatalogVersion().changes()).isEqualTo(++changes);
+
+        carRepository.updatePrices(Map.of(-1L, 1000.0));
+        assertThat(carRepository.findCatalogVersion().changes()).isEqualTo(changes);
+        carRepository.adjustPrices(10, "blue", null);
+        assertThat(carRepository.findCatalogVersion().changes()).isEqualTo(++changes);
+
+        assertThat(carRepository.deleteAndCountById(id)).isTrue();
+        assertThat(carRepository.deleteAndCountById(id)).isFalse();
+        assertThat(carRepository.findCatalogVersion()).isEqualTo(new CarCatalogVersion(++changes));
+        assertThat(carRepository.findById(id)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("search combines all given filters, sorts and limits")
+    void testSearch() {
+        Car audi = new Car("Black", "Audi A6", 30000);
+        audi.setYear(2021);
+        audi.setEngineType("diesel");
+        Car old = new Car("black", "BMW x3", 12000);
+        old.setYear(2015);
+        old.setEngineType("diesel");
+        carRepository.saveAll(List.of(audi, old));
+
+        List<CarDto> found = carRepository.search(
+                new CarSearchCriteria("BLACK", null, 30000.0, 2018, null, null),
+                Sort.by(Sort.Direction.DESC, "price"), 10);
+        assertThat(found).extracting(CarDto::model).containsExactly("Audi A6", "BMW x5");
+
+        assertThat(carRepository.search(new CarSearchCriteria(null, null, null, null, null, "Diesel"),
+                Sort.by("year"), 1)).extracting(CarDto::model).containsExactly("BMW x3");
+
+        assertThat(carRepository.search(new CarSearchCriteria(null, null, null, null, null, null),
+                Sort.unsorted(), 100)).hasSize(6);
+    }
+
+    @Test
+    @DisplayName("search by unknown property is rejected")
+    void testSearchUnknownSort() {
+        assertThatThrownBy(() -> carRepository.search(new CarSearchCriteria(null, null, null, null, null, null),
+                Sort.by("version"), 10)).isInstanceOf(InvalidDataAccessApiUsageException.class);
+    }
+
+    @Test
+    @DisplayName("stats for whole catalog and per color, percentiles interpolated like percentile_cont")
+    void testStats() {
+        CarStats total = carRepository.stats(null).get(0);
+        assertThat(total.group()).isNull();
+        assertThat(total.count()).isEqualTo(4);
+        assertThat(total.minPrice()).isEqualTo(15000.0);
+        assertThat(total.maxPrice()).isEqualTo(250000.0);
+        assertThat(total.avgPrice()).isEqualTo(77000.0, within(0.001));
+        assertThat(total.p50()).isEqualTo(21500.0, within(0.001));
+        assertThat(total.p90()).isEqualTo(182500.0, within(0.001));
+
+        carRepository.save(new Car("black", "BMW x3", 30000));
+        List<CarStats> byColor = carRepository.stats(CarStatsGroupBy.COLOR);
+        assertThat(byColor).extracting(CarStats::group).containsExactly("black", "green", "red", "white");
+        CarStats black = byColor.get(0);
+        assertThat(black.count()).isEqualTo(2);
+        assertThat(black.p50()).isEqualTo(27500.0, within(0.001));
+    }
+
+    @Test
+    @DisplayName("upsert inserts with path id, then updates and returns old row, stale version changes nothing")
+    void testUpsert() {
+        long id = CarUpsertRepository.CLIENT_ID_MIN + 1000;
+        Car car = new Car("blue", "VW Golf", 12000.125);
+        car.setId(id);
+        car.setYear(2019);
+
+        CarUpsertResult created = carRepository.upsert(car, null);
+        assertThat(created.status()).isEqualTo(CarUpsertResult.Status.CREATED);
+        assertThat(created.before()).isNull();
+        assertThat(created.after().getVersion()).isZero();
+        assertThat(created.after().getUpdatedAt()).isNotNull();
+        // цена из сохраненной строки NUMERIC(12,2)
+        assertThat(created.after().getPrice()).isEqualTo(12000.13);
+
+        car.setPrice(11000);
+        CarUpsertResult updated = carRepository.upsert(car, 0L);
+        assertThat(updated.status()).isEqualTo(CarUpsertResult.Status.UPDATED);
+        assertThat(updated.before().getPrice()).isEqualTo(12000.13);
+        assertThat(updated.before().getYear()).isEqualTo(2019);
+        assertThat(updated.after().getVersion()).isEqualTo(1);
+
+        car.setPrice(10000);
+        CarUpsertResult stale = carRepository.upsert(car, 0L);
+        assertThat(stale.status()).isEqualTo(CarUpsertResult.Status.VERSION_MISMATCH);
+
+        Car saved = carRepository.findById(id).orElseThrow();
+        assertThat(saved.getPrice()).isEqualTo(11000);
+        assertThat(saved.getVersion()).isEqualTo(1);
+        assertThat(carRepository.count()).isEqualTo(5);
+    }
+
+    @Test
+    @DisplayName("upsert does not create a car with an id cars_seq may still hand out, post never gets a put id")
+    void testPostAfterUpsertCreate() {
+        long next = ((Number) entityManager.createNativeQuery(
+                "SELECT BASE_VALUE FROM INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_NAME = 'CARS_SEQ'")
+                .getSingleResult()).longValue();
+        // следующий блок Hibernate - next - 49 .. next
+        Car reserved = new Car("blue", "VW Golf", 12000);
+        reserved.setId(next - 49);
+        CarUpsertResult rejected = carRepository.upsert(reserved, null);
+        assertThat(rejected.status()).isEqualTo(CarUpsertResult.Status.ID_RESERVED);
+        assertThat(carRepository.existsById(next - 49)).isFalse();
+
+        Car put = new Car("blue", "VW Golf", 12000);
+        put.setId(CarUpsertRepository.CLIENT_ID_MIN);
+        Instant before = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        CarUpsertResult created = carRepository.upsert(put, null);
+        assertThat(created.status()).isEqualTo(CarUpsertResult.Status.CREATED);
+        assertThat(created.after().getUpdatedAt()).isBetween(before, Instant.now());
+
+        // больше одного блока id: Hibernate точно возьмет из cars_seq новое значение
+        List<Car> posted = carRepository.saveAllAndFlush(IntStream.range(0, 60)
+                .mapToObj(i -> new Car("grey", "Skoda " + i, 10000 + i))
+                .toList());
+
+        assertThat(posted).extracting(Car::getId).contains(next - 49).doesNotHaveDuplicates()
+                .allMatch(id -> id < CarUpsertRepository.CLIENT_ID_MIN);
+        assertThat(carRepository.count()).isEqualTo(65);
+    }
+
+    @Test
+    @DisplayName("patch changes only given fields and increments version, stale version or unknown id change nothing")
+    void testPatch() {
+        Long id = carRepository.findCarByColorIgnoreCase("black").get(0).id();
+
+        CarPatchResult patched = carRepository.patch(id, new CarPatch(null, null, 24000.0, null, null, null), 0L);
+        assertThat(patched.status()).isEqualTo(CarPatchResult.Status.UPDATED);
+        assertThat(patched.before().getPrice()).isEqualTo(25000);
+        assertThat(patched.after().getPrice()).isEqualTo(24000);
+        assertThat(patched.after().getModel()).isEqualTo("BMW x5");
+        assertThat(patched.after().getEngineType()).isEqualTo("petrol");
+        assertThat(patched.after().getVersion()).isEqualTo(1);
+
+        assertThat(carRepository.patch(id, new CarPatch("red", null, null, null, null, null), 0L).status())
+                .isEqualTo(CarPatchResult.Status.VERSION_MISMATCH);
+        assertThat(carRepository.patch(-1L, new CarPatch("red", null, null, null, null, null), null).status())
+                .isEqualTo(CarPatchResult.Status.NOT_FOUND);
+        assertThat(carRepository.findById(id).orElseThrow().getColor()).isEqualTo("black");
+    }
+
+    @Test
+    @DisplayName("bulk price updates by id map with changed cars and by percent with color filter, version incremented")
+    void testBulkPriceUpdates() {
+        Long black = carRepository.findCarByColorIgnoreCase("black").get(0).id();
+        Long green = carRepository.findCarByColorIgnoreCase("green").get(0).id();
+
+        BulkUpdateResult byId = carRepository.updatePrices(Map.of(black, 26000.0, green, 14000.0, -1L, 1.0));
+        assertThat(byId.updated()).isEqualTo(2);
+        assertThat(byId.statements()).isEqualTo(1);
+        assertThat(byId.before()).extracting(Car::getId, Car::getPrice, Car::getVersion)
+                .containsExactlyInAnyOrder(tuple(black, 25000.0, 0L), tuple(green, 15000.0, 0L));
+        assertThat(byId.after()).extracting(Car::getId, Car::getPrice, Car::getVersion, Car::getColor)
+                .containsExactlyInAnyOrder(tuple(black, 26000.0, 1L, "black"), tuple(green, 14000.0, 1L, "green"));
+        assertThat(byId.after().get(0).getUpdatedAt())
+                .isEqualTo(carRepository.findById(byId.after().get(0).getId()).orElseThrow().getUpdatedAt());
+        assertThat(carRepository.findById(black).orElseThrow().getPrice()).isEqualTo(26000);
+        assertThat(carRepository.findById(green).orElseThrow().getVersion()).isEqualTo(1);
+
+        BulkUpdateResult byPercent = carRepository.adjustPrices(-10, "GREEN", null);
+        assertThat(byPercent.updated()).isEqualTo(1);
+        Car discounted = carRepository.findById(green).orElseThrow();
+        assertThat(discounted.getPrice()).isEqualTo(12600, within(0.001));
+        assertThat(discounted.getVersion()).isEqualTo(2);
+
+        assertThat(carRepository.adjustPrices(5, null, null).updated()).isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("model suggestions by name or word start ignore case, exact first, like wildcards are escaped")
+    void testSuggestModels() {
+        carRepository.saveAll(List.of(new Car("red", "BMW x3", 30000), new Car("red", "BMW x3", 31000),
+                new Car("red", "BMW", 40000), new Car("red", "BMW_M", 50000), new Car("red", "X3 Hybrid", 60000)));
+        carRepository.refreshModelKeys();
+
+        assertThat(carRepository.suggestModels("bmw", 10)).containsExactly(
+                new ModelSuggestion("BMW", 1), new ModelSuggestion("BMW x3", 2),
+                new ModelSuggestion("BMW x5", 1), new ModelSuggestion("BMW_M", 1));
+        assertThat(carRepository.suggestModels("bmw_", 10)).extracting(ModelSuggestion::model)
+                .containsExactly("BMW_M");
+        assertThat(carRepository.suggestModels("x5", 10)).containsExactly(new ModelSuggestion("BMW x5", 1));
+        // с начала названия раньше, чем с начала слова, даже если автомобилей меньше
+        assertThat(carRepository.suggestModels("X3", 10)).containsExactly(
+                new ModelSuggestion("X3 Hybrid", 1), new ModelSuggestion("BMW x3", 2));
+        assertThat(carRepository.suggestModels("m", 10)).extracting(ModelSuggestion::model)
+                .containsExactly("MB A220", "BMW_M");
+        assertThat(carRepository.suggestModels("bmw", 2)).hasSize(2);
+    }
+
+    @Test
+    @DisplayName("model counts change without a rebuild, keys are added for a new model and removed with the last car")
+    void testCountModels() {
+        carRepository.refreshModelKeys();
+
+        carRepository.countModels(Map.of("BMW x5", 2L, "Tesla Model 3", 1L, "MB A220", -1L));
+
+        assertThat(carRepository.suggestModels("bmw", 10)).containsExactly(new ModelSuggestion("BMW x5", 3));
+        assertThat(carRepository.suggestModels("model", 10)).containsExactly(new ModelSuggestion("Tesla Model 3", 1));
+        assertThat(carRepository.suggestModels("3", 10)).containsExactly(new ModelSuggestion("Tesla Model 3", 1));
+        assertThat(carRepository.suggestModels("a220", 10)).isEmpty();
+        assertThat(carRepository.suggestModels("mb", 10)).isEmpty();
+    }
+}
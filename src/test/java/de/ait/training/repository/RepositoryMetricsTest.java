@@ -0,0 +1,64 @@
+package de.ait.training.repository;
+
+import de.ait.training.config.RepositoryMetricsConfig;
+import de.ait.training.model.Car;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("h2")
+@Import({RepositoryMetricsConfig.class, RepositoryMetricsTest.MeterRegistryConfig.class})
+class RepositoryMetricsTest {
+
+    @TestConfiguration
+    static class MeterRegistryConfig {
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @Autowired
+    CarRepository carRepository;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Test
+    @DisplayName("result size of every finder is recorded per method")
+    void testResultSizeRecorded() {
+        carRepository.deleteAll();
+        carRepository.saveAll(List.of(new Car("black", "BMW x5", 25000),
+                new Car("black", "Audi A4", 15000),
+                new Car("red", "Ferrari", 250000)));
+
+        carRepository.findCarByColorIgnoreCase("black");
+        carRepository.findByPriceLessThanEqual(1000.0);
+
+        DistributionSummary byColor = meterRegistry.get("repository.result.size")
+                .tags("repository", "CarRepository", "method", "findCarByColorIgnoreCase")
+                .summary();
+        assertThat(byColor.count()).isEqualTo(1);
+        assertThat(byColor.totalAmount()).isEqualTo(2);
+
+        DistributionSummary byPrice = meterRegistry.get("repository.result.size")
+                .tags("method", "findByPriceLessThanEqual")
+                .summary();
+        assertThat(byPrice.totalAmount()).isZero();
+    }
+}
@@ -0,0 +1,160 @@
+package de.ait.training.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import de.ait.training.dto.CarDto;
+import de.ait.training.event.CarChangedEvent;
+import de.ait.training.event.CarsImportedEvent;
+import de.ait.training.model.Car;
+import de.ait.training.repository.CarRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CarCatalogSnapshotTest {
+
+    // как у Spring Boot: Instant строкой ISO-8601
+    private final ObjectMapper objectMapper = JsonMapper.builder()
+            .addModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+
+    private CarCatalogSnapshot snapshot;
+
+    private static Car car(long id, String color, String model, double price) {
+        Car car = new Car(color, model, price);
+        car.setId(id);
+        car.setYear(2020);
+        car.setEngineType("petrol");
+        car.setVersion(0L);
+        car.setUpdatedAt(Instant.parse("2025-01-01T10:00:00.123456Z").plusSeconds(id));
+        return car;
+    }
+
+    @BeforeEach
+    void setUp() {
+        snapshot = new CarCatalogSnapshot(mock(CarRepository.class));
+        snapshot.putAll(List.of(
+                car(1, "black", "BMW x5", 25000),
+                car(2, "green", "Audi A4", 15000),
+                car(3, "white", "MB A220", 18000),
+                car(4, "Black", "Ferrari", 250000)));
+    }
+
+    @Test
+    @DisplayName("snapshot writes the same JSON as ObjectMapper for Car, nulls included")
+    void testWriteCarsMatchesObjectMapper() throws Exception {
+        Car withNulls = new Car("red", "Tesla", 40000);
+        withNulls.setId(5L);
+        snapshot.put(withNulls);
+
+        StringWriter json = new StringWriter();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(json)) {
+            generator.writeStartArray();
+            snapshot.writeCars(1, generator);
+            generator.writeEndArray();
+        }
+
+        List<Car> expected = List.of(car(2, "green", "Audi A4", 15000), car(3, "white", "MB A220", 18000),
+                car(4, "Black", "Ferrari", 250000), withNulls);
+        assertThat(json.toString()).isEqualTo(objectMapper.writeValueAsString(expected));
+    }
+
+    @Test
+    @DisplayName("findById and page decode the same car that was put")
+    void testFindByIdAndPage() {
+        assertThat(snapshot.findById(3)).contains(car(3, "white", "MB A220", 18000));
+        assertThat(snapshot.findById(7)).isEmpty();
+        assertThat(snapshot.page(1, 2)).extracting(Car::getId).containsExactly(2L, 3L);
+        assertThat(snapshot.page(4, 10)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("color filter ignores case, price filters have inclusive bounds")
+    void testFilters() {
+        assertThat(snapshot.findByColorIgnoreCase("BLACK")).extracting(CarDto::model)
+                .containsExactly("BMW x5", "Ferrari");
+        assertThat(snapshot.findByColorIgnoreCase("blue")).isEmpty();
+        assertThat(snapshot.findByPriceBetween(15000, 25000)).extracting(CarDto::id).containsExactly(1L, 2L, 3L);
+        assertThat(snapshot.findByPriceLessThanEqual(15000)).extracting(CarDto::id).containsExactly(2L);
+        assertThat(snapshot.findByPriceGreaterThanEqual(250000)).extracting(CarDto::id).containsExactly(4L);
+    }
+
+    @Test
+    @DisplayName("put replaces car, remove deletes it, unknown id is ignored")
+    void testPutRemove() {
+        Car changed = car(4, "black", "Ferrari", 200000);
+        changed.setUpdatedAt(Instant.parse("2025-02-01T00:00:00Z"));
+        snapshot.put(changed);
+
+        assertThat(snapshot.findById(4)).contains(changed);
+
+        snapshot.remove(4L);
+        snapshot.remove(42L);
+
+        assertThat(snapshot.size()).isEqualTo(3);
+        assertThat(snapshot.findById(4)).isEmpty();
+        assertThat(snapshot.findById(3)).isPresent();
+    }
+
+    @Test
+    @DisplayName("large catalog is split into segments and stays ordered by id")
+    void testSegmentSplit() {
+        int count = CarCatalogSnapshot.SEGMENT_SIZE * 5;
+        List<Car> cars = new ArrayList<>();
+        // четные id пачкой, нечетные по одному - вставки в середину сегментов
+        LongStream.rangeClosed(1, count).filter(id -> id % 2 == 0)
+                .forEach(id -> cars.add(car(id + 10, "blue", "Model " + id % 7, id)));
+        snapshot.putAll(cars);
+        LongStream.rangeClosed(1, count).filter(id -> id % 2 == 1)
+                .forEach(id -> snapshot.put(car(id + 10, "blue", "Model " + id % 7, id)));
+
+        assertThat(snapshot.size()).isEqualTo(count + 4);
+        List<Car> all = snapshot.page(0, Integer.MAX_VALUE);
+        assertThat(all).extracting(Car::getId).isSorted().doesNotHaveDuplicates().hasSize(count + 4);
+        assertThat(snapshot.page(CarCatalogSnapshot.SEGMENT_SIZE * 3L, 2)).extracting(Car::getId)
+                .containsExactly(CarCatalogSnapshot.SEGMENT_SIZE * 3L + 1, CarCatalogSnapshot.SEGMENT_SIZE * 3L + 2);
+        assertThat(snapshot.findByColorIgnoreCase("blue")).hasSize(count);
+    }
+
+    @Test
+    @DisplayName("changes made while the snapshot loads are applied to the loaded catalog")
+    void testLoadReplaysConcurrentChanges() {
+        CarRepository carRepository = mock(CarRepository.class);
+        CarCatalogSnapshot loading = new CarCatalogSnapshot(carRepository);
+        Car changed = car(3, "white", "MB A220", 17000);
+        changed.setVersion(1L);
+        when(carRepository.findByIdGreaterThanOrderByIdAsc(anyLong(), any())).thenAnswer(invocation -> {
+            // строки уже прочитаны, а в это время другие запросы меняют каталог
+            List<Car> chunk = List.of(car(1, "black", "BMW x5", 25000), car(2, "green", "Audi A4", 15000),
+                    car(3, "white", "MB A220", 18000));
+            loading.onCarChanged(CarChangedEvent.deleted(car(2, "green", "Audi A4", 15000)));
+            loading.onCarChanged(new CarChangedEvent(car(3, "white", "MB A220", 18000), changed));
+            loading.onCarsImported(new CarsImportedEvent(List.of(car(5, "red", "VW Golf", 12000))));
+            return chunk;
+        });
+
+        assertThat(loading.isReady()).isFalse();
+        loading.load();
+
+        assertThat(loading.isReady()).isTrue();
+        assertThat(loading.page(0, 10)).extracting(Car::getId).containsExactly(1L, 3L, 5L);
+        assertThat(loading.findById(3)).contains(changed);
+        assertThat(loading.findById(2)).isEmpty();
+    }
+}
@@ -0,0 +1,108 @@
+package de.ait.training.service;
+
+import de.ait.training.dto.CarCatalogVersion;
+import de.ait.training.event.CarCatalogChangeCountedEvent;
+import de.ait.training.event.CarChangedEvent;
+import de.ait.training.model.Car;
+import de.ait.training.repository.CarRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+
+class CarCatalogVersionsTest {
+
+    private CarRepository carRepository;
+    private CarCatalogVersions versions;
+
+    @BeforeEach
+    void setUp() {
+        carRepository = mock(CarRepository.class);
+        given(carRepository.findCatalogVersion()).willReturn(new CarCatalogVersion(4));
+        versions = new CarCatalogVersions(carRepository);
+    }
+
+    /**
+     * Как CarCatalogRepository.countChange в транзакции, которая завершается с status
+     */
+    private void count(long changes, int status) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            versions.onChangeCounted(new CarCatalogChangeCountedEvent(changes));
+            List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+            synchronizations.forEach(synchronization -> synchronization.afterCompletion(status));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private void applied() {
+        Car car = new Car("black", "BMW x5", 25000);
+        car.setId(1L);
+        versions.onCarChanged(CarChangedEvent.created(car));
+    }
+
+    @Test
+    @DisplayName("version is read from the database once and grows only after the change is applied")
+    void testVersionGrowsAfterApply() {
+        assertThat(versions.current()).contains(new CarCatalogVersion(4));
+
+        count(5, TransactionSynchronization.STATUS_COMMITTED);
+        assertThat(versions.current()).contains(new CarCatalogVersion(4));
+
+        applied();
+        assertThat(versions.current()).contains(new CarCatalogVersion(5));
+        then(carRepository).should(times(1)).findCatalogVersion();
+    }
+
+    @Test
+    @DisplayName("rolled back change is forgotten, the next event of the thread does not apply it")
+    void testRollbackForgotten() {
+        versions.current();
+
+        count(5, TransactionSynchronization.STATUS_ROLLED_BACK);
+        applied();
+
+        assertThat(versions.current()).contains(new CarCatalogVersion(4));
+    }
+
+    @Test
+    @DisplayName("newer change applied before an older one: no version until the older one is applied")
+    void testOutOfOrderHasNoVersion() throws Exception {
+        versions.current();
+        try (ExecutorService older = Executors.newSingleThreadExecutor()) {
+            CompletableFuture.runAsync(() -> count(5, TransactionSynchronization.STATUS_COMMITTED), older).get();
+
+            count(6, TransactionSynchronization.STATUS_COMMITTED);
+            applied();
+            assertThat(versions.current()).isEmpty();
+
+            CompletableFuture.runAsync(this::applied, older).get();
+        }
+        assertThat(versions.current()).contains(new CarCatalogVersion(6));
+    }
+
+    @Test
+    @DisplayName("change counted before the first read but not applied yet: no version")
+    void testPendingAtFirstRead() {
+        given(carRepository.findCatalogVersion()).willReturn(new CarCatalogVersion(5));
+        count(5, TransactionSynchronization.STATUS_COMMITTED);
+
+        assertThat(versions.current()).isEmpty();
+
+        applied();
+        assertThat(versions.current()).contains(new CarCatalogVersion(5));
+    }
+}
@@ -0,0 +1,211 @@
+package de.ait.training.service;
+
+import de.ait.training.dto.CarChange;
+import de.ait.training.dto.CarChangePage;
+import de.ait.training.event.CarChangedEvent;
+import de.ait.training.event.CarsBulkUpdatedEvent;
+import de.ait.training.event.CarsImportedEvent;
+import de.ait.training.model.Car;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CarChangeFeedTest {
+
+    private final CarChangeFeed feed = new CarChangeFeed(4, 100, 30000, 60000, 100, 15000);
+
+    /**
+     * Запоминает отправленные события текстом; blocked - первая отправка ждет, как у медленного клиента
+     */
+    private static final class RecordingEmitter extends SseEmitter {
+        private final List<String> sent = new CopyOnWriteArrayList<>();
+        private final CountDownLatch blocked;
+        private volatile boolean completed;
+
+        RecordingEmitter(CountDownLatch blocked) {
+            this.blocked = blocked;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            StringBuilder event = new StringBuilder();
+            builder.build().forEach(part -> event.append(part.getData()));
+            sent.add(event.toString());
+        }
+
+        @Override
+        public void complete() {
+            completed = true;
+            super.complete();
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+    }
+
+    private static Car car(long id, long version) {
+        Car car = new Car("black", "BMW x5", 25000);
+        car.setId(id);
+        car.setVersion(version);
+        return car;
+    }
+
+    @AfterEach
+    void tearDown() {
+        feed.stop();
+    }
+
+    @Test
+    @DisplayName("create, update, delete and bulk update get consecutive seq numbers")
+    void testSequence() {
+        feed.onCarChanged(CarChangedEvent.created(car(1, 0)));
+        feed.onCarChanged(new CarChangedEvent(car(1, 0), car(1, 1)));
+        feed.onCarChanged(CarChangedEvent.deleted(car(1, 1)));
+        feed.onCarsBulkUpdated(new CarsBulkUpdatedEvent(10));
+
+        CarChangePage page = feed.page(0, 10);
+
+        assertThat(page.reset()).isFalse();
+        assertThat(page.lastSeq()).isEqualTo(4);
+        assertThat(page.changes()).extracting(CarChange::seq).containsExactly(1L, 2L, 3L, 4L);
+        assertThat(page.changes()).extracting(CarChange::type).containsExactly(CarChange.Type.CREATED,
+                CarChange.Type.UPDATED, CarChange.Type.DELETED, CarChange.Type.BULK_UPDATED);
+        assertThat(page.changes().get(1).version()).isEqualTo(1L);
+        assertThat(page.changes().get(2).car()).isNull();
+        assertThat(feed.page(2, 1).changes()).extracting(CarChange::seq).containsExactly(3L);
+        assertThat(feed.page(4, 10).changes()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("changes pushed out of the ring buffer or unknown seq give reset")
+    void testReset() {
+        feed.onCarsImported(new CarsImportedEvent(List.of(car(1, 0), car(2, 0), car(3, 0), car(4, 0),
+                car(5, 0), car(6, 0))));
+
+        // после reset клиент перечитывает каталог: старые изменения не нужны, продолжение - с последнего seq
+        CarChangePage behind = feed.page(1, 2);
+        assertThat(behind.reset()).isTrue();
+        assertThat(behind.changes()).isEmpty();
+        assertThat(behind.lastSeq()).isEqualTo(6);
+        assertThat(feed.page(behind.lastSeq(), 10).changes()).isEmpty();
+        assertThat(feed.page(2, 10).reset()).isFalse();
+
+        CarChangePage ahead = feed.page(100, 10);
+        assertThat(ahead.reset()).isTrue();
+        assertThat(ahead.changes()).isEmpty();
+        assertThat(ahead.lastSeq()).isEqualTo(6);
+    }
+
+    @Test
+    @DisplayName("position of another feed (restart, other instance) gives reset even when its seq is behind")
+    void testOtherEpoch() {
+        feed.onCarChanged(CarChangedEvent.created(car(1, 0)));
+        feed.onCarChanged(CarChangedEvent.created(car(2, 0)));
+        CarChangeFeed restarted = new CarChangeFeed(4, 100, 30000, 60000, 100, 15000);
+        restarted.onCarChanged(CarChangedEvent.created(car(3, 0)));
+
+        CarChangePage page = feed.page(restarted.cursor(1), 10);
+        assertThat(page.reset()).isTrue();
+        assertThat(page.next()).isEqualTo(feed.cursor(2));
+        assertThat(feed.page(feed.cursor(1), 10).reset()).isFalse();
+        assertThat(feed.page("1", 10).reset()).isTrue();
+        assertThat(feed.page(feed.epoch() + ":x", 10).reset()).isTrue();
+        assertThat(feed.poll(restarted.cursor(1), 10).getResult()).isEqualTo(page);
+        restarted.stop();
+    }
+
+    @Test
+    @DisplayName("long-poll waits for the next change")
+    void testPoll() {
+        feed.onCarChanged(CarChangedEvent.created(car(1, 0)));
+        DeferredResult<CarChangePage> ready = feed.poll(feed.cursor(0), 10);
+        assertThat(ready.hasResult()).isTrue();
+
+        DeferredResult<CarChangePage> waiting = feed.poll(feed.cursor(1), 10);
+        assertThat(waiting.hasResult()).isFalse();
+
+        feed.onCarChanged(CarChangedEvent.created(car(2, 0)));
+
+        assertThat(waiting.hasResult()).isTrue();
+        CarChangePage page = (CarChangePage) waiting.getResult();
+        assertThat(page.changes()).extracting(CarChange::id).containsExactly(2L);
+        assertThat(page.lastSeq()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("slow SSE subscriber with a full queue is disconnected, others get every change")
+    void testSlowSubscriberDropped() throws InterruptedException {
+        CarChangeFeed small = new CarChangeFeed(100, 100, 30000, 60000, 2, 15000);
+        RecordingEmitter fast = new RecordingEmitter(new CountDownLatch(0));
+        CountDownLatch slowClient = new CountDownLatch(1);
+        RecordingEmitter slow = new RecordingEmitter(slowClient);
+        small.subscribe(small.cursor(0), fast);
+        small.subscribe(small.cursor(0), slow);
+
+        for (long id = 1; id <= 5; id++) {
+            small.onCarChanged(CarChangedEvent.created(car(id, 0)));
+            long sent = id;
+            // быстрый клиент успевает забрать каждое изменение, у медленного очередь копится
+            waitFor(() -> fast.sent.size() == sent);
+        }
+
+        assertThat(small.subscribers()).isEqualTo(1);
+        assertThat(fast.sent).hasSize(5);
+        assertThat(fast.sent.get(4)).startsWith("id:" + small.cursor(5) + "\nevent:change\n");
+        slowClient.countDown();
+        waitFor(() -> slow.completed);
+        assertThat(slow.completed).isTrue();
+        assertThat(fast.completed).isFalse();
+        small.stop();
+    }
+
+    @Test
+    @DisplayName("SSE subscriber behind the ring buffer gets reset with the current position and no old changes")
+    void testSubscriberReset() throws InterruptedException {
+        feed.onCarsImported(new CarsImportedEvent(List.of(car(1, 0), car(2, 0), car(3, 0), car(4, 0),
+                car(5, 0), car(6, 0))));
+        RecordingEmitter emitter = new RecordingEmitter(new CountDownLatch(0));
+        feed.subscribe(feed.cursor(1), emitter);
+        waitFor(() -> !emitter.sent.isEmpty());
+
+        feed.onCarChanged(CarChangedEvent.created(car(7, 0)));
+        waitFor(() -> emitter.sent.size() >= 2);
+
+        assertThat(emitter.sent).hasSize(2);
+        assertThat(emitter.sent.get(0)).startsWith("id:" + feed.cursor(6) + "\nevent:" + CarChangeFeed.RESET_EVENT);
+        assertThat(emitter.sent.get(1)).startsWith("id:" + feed.cursor(7) + "\nevent:change\n");
+    }
+
+    @Test
+    @DisplayName("idle SSE subscriber gets heartbeat comments")
+    void testHeartbeat() throws InterruptedException {
+        CarChangeFeed quiet = new CarChangeFeed(4, 100, 30000, 60000, 100, 50);
+        RecordingEmitter emitter = new RecordingEmitter(new CountDownLatch(0));
+        quiet.subscribe(null, emitter);
+
+        waitFor(() -> emitter.sent.size() >= 2);
+        assertThat(emitter.sent).hasSizeGreaterThanOrEqualTo(2)
+                .allMatch(event -> event.equals(":" + CarChangeFeed.HEARTBEAT_COMMENT + "\n\n"));
+        quiet.stop();
+    }
+}
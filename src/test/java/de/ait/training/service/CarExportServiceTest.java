@@ -0,0 +1,70 @@
+package de.ait.training.service;
+
+import de.ait.training.model.Car;
+import de.ait.training.repository.CarRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.json.AutoConfigureJson;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@AutoConfigureJson
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(CarExportService.class)
+@ActiveProfiles("h2")
+@TestPropertySource(properties = "app.cars.export.fetch-size=2")
+class CarExportServiceTest {
+
+    @Autowired
+    CarExportService carExportService;
+
+    @Autowired
+    CarRepository carRepository;
+
+    @BeforeEach
+    void setUp() {
+        carRepository.deleteAll();
+        Car bmw = new Car("black", "BMW x5", 25000);
+        bmw.setEngineType("petrol");
+        carRepository.saveAll(List.of(bmw,
+                new Car("green", "Audi A4", 15000),
+                new Car("white", "MB A220", 18000)));
+    }
+
+    @Test
+    @DisplayName("ndjson: one car per line ordered by id")
+    void testExportNdjson() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long exported = carExportService.export(CarExportService.Format.NDJSON, out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertThat(exported).isEqualTo(3);
+        assertThat(lines).hasSize(3);
+        assertThat(lines[0]).contains("\"model\":\"BMW x5\"").contains("\"engineType\":\"petrol\"");
+        assertThat(lines[2]).contains("\"model\":\"MB A220\"");
+    }
+
+    @Test
+    @DisplayName("csv: header and one row per car")
+    void testExportCsv() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        carExportService.export(CarExportService.Format.CSV, out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertThat(lines).hasSize(4);
+        assertThat(lines[0]).isEqualTo("id,color,model,price,year,engineType,version,updatedAt");
+        assertThat(lines[1]).contains(",black,\"BMW x5\",25000.0,0,petrol,0,");
+    }
+}
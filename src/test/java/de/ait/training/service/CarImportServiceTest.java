@@ -0,0 +1,69 @@
+package de.ait.training.service;
+
+import de.ait.training.dto.BulkImportResult;
+import de.ait.training.repository.CarRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.json.AutoConfigureJson;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@AutoConfigureJson
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(CarImportService.class)
+@ActiveProfiles("h2")
+@TestPropertySource(properties = "app.cars.import.batch-size=2")
+class CarImportServiceTest {
+
+    @Autowired
+    CarImportService carImportService;
+
+    @Autowired
+    CarRepository carRepository;
+
+    private static ByteArrayInputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @DisplayName("json array of 3 cars is saved in 2 batches")
+    void testImportJsonArray() throws Exception {
+        BulkImportResult result = carImportService.importCars(stream("""
+                [{"color":"black","model":"BMW x5","price":25000},
+                 {"color":"green","model":"Audi A4","price":15000},
+                 {"color":"white","model":"MB A220","price":18000}]
+                """));
+
+        assertThat(result.imported()).isEqualTo(3);
+        assertThat(result.batches()).isEqualTo(2);
+        assertThat(carRepository.count()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("ndjson stream, ids from request are ignored")
+    void testImportNdjson() throws Exception {
+        BulkImportResult result = carImportService.importCars(stream("""
+                {"id":777,"color":"red","model":"Ferrari","price":250000}
+                {"color":"green","model":"Audi A4","price":15000}
+                """));
+
+        assertThat(result.imported()).isEqualTo(2);
+        assertThat(carRepository.findById(777L)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("empty array, nothing imported")
+    void testImportEmpty() throws Exception {
+        assertThat(carImportService.importCars(stream("[]")).imported()).isZero();
+    }
+}
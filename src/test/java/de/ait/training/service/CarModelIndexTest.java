@@ -0,0 +1,82 @@
+package de.ait.training.service;
+
+import de.ait.training.dto.ModelSuggestion;
+import de.ait.training.event.CarChangedEvent;
+import de.ait.training.model.Car;
+import de.ait.training.repository.CarRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CarModelIndexTest {
+
+    private CarModelIndex index;
+
+    private static Car car(long id, String model) {
+        Car car = new Car("black", model, 25000);
+        car.setId(id);
+        return car;
+    }
+
+    @BeforeEach
+    void setUp() {
+        index = new CarModelIndex(mock(CarRepository.class));
+        index.putAll(List.of(
+                car(1, "BMW x5"),
+                car(2, "BMW x5"),
+                car(3, "BMW x3"),
+                car(4, "BMW"),
+                car(5, "Audi A4"),
+                car(6, "Skoda X-Trail x5")));
+    }
+
+    @Test
+    @DisplayName("exact match first, then prefix of the name by count, then prefix of a word")
+    void testRelevanceOrder() {
+        assertThat(index.suggest("bmw", 10)).extracting(ModelSuggestion::model)
+                .containsExactly("BMW", "BMW x5", "BMW x3");
+        assertThat(index.suggest("X5", 10)).containsExactly(
+                new ModelSuggestion("BMW x5", 2), new ModelSuggestion("Skoda X-Trail x5", 1));
+        assertThat(index.suggest("tra", 10)).extracting(ModelSuggestion::model)
+                .containsExactly("Skoda X-Trail x5");
+        assertThat(index.suggest("bm", 2)).hasSize(2);
+        assertThat(index.suggest("  ", 10)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("renamed or deleted car updates counts, last car of a model removes the model")
+    void testChangeEvents() {
+        index.onCarChanged(new CarChangedEvent(car(4, "BMW"), car(4, "Audi A6")));
+        index.onCarChanged(CarChangedEvent.deleted(car(2, "BMW x5")));
+
+        assertThat(index.suggest("bmw", 10)).containsExactly(
+                new ModelSuggestion("BMW x3", 1), new ModelSuggestion("BMW x5", 1));
+        assertThat(index.suggest("audi", 10)).extracting(ModelSuggestion::model)
+                .containsExactly("Audi A4", "Audi A6");
+    }
+
+    @Test
+    @DisplayName("car deleted while the table is read does not come back after the load")
+    void testLoadDoesNotResurrectDeletedCar() {
+        CarRepository carRepository = mock(CarRepository.class);
+        CarModelIndex loading = new CarModelIndex(carRepository);
+        when(carRepository.findByIdGreaterThanOrderByIdAsc(anyLong(), any())).thenAnswer(invocation -> {
+            List<Car> chunk = List.of(car(1, "BMW x5"), car(2, "Audi A4"));
+            loading.onCarChanged(CarChangedEvent.deleted(car(2, "Audi A4")));
+            return chunk;
+        });
+
+        loading.load();
+
+        assertThat(loading.suggest("audi", 10)).isEmpty();
+        assertThat(loading.suggest("bmw", 10)).extracting(ModelSuggestion::count).containsExactly(1L);
+    }
+}
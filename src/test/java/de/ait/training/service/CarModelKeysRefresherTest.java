@@ -0,0 +1,84 @@
+package de.ait.training.service;
+
+import de.ait.training.event.CarChangedEvent;
+import de.ait.training.event.CarsImportedEvent;
+import de.ait.training.model.Car;
+import de.ait.training.repository.CarRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.BDDMockito.willDoNothing;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+
+class CarModelKeysRefresherTest {
+
+    private final List<Map<String, Long>> counts = new CopyOnWriteArrayList<>();
+    private CarRepository carRepository;
+    private CarModelKeysRefresher refresher;
+
+    private static Car car(long id, String model, double price) {
+        Car car = new Car("black", model, price);
+        car.setId(id);
+        return car;
+    }
+
+    @BeforeEach
+    void setUp() {
+        carRepository = mock(CarRepository.class);
+        doAnswer(invocation -> counts.add(Map.copyOf(invocation.getArgument(0))))
+                .when(carRepository).countModels(anyMap());
+        refresher = new CarModelKeysRefresher(carRepository, Duration.ofMillis(200));
+    }
+
+    @Test
+    @DisplayName("model changes within the delay are summed into one count without a rebuild, price changes none")
+    void testCountLater() throws InterruptedException {
+        refresher.onCarChanged(new CarChangedEvent(car(1, "BMW x5", 25000), car(1, "BMW x5", 26000)));
+        Thread.sleep(400);
+        assertThat(counts).isEmpty();
+
+        refresher.onCarChanged(CarChangedEvent.created(car(2, "Audi A4", 15000)));
+        refresher.onCarChanged(new CarChangedEvent(car(1, "BMW x5", 26000), car(1, "BMW x6", 26000)));
+        refresher.onCarsImported(new CarsImportedEvent(List.of(car(3, "MB A220", 18000), car(4, "BMW x6", 30000))));
+        refresher.onCarChanged(CarChangedEvent.deleted(car(2, "Audi A4", 15000)));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (counts.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        Thread.sleep(400);
+        assertThat(counts).containsExactly(Map.of("BMW x5", -1L, "BMW x6", 2L, "MB A220", 1L));
+        then(carRepository).should(never()).refreshModelKeys();
+    }
+
+    @Test
+    @DisplayName("failed count keeps the changes for the next one, startup rebuild drops them")
+    void testCountFailed() {
+        willThrow(new IllegalStateException("database down")).given(carRepository).countModels(anyMap());
+        refresher.onCarChanged(CarChangedEvent.created(car(2, "Audi A4", 15000)));
+        assertThatThrownBy(refresher::countModels).isInstanceOf(IllegalStateException.class);
+
+        willDoNothing().given(carRepository).countModels(anyMap());
+        refresher.onCarChanged(CarChangedEvent.created(car(3, "Audi A4", 16000)));
+        refresher.countModels();
+        then(carRepository).should().countModels(Map.of("Audi A4", 2L));
+
+        refresher.onCarChanged(CarChangedEvent.created(car(4, "Audi A6", 16000)));
+        refresher.refresh();
+        refresher.countModels();
+        then(carRepository).should(never()).countModels(Map.of("Audi A6", 1L));
+    }
+}
@@ -0,0 +1,213 @@
+package de.ait.training.service;
+
+import de.ait.training.dto.CarDto;
+import de.ait.training.event.CarChangedEvent;
+import de.ait.training.event.CarsBulkUpdatedEvent;
+import de.ait.training.event.CarsImportedEvent;
+import de.ait.training.event.CarsUpdatedEvent;
+import de.ait.training.model.Car;
+import de.ait.training.repository.CarRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CarPriceIndexTest {
+
+    private CarPriceIndex index;
+
+    private static Car car(long id, String model, double price) {
+        Car car = new Car("black", model, price);
+        car.setId(id);
+        return car;
+    }
+
+    @BeforeEach
+    void setUp() {
+        index = new CarPriceIndex(mock(CarRepository.class));
+        index.rebuild(List.of(
+                car(1, "BMW x5", 25000),
+                car(2, "Audi A4", 15000),
+                car(3, "MB A220", 18000),
+                car(4, "Ferrari", 250000)));
+    }
+
+    @Test
+    @DisplayName("price between 10000 and 30000, 3 cars sorted by price")
+    void testBetween() {
+        List<CarDto> cars = index.findByPriceBetween(10000, 30000);
+        assertThat(cars).extracting(CarDto::model).containsExactly("Audi A4", "MB A220", "BMW x5");
+    }
+
+    @Test
+    @DisplayName("bounds are inclusive")
+    void testBoundsInclusive() {
+        assertThat(index.findByPriceBetween(15000, 250000)).hasSize(4);
+        assertThat(index.findByPriceLessThanEqual(15000)).extracting(CarDto::model).containsExactly("Audi A4");
+        assertThat(index.findByPriceGreaterThanEqual(250000)).extracting(CarDto::model).containsExactly("Ferrari");
+        assertThat(index.findByPriceBetween(100, 500)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("put replaces car with the same id, remove deletes it")
+    void testPutAndRemove() {
+        index.put(car(1, "BMW x5", 9000));
+        index.put(car(5, "VW Golf", 12000));
+
+        assertThat(index.size()).isEqualTo(5);
+        assertThat(index.findByPriceLessThanEqual(14000)).extracting(CarDto::model)
+                .containsExactly("BMW x5", "VW Golf");
+
+        index.remove(1L);
+        assertThat(index.findByPriceLessThanEqual(14000)).extracting(CarDto::model).containsExactly("VW Golf");
+        assertThat(index.size()).isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("changes made while the table is read are applied on top of the loaded index")
+    void testLoadReplaysConcurrentChanges() {
+        CarRepository carRepository = mock(CarRepository.class);
+        CarPriceIndex loading = new CarPriceIndex(carRepository);
+        when(carRepository.findByIdGreaterThanOrderByIdAsc(anyLong(), any())).thenAnswer(invocation -> {
+            // строки уже прочитаны, а в это время другие запросы меняют каталог
+            List<Car> chunk = List.of(car(1, "BMW x5", 25000), car(2, "Audi A4", 15000), car(3, "MB A220", 18000));
+            loading.onCarChanged(CarChangedEvent.deleted(car(2, "Audi A4", 15000)));
+            loading.onCarChanged(new CarChangedEvent(car(3, "MB A220", 18000), car(3, "MB A220", 17000)));
+            loading.onCarsImported(new CarsImportedEvent(List.of(car(3, "MB A220", 17000), car(5, "VW Golf", 12000))));
+            return chunk;
+        });
+
+        assertThat(loading.isReady()).isFalse();
+        loading.load();
+
+        assertThat(loading.isReady()).isTrue();
+        assertThat(loading.findByPriceBetween(0, 100000)).extracting(CarDto::id).containsExactly(5L, 3L, 1L);
+        assertThat(loading.findByPriceLessThanEqual(17000)).extracting(CarDto::price).containsExactly(12000.0, 17000.0);
+    }
+
+    @Test
+    @DisplayName("after a bulk update the index is not ready until the background reload reads new prices")
+    void testBulkUpdateReloadsInBackground() throws Exception {
+        CarRepository carRepository = mock(CarRepository.class);
+        CarPriceIndex reloading = new CarPriceIndex(carRepository);
+        reloading.rebuild(List.of(car(1, "BMW x5", 25000)));
+        CountDownLatch read = new CountDownLatch(1);
+        when(carRepository.findByIdGreaterThanOrderByIdAsc(anyLong(), any())).thenAnswer(invocation -> {
+            read.await();
+            return List.of(car(1, "BMW x5", 22500));
+        });
+
+        reloading.onCarsBulkUpdated(new CarsBulkUpdatedEvent(1));
+        reloading.onCarsBulkUpdated(new CarsBulkUpdatedEvent(1));
+        assertThat(reloading.isReady()).isFalse();
+
+        read.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!reloading.isReady() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(reloading.isReady()).isTrue();
+        assertThat(reloading.findByPriceLessThanEqual(30000)).extracting(CarDto::price).containsExactly(22500.0);
+    }
+
+    @Test
+    @DisplayName("cars updated by id are replaced in place")
+    void testCarsUpdated() {
+        index.onCarsUpdated(new CarsUpdatedEvent(List.of(car(1, "BMW x5", 25000), car(4, "Ferrari", 250000)),
+                List.of(car(1, "BMW x5", 9000), car(4, "Ferrari", 12000))));
+
+        assertThat(index.size()).isEqualTo(4);
+        assertThat(index.findByPriceLessThanEqual(15000)).extracting(CarDto::model)
+                .containsExactly("BMW x5", "Ferrari", "Audi A4");
+    }
+
+    @Test
+    @DisplayName("events published out of commit order do not overwrite a newer version")
+    void testStaleEventsSkipped() {
+        index.onCarChanged(new CarChangedEvent(versioned(car(1, "BMW x5", 25000), 0),
+                versioned(car(1, "BMW x5", 21000), 2)));
+        index.onCarChanged(new CarChangedEvent(versioned(car(1, "BMW x5", 25000), 0),
+                versioned(car(1, "BMW x5", 23000), 1)));
+        index.onCarsUpdated(new CarsUpdatedEvent(List.of(versioned(car(1, "BMW x5", 25000), 0)),
+                List.of(versioned(car(1, "BMW x5", 22000), 1))));
+
+        assertThat(index.findByPriceBetween(20000, 30000)).extracting(CarDto::price).containsExactly(21000.0);
+
+        // удаление пришло раньше изменения, которое было до него
+        index.onCarChanged(CarChangedEvent.deleted(versioned(car(2, "Audi A4", 16000), 1)));
+        index.onCarChanged(new CarChangedEvent(versioned(car(2, "Audi A4", 15000), 0),
+                versioned(car(2, "Audi A4", 16000), 1)));
+        assertThat(index.findByPriceBetween(0, 100000)).extracting(CarDto::id).doesNotContain(2L);
+
+        // PUT создает удаленный id заново с версией 0
+        index.onCarChanged(CarChangedEvent.created(versioned(car(2, "Audi A4", 14000), 0)));
+        assertThat(index.findByPriceLessThanEqual(14000)).extracting(CarDto::id).containsExactly(2L);
+    }
+
+    @Test
+    @DisplayName("an event older than the loaded row is not replayed over it")
+    void testLoadSkipsOlderPendingEvents() {
+        CarRepository carRepository = mock(CarRepository.class);
+        CarPriceIndex loading = new CarPriceIndex(carRepository);
+        when(carRepository.findByIdGreaterThanOrderByIdAsc(anyLong(), any())).thenAnswer(invocation -> {
+            // событие версии 1 опубликовано, когда база уже вернула версию 2
+            loading.onCarChanged(new CarChangedEvent(versioned(car(1, "BMW x5", 25000), 0),
+                    versioned(car(1, "BMW x5", 24000), 1)));
+            return List.of(versioned(car(1, "BMW x5", 23000), 2));
+        });
+
+        loading.load();
+
+        assertThat(loading.findByPriceBetween(0, 100000)).extracting(CarDto::price).containsExactly(23000.0);
+    }
+
+    @Test
+    @DisplayName("writes across many segments keep the cars sorted by price and id")
+    void testSegmentsStaySorted() {
+        Random random = new Random(7);
+        Map<Long, Double> expected = new HashMap<>();
+        List<Car> initial = new ArrayList<>();
+        for (long id = 1; id <= 3 * CarPriceIndex.SEGMENT_SIZE; id++) {
+            double price = random.nextInt(1000) * 100;
+            initial.add(car(id, "car", price));
+            expected.put(id, price);
+        }
+        index.rebuild(initial);
+        for (int i = 0; i < 20_000; i++) {
+            long id = 1 + random.nextInt(4 * CarPriceIndex.SEGMENT_SIZE);
+            if (random.nextInt(4) == 0) {
+                index.remove(id);
+                expected.remove(id);
+            } else {
+                double price = random.nextInt(1000) * 100;
+                index.put(car(id, "car", price));
+                expected.put(id, price);
+            }
+        }
+
+        List<CarDto> all = index.findByPriceGreaterThanEqual(0);
+        assertThat(all).hasSize(expected.size());
+        assertThat(all).isSortedAccordingTo(Comparator.comparingDouble(CarDto::price).thenComparing(CarDto::id));
+        all.forEach(car -> assertThat(car.price()).isEqualTo(expected.get(car.id())));
+        assertThat(index.findByPriceBetween(20000, 30000)).hasSize((int) expected.values().stream()
+                .filter(price -> price >= 20000 && price <= 30000).count());
+    }
+
+    private static Car versioned(Car car, long version) {
+        car.setVersion(version);
+        return car;
+    }
+}
@@ -0,0 +1,98 @@
+package de.ait.training.service;
+
+import de.ait.training.dto.CarStats;
+import de.ait.training.dto.CarStatsGroupBy;
+import de.ait.training.event.CarChangedEvent;
+import de.ait.training.model.Car;
+import de.ait.training.repository.CarRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.Mockito.mock;
+
+class CarStatsSummaryTest {
+
+    private CarStatsSummary summary;
+
+    private static Car car(long id, String color, double price) {
+        Car car = new Car(color, "BMW x5", price);
+        car.setId(id);
+        return car;
+    }
+
+    @BeforeEach
+    void setUp() {
+        summary = new CarStatsSummary(mock(CarRepository.class));
+        summary.putAll(List.of(
+                car(1, "black", 25000),
+                car(2, "green", 15000),
+                car(3, "white", 18000),
+                car(4, "red", 250000)));
+    }
+
+    @Test
+    @DisplayName("whole catalog: same values as percentile_cont in the database")
+    void testTotal() {
+        CarStats total = summary.stats(null).get(0);
+        assertThat(total.count()).isEqualTo(4);
+        assertThat(total.minPrice()).isEqualTo(15000.0);
+        assertThat(total.maxPrice()).isEqualTo(250000.0);
+        assertThat(total.avgPrice()).isEqualTo(77000.0, within(0.001));
+        assertThat(total.p50()).isEqualTo(21500.0, within(0.001));
+        assertThat(total.p90()).isEqualTo(182500.0, within(0.001));
+        assertThat(total.p99()).isEqualTo(243250.0, within(0.001));
+    }
+
+    @Test
+    @DisplayName("change event moves car between groups, repeated event does not count it twice")
+    void testChangeEvents() {
+        Car before = car(2, "green", 15000);
+        Car after = car(2, "black", 35000);
+        summary.onCarChanged(new CarChangedEvent(before, after));
+        summary.onCarChanged(new CarChangedEvent(before, after));
+
+        List<CarStats> byColor = summary.stats(CarStatsGroupBy.COLOR);
+        assertThat(byColor).extracting(CarStats::group).containsExactly("black", "red", "white");
+        assertThat(byColor.get(0).count()).isEqualTo(2);
+        assertThat(byColor.get(0).p50()).isEqualTo(30000.0, within(0.001));
+
+        summary.onCarChanged(new CarChangedEvent(car(4, "red", 250000), null));
+        assertThat(summary.stats(null).get(0).count()).isEqualTo(3);
+        assertThat(summary.stats(null).get(0).maxPrice()).isEqualTo(35000.0);
+    }
+
+    @Test
+    @DisplayName("stats of a group are computed once and recomputed only after the group changed")
+    void testStatsCachedUntilChange() {
+        CarStats black = summary.stats(CarStatsGroupBy.COLOR).get(0);
+        CarStats red = summary.stats(CarStatsGroupBy.COLOR).get(1);
+        assertThat(summary.stats(CarStatsGroupBy.COLOR).get(0)).isSameAs(black);
+
+        summary.put(car(5, "black", 45000));
+
+        List<CarStats> byColor = summary.stats(CarStatsGroupBy.COLOR);
+        assertThat(byColor.get(0)).isNotSameAs(black);
+        assertThat(byColor.get(0).p50()).isEqualTo(35000.0, within(0.001));
+        assertThat(byColor.get(1)).isSameAs(red);
+    }
+
+    @Test
+    @DisplayName("percentiles over repeated prices match percentile_cont")
+    void testRepeatedPrices() {
+        summary.putAll(List.of(
+                car(5, "black", 15000),
+                car(6, "black", 15000),
+                car(7, "black", 18000)));
+
+        CarStats total = summary.stats(null).get(0);
+        // 15000, 15000, 15000, 18000, 18000, 25000, 250000
+        assertThat(total.p50()).isEqualTo(18000.0, within(0.001));
+        assertThat(total.p90()).isEqualTo(115000.0, within(0.001));
+        assertThat(total.p99()).isEqualTo(236500.0, within(0.001));
+    }
+}
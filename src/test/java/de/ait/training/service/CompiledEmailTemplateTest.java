@@ -0,0 +1,67 @@
+package de.ait.training.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompiledEmailTemplateTest {
+
+    private final SpringTemplateEngine templateEngine = templateEngine();
+
+    private static SpringTemplateEngine templateEngine() {
+        ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+        resolver.setPrefix("templates/");
+        resolver.setSuffix(".html");
+        resolver.setTemplateMode(TemplateMode.HTML);
+        SpringTemplateEngine templateEngine = new SpringTemplateEngine();
+        templateEngine.setTemplateResolver(resolver);
+        return templateEngine;
+    }
+
+    @Test
+    @DisplayName("compiled template renders the same html as thymeleaf, values are escaped")
+    void testRenderSameAsThymeleaf() {
+        Optional<CompiledEmailTemplate> compiled = CompiledEmailTemplate.compile(templateEngine, "email/CarService");
+        assertThat(compiled).isPresent();
+        assertThat(compiled.get().variables()).containsExactly("title", "userName", "promoCode");
+
+        Map<String, Object> other = Map.of("title", "Service <today>", "userName", "Tom & \"Jerry\"",
+                "promoCode", "O'Neil-1");
+        assertThat(compiled.get().render(other))
+                .isEqualTo(CompiledEmailTemplate.process(templateEngine, "email/CarService", other))
+                .contains("Tom &amp; &quot;Jerry&quot;");
+    }
+
+    @Test
+    @DisplayName("variable used in url can not be precompiled")
+    void testVariableInUrlNotCompiled() {
+        assertThat(CompiledEmailTemplate.compile(templateEngine, "email/PromoLink")).isEmpty();
+    }
+
+    @Test
+    @DisplayName("variable used in th:if can not be precompiled, whatever value it has at compile time")
+    void testVariableInConditionNotCompiled() {
+        assertThat(CompiledEmailTemplate.compile(templateEngine, "email/VipFlag")).isEmpty();
+        assertThat(CompiledEmailTemplate.process(templateEngine, "email/VipFlag", Map.of("userName", "Tom", "vip", true)))
+                .contains("VIP");
+        assertThat(CompiledEmailTemplate.process(templateEngine, "email/VipFlag", Map.of("userName", "Tom", "vip", false)))
+                .doesNotContain("VIP");
+    }
+
+    @Test
+    @DisplayName("value for variable missing in template is ignored, missing value renders empty")
+    void testExtraAndMissingVariables() {
+        Optional<CompiledEmailTemplate> compiled = CompiledEmailTemplate.compile(templateEngine, "email/CarService");
+        assertThat(compiled).isPresent();
+        Map<String, Object> values = Map.of("userName", "Tom", "unused", "x");
+        assertThat(compiled.get().render(values))
+                .isEqualTo(CompiledEmailTemplate.process(templateEngine, "email/CarService", values));
+    }
+}
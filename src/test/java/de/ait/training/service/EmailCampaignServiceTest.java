@@ -0,0 +1,196 @@
+package de.ait.training.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import de.ait.training.dto.CampaignRecipient;
+import de.ait.training.dto.CampaignRequest;
+import de.ait.training.dto.CampaignResult;
+import de.ait.training.dto.CampaignResult.RecipientStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EmailCampaignServiceTest {
+
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger connects = new AtomicInteger();
+    private EmailCampaignService campaignService;
+
+    private EmailCampaignService campaignService(int port, int batchSize) {
+        return campaignService(port, batchSize, 3);
+    }
+
+    private EmailCampaignService campaignService(int port, int batchSize, int connections) {
+        // протокол спрашивают на каждое подключение
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl() {
+            @Override
+            public String getProtocol() {
+                connects.incrementAndGet();
+                return super.getProtocol();
+            }
+        };
+        mailSender.setHost("localhost");
+        mailSender.setPort(port);
+
+        ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+        resolver.setPrefix("templates/");
+        resolver.setSuffix(".html");
+        resolver.setTemplateMode(TemplateMode.HTML);
+        SpringTemplateEngine templateEngine = new SpringTemplateEngine();
+        templateEngine.setTemplateResolver(resolver);
+
+        EmailService emailService = new EmailService(mailSender, templateEngine, meterRegistry);
+        ReflectionTestUtils.setField(emailService, "fromAddress", "cars@ait.de");
+        campaignService = new EmailCampaignService(emailService, mailSender, new ObjectMapper(), meterRegistry,
+                connections, batchSize, 100, 10, 20, false);
+        return campaignService;
+    }
+
+    /**
+     * Ждет, пока рассылка обработает всех получателей
+     */
+    private CampaignResult await(CampaignResult started) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        CampaignResult result = campaignService.status(started.id()).orElseThrow();
+        while (!result.done() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            result = campaignService.status(started.id()).orElseThrow();
+        }
+        assertThat(result.done()).isTrue();
+        return result;
+    }
+
+    private static List<CampaignRecipient> recipients(int count) {
+        List<CampaignRecipient> recipients = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            recipients.add(new CampaignRecipient("user" + i + "@ait.de", Map.of("userName", "User" + i)));
+        }
+        return recipients;
+    }
+
+    @AfterEach
+    void tearDown() {
+        campaignService.stop();
+    }
+
+    @Test
+    @DisplayName("campaign is sent in parallel batches in the background, every recipient gets own variables and status")
+    void testCampaignSent() throws Exception {
+        List<CampaignRecipient> recipients = recipients(20);
+        recipients.add(5, new CampaignRecipient("not an address", Map.of("userName", "Nobody")));
+
+        CampaignResult started = campaignService(greenMail.getSmtp().getPort(), 4).start(new CampaignRequest(
+                "Car service time", "email/CarService", Map.of("title", "Service", "promoCode", "AIT-1"), recipients));
+        assertThat(started.total()).isEqualTo(21);
+        assertThat(started.recipients()).isNull();
+
+        CampaignResult result = await(started);
+        assertThat(result.sent()).isEqualTo(20);
+        assertThat(result.failed()).isEqualTo(1);
+        assertThat(result.recipients()).hasSize(21);
+        assertThat(result.recipients().get(5).status()).isEqualTo(CampaignResult.Status.FAILED);
+        assertThat(result.recipients().get(6)).isEqualTo(RecipientStatus.sent("user5@ait.de"));
+
+        assertThat(greenMail.waitForIncomingEmail(5000, 20)).isTrue();
+        MimeMessage[] received = greenMail.getReceivedMessagesForDomain("user7@ait.de");
+        assertThat(received).hasSize(1);
+        assertThat(GreenMailUtil.getBody(received[0])).contains("User7").contains("AIT-1");
+        assertThat(meterRegistry.counter("mail.campaign.sent").count()).isEqualTo(20);
+    }
+
+    @Test
+    @DisplayName("SMTP server down, every recipient of the campaign is failed")
+    void testCampaignServerDown() throws Exception {
+        CampaignResult result = await(campaignService(1, 2).start(new CampaignRequest("s", "email/CarService",
+                Map.of(), recipients(3))));
+
+        assertThat(result.sent()).isZero();
+        assertThat(result.recipients()).extracting(RecipientStatus::status)
+                .containsOnly(CampaignResult.Status.FAILED);
+    }
+
+    @Test
+    @DisplayName("worker keeps its SMTP connection across batches and campaigns, reconnects after the server closed it")
+    void testConnectionReused() throws Exception {
+        campaignService(greenMail.getSmtp().getPort(), 2, 1);
+
+        CampaignResult first = await(campaignService.start(new CampaignRequest("s", "email/CarService", Map.of(),
+                recipients(6))));
+        CampaignResult second = await(campaignService.start(new CampaignRequest("s", "email/CarService", Map.of(),
+                recipients(4))));
+        assertThat(first.sent() + second.sent()).isEqualTo(10);
+        assertThat(connects).hasValue(1);
+
+        // перезапуск сервера рвет соединение
+        greenMail.reset();
+        CampaignResult afterRestart = await(campaignService.start(new CampaignRequest("s", "email/CarService",
+                Map.of(), recipients(4))));
+        assertThat(afterRestart.sent()).isEqualTo(4);
+        assertThat(connects).hasValue(2);
+    }
+
+    @Test
+    @DisplayName("unknown campaign has no status")
+    void testUnknownCampaign() {
+        campaignService(greenMail.getSmtp().getPort(), 10);
+
+        assertThat(campaignService.status("nope")).isEmpty();
+    }
+
+    @Test
+    @DisplayName("recipients are read from csv and ndjson, email column is the address")
+    void testReadRecipients() throws Exception {
+        campaignService(greenMail.getSmtp().getPort(), 10);
+
+        List<CampaignRecipient> fromCsv = campaignService.readRecipients(stream("""
+                email,userName,promoCode
+                a@ait.de,Anna,P1
+                b@ait.de,Bob,P2
+                """), true);
+        assertThat(fromCsv).containsExactly(
+                new CampaignRecipient("a@ait.de", Map.of("userName", "Anna", "promoCode", "P1")),
+                new CampaignRecipient("b@ait.de", Map.of("userName", "Bob", "promoCode", "P2")));
+
+        List<CampaignRecipient> fromNdjson = campaignService.readRecipients(stream("""
+                {"email":"a@ait.de","userName":"Anna"}
+                {"email":"b@ait.de","userName":"Bob"}
+                """), false);
+        assertThat(fromNdjson).extracting(CampaignRecipient::email).containsExactly("a@ait.de", "b@ait.de");
+    }
+
+    @Test
+    @DisplayName("template outside of email/ is rejected")
+    void testWrongTemplate() {
+        campaignService(greenMail.getSmtp().getPort(), 10);
+
+        assertThatThrownBy(() -> campaignService.start(new CampaignRequest("s", "../secret", Map.of(), List.of())))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static ByteArrayInputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
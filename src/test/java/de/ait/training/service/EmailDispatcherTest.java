@@ -0,0 +1,139 @@
+package de.ait.training.service;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EmailDispatcherTest {
+
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private EmailDispatcher dispatcher;
+
+    private static final Map<String, Object> VARIABLES = Map.of(
+            "title", "Welcome to our service",
+            "userName", "Zhanna",
+            "promoCode", "AIT-223344");
+
+    private EmailService emailService(int port) {
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("localhost");
+        mailSender.setPort(port);
+
+        ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+        resolver.setPrefix("templates/");
+        resolver.setSuffix(".html");
+        resolver.setTemplateMode(TemplateMode.HTML);
+        SpringTemplateEngine templateEngine = new SpringTemplateEngine();
+        templateEngine.setTemplateResolver(resolver);
+
+        EmailService emailService = new EmailService(mailSender, templateEngine, meterRegistry);
+        ReflectionTestUtils.setField(emailService, "fromAddress", "cars@ait.de");
+        return emailService;
+    }
+
+    private void awaitCounter(String name) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (meterRegistry.counter(name).count() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.stop();
+        }
+    }
+
+    @Test
+    @DisplayName("email is queued and delivered to local SMTP server by worker")
+    void testDispatchDelivered() throws Exception {
+        dispatcher = new EmailDispatcher(emailService(greenMail.getSmtp().getPort()), meterRegistry,
+                true, 10, 2, 50, 3, 10, 1000, false);
+        dispatcher.start();
+
+        assertThat(dispatcher.dispatch("user@ait.de", "Car service time", "email/CarService", VARIABLES)).isTrue();
+
+        assertThat(greenMail.waitForIncomingEmail(5000, 1)).isTrue();
+        MimeMessage message = greenMail.getReceivedMessages()[0];
+        assertThat(message.getSubject()).isEqualTo("Car service time");
+        awaitCounter("mail.sent");
+        assertThat(meterRegistry.get("mail.dispatch.latency").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("SMTP server down, send is retried and counted as failed")
+    void testDispatchRetriedOnMailSendException() throws Exception {
+        dispatcher = new EmailDispatcher(emailService(1), meterRegistry, true, 10, 1, 50, 3, 10, 1000, true);
+        dispatcher.start();
+
+        dispatcher.dispatch("user@ait.de", "Car service time", "email/CarService", VARIABLES);
+
+        awaitCounter("mail.failed");
+        assertThat(meterRegistry.counter("mail.retried").count()).isEqualTo(2);
+        assertThat(meterRegistry.counter("mail.failed").count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("queue is full, email is rejected")
+    void testDispatchRejectedWhenQueueFull() {
+        // без рабочих потоков очередь никто не разбирает
+        dispatcher = new EmailDispatcher(emailService(greenMail.getSmtp().getPort()), meterRegistry,
+                true, 1, 0, 10, 3, 10, 1000, false);
+
+        assertThat(dispatcher.dispatch("a@ait.de", "s", "email/CarService", VARIABLES)).isTrue();
+        assertThat(dispatcher.dispatch("b@ait.de", "s", "email/CarService", VARIABLES)).isFalse();
+        assertThat(dispatcher.queueDepth()).isEqualTo(1);
+        assertThat(meterRegistry.counter("mail.rejected").count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("stop counts mails left in queue as failed and rejects new ones")
+    void testStopCountsQueuedMailsAsFailed() {
+        dispatcher = new EmailDispatcher(emailService(greenMail.getSmtp().getPort()), meterRegistry,
+                true, 10, 0, 10, 3, 10, 0, false);
+        dispatcher.dispatch("a@ait.de", "s", "email/CarService", VARIABLES);
+        dispatcher.dispatch("b@ait.de", "s", "email/CarService", VARIABLES);
+
+        dispatcher.stop();
+
+        assertThat(dispatcher.queueDepth()).isZero();
+        assertThat(meterRegistry.counter("mail.failed").count()).isEqualTo(2);
+        assertThat(dispatcher.dispatch("c@ait.de", "s", "email/CarService", VARIABLES)).isFalse();
+    }
+
+    @Test
+    @DisplayName("stop during retry backoff counts the mail as failed")
+    void testStopDuringBackoffCountsMailAsFailed() throws Exception {
+        dispatcher = new EmailDispatcher(emailService(1), meterRegistry, true, 10, 1, 50, 3, 60000, 0, false);
+        dispatcher.start();
+        dispatcher.dispatch("user@ait.de", "Car service time", "email/CarService", VARIABLES);
+        awaitCounter("mail.retried");
+
+        dispatcher.stop();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (meterRegistry.counter("mail.failed").count() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(meterRegistry.counter("mail.failed").count()).isEqualTo(1);
+        assertThat(meterRegistry.counter("mail.sent").count()).isZero();
+    }
+}
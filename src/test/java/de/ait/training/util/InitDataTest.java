@@ -0,0 +1,79 @@
+package de.ait.training.util;
+
+import de.ait.training.dto.CarDto;
+import de.ait.training.event.CarsImportedEvent;
+import de.ait.training.model.Car;
+import de.ait.training.repository.CarRepository;
+import de.ait.training.service.CarPriceIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.CommandLineRunner;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class InitDataTest {
+
+    private CarRepository carRepository;
+    private CarPriceIndex index;
+    private CommandLineRunner seed;
+
+    @BeforeEach
+    void setUp() {
+        carRepository = mock(CarRepository.class);
+        index = new CarPriceIndex(carRepository);
+        when(carRepository.count()).thenReturn(0L);
+        AtomicLong ids = new AtomicLong();
+        when(carRepository.saveAllAndCount(anyList())).thenAnswer(invocation -> {
+            List<Car> cars = invocation.getArgument(0);
+            cars.forEach(car -> car.setId(ids.incrementAndGet()));
+            return cars;
+        });
+        // синхронно: здесь важен порядок сохранения и загрузки, а не поток
+        seed = new InitData().init(carRepository,
+                event -> index.onCarsImported((CarsImportedEvent) event), false);
+    }
+
+    @Test
+    @DisplayName("cars seeded while the index loads are in the index after the load")
+    void testSeedDuringIndexLoad() {
+        when(carRepository.findByIdGreaterThanOrderByIdAsc(anyLong(), any())).thenAnswer(invocation -> {
+            // таблица прочитана пустой, а сразу после этого фоновый поток заполняет ее
+            seed.run();
+            return List.of();
+        });
+
+        index.load();
+
+        assertThat(index.isReady()).isTrue();
+        assertThat(index.findByPriceGreaterThanEqual(0)).extracting(CarDto::model)
+                .containsExactly("Audi A4", "MB A220", "BMW x5", "Ferrari");
+    }
+
+    @Test
+    @DisplayName("cars seeded before the index loads are read from the table once")
+    void testSeedBeforeIndexLoad() throws Exception {
+        seed.run();
+        when(carRepository.findByIdGreaterThanOrderByIdAsc(anyLong(), any())).thenReturn(List.of(
+                car(1, "BMW x5", 25000), car(2, "Audi A4", 15000), car(3, "MB A220", 18000), car(4, "Ferrari", 250000)));
+
+        assertThat(index.isReady()).isFalse();
+        index.load();
+
+        assertThat(index.size()).isEqualTo(4);
+    }
+
+    private static Car car(long id, String model, double price) {
+        Car car = new Car("black", model, price);
+        car.setId(id);
+        return car;
+    }
+}